@@ -0,0 +1,71 @@
+package com.kryo.agents.agents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kryo.agents.codec.OpenAICodec;
+import com.kryo.agents.services.AzureOpenAIService;
+import com.kryo.agents.services.BillingService;
+import com.kryo.agents.services.ContextAssembler;
+import com.kryo.agents.services.TokenEstimator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * {@link BillingAgent#executeToolCall}: argument parsing, validation, the billing lookup and
+ * serializing the tool result, once per tool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BillingToolCallBenchmark {
+
+  private static final Map<String, String> ARGUMENTS = Map.of(
+      "checkSubscription", "{\"customerId\":\"customer-001\"}",
+      "initiateRefund", "{\"customerId\":\"customer-002\",\"reason\":\"Charged twice for the same month\"}",
+      "explainRefundPolicy", "{}",
+      "changePlan", "{\"customerId\":\"customer-003\",\"newPlan\":\"Pro\"}");
+
+  @Param({"checkSubscription", "initiateRefund", "explainRefundPolicy", "changePlan"})
+  public String tool;
+
+  private BillingAgent billingAgent;
+  private String arguments;
+
+  @Setup
+  public void setUp() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    BillingService billingService = new BillingService(objectMapper, new ClassPathResource("billing-policy.json"));
+    billingService.init();
+    ContextAssembler contextAssembler = new ContextAssembler(new MockEnvironment(),
+        new TokenEstimator("o200k_base"), new SimpleMeterRegistry());
+
+    billingAgent = new BillingAgent(mock(AzureOpenAIService.class, withSettings().stubOnly()), billingService,
+        objectMapper, contextAssembler, new OpenAICodec(objectMapper));
+    arguments = ARGUMENTS.get(tool);
+  }
+
+  @Benchmark
+  public String executeToolCall() {
+    return billingAgent.executeToolCall(tool, arguments);
+  }
+}
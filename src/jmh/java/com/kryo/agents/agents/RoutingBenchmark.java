@@ -0,0 +1,123 @@
+package com.kryo.agents.agents;
+
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.Role;
+import com.kryo.agents.retrieval.HashingEmbedder;
+import com.kryo.agents.services.AzureOpenAIService;
+import com.kryo.agents.services.ConversationService;
+import com.kryo.agents.services.DocumentRetrievalService;
+import com.kryo.agents.services.LocalIntentClassifier;
+import com.kryo.agents.services.TokenEstimator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * {@link AgentOrchestrator#route} with the LLM classifier stubbed out, so the numbers cover
+ * history lookup, local classification and the sticky-agent logic but no network. With
+ * {@code localClassifier=true} the rule-based classifier answers confident messages first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+  private static final List<String> MESSAGES = List.of(
+      "I was charged twice this month, can I get a refund for customer-001?",
+      "Getting a 429 error from the chat endpoint after a few requests",
+      "Hello there!",
+      "How do I upgrade my plan to Enterprise?",
+      "The setup guide says to set AZURE_OPENAI_ENDPOINT but the app still fails to start",
+      "What does the partial refund policy say?",
+      "Thanks, that fixed it",
+      "My API key stopped working after rotation");
+
+  private static final int CONVERSATIONS = 8;
+
+  @Param({"false", "true"})
+  public boolean localClassifier;
+
+  private AgentOrchestrator orchestrator;
+  private ExecutorService executor;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    AzureOpenAIService openAIService = mock(AzureOpenAIService.class, withSettings().stubOnly());
+    when(openAIService.classifyIntent(anyList())).thenAnswer(invocation -> {
+      List<ChatMessage> history = invocation.getArgument(0);
+      String latest = history.get(history.size() - 1).content().toLowerCase();
+      if (latest.contains("refund") || latest.contains("plan") || latest.contains("charged")) {
+        return "billing";
+      }
+      return latest.contains("error") || latest.contains("api") || latest.contains("setup") ? "technical" : "router";
+    });
+
+    ConversationService conversationService = new ConversationService(new TokenEstimator("o200k_base"), 8000);
+    for (int c = 0; c < CONVERSATIONS; c++) {
+      for (int m = 0; m < 10; m++) {
+        conversationService.addMessage("conversation-" + c, "user-" + c,
+            new ChatMessage(m % 2 == 0 ? Role.USER : Role.ASSISTANT, MESSAGES.get((c + m) % MESSAGES.size())));
+      }
+    }
+
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    orchestrator = new AgentOrchestrator(
+        List.of(named("billing"), named("technical"), new RouterAgent()),
+        openAIService,
+        conversationService,
+        new LocalIntentClassifier(localClassifier, 0.8, 0.0, 50, new SimpleMeterRegistry()),
+        new DocumentRetrievalService(new SimpleMeterRegistry(), new HashingEmbedder(256)),
+        executor,
+        new SimpleMeterRegistry());
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.close();
+  }
+
+  private static Agent named(String name) {
+    return new Agent() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public String respond(String message, List<ChatMessage> history) {
+        return "";
+      }
+    };
+  }
+
+  @Benchmark
+  public Agent route() {
+    int i = next;
+    next = (i + 1) % (MESSAGES.size() * CONVERSATIONS);
+    return orchestrator.route("conversation-" + (i % CONVERSATIONS), MESSAGES.get(i % MESSAGES.size()));
+  }
+}
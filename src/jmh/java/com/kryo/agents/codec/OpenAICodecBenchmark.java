@@ -0,0 +1,187 @@
+package com.kryo.agents.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.kryo.agents.config.AzureOpenAIConfig;
+import com.kryo.agents.models.openai.Function;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.models.openai.OpenAIRequest;
+import com.kryo.agents.models.openai.OpenAIResponse;
+import com.kryo.agents.models.openai.Tool;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the default {@link RestClient} body path (converter-based serialization and
+ * full binding of {@link OpenAIResponse}) with {@link OpenAICodec}. The {@code restClient*}
+ * benchmarks go through a client built like the {@code azureOpenAiClient} bean, over loopback
+ * HTTP to an in-process server, so request bodies take the same path as in production; the
+ * {@code write*} / {@code read*} ones measure encoding and decoding alone. Run with
+ * {@code -prof gc} for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class OpenAICodecBenchmark {
+
+  private static final String SYSTEM_PROMPT = """
+      You are a senior Billing Support Specialist. You handle subscription inquiries and refund requests with accuracy and empathy.
+
+      CORE GUIDELINES:
+      - EXTRACTION: Use `customerId` and `reason` if provided in the user's message. Do NOT ask for them again if present.
+      - PERSONALIZATION: When reporting results, explicitly state which specific part of the policy applies to the user.
+      - ACCURACY: Report tool outputs exactly. Do not speculate on dates.
+      """.repeat(4);
+
+  private static final String RESPONSE = """
+      {"id":"chatcmpl-9x","object":"chat.completion","created":1718000000,"model":"gpt-4o-2024-08-06",
+       "prompt_filter_results":[{"prompt_index":0,"content_filter_results":{"hate":{"filtered":false,"severity":"safe"},
+         "self_harm":{"filtered":false,"severity":"safe"},"sexual":{"filtered":false,"severity":"safe"},
+         "violence":{"filtered":false,"severity":"safe"}}}],
+       "choices":[{"index":0,"finish_reason":"stop","logprobs":null,
+         "content_filter_results":{"hate":{"filtered":false,"severity":"safe"},"violence":{"filtered":false,"severity":"safe"}},
+         "message":{"role":"assistant","refusal":null,"content":"%s"}}],
+       "system_fingerprint":"fp_abc123",
+       "usage":{"prompt_tokens":1450,"completion_tokens":180,"total_tokens":1630,
+         "prompt_tokens_details":{"cached_tokens":1024},"completion_tokens_details":{"reasoning_tokens":0}}}
+      """.formatted("Since you requested this within 7 days, you qualify for a full refund. ".repeat(12));
+
+  private ObjectMapper objectMapper;
+  private ObjectReader responseReader;
+  private OpenAICodec codec;
+  private OpenAIRequest request;
+  private byte[] responseBytes;
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String baseUrl;
+  private RestClient restClient;
+
+  @Setup
+  public void setUp() throws IOException {
+    objectMapper = new ObjectMapper();
+    responseReader = objectMapper.readerFor(OpenAIResponse.class)
+        .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    codec = new OpenAICodec(objectMapper);
+    codec.registerStatic(SYSTEM_PROMPT);
+    List<Tool> tools = codec.registerTools(List.of(
+        tool("checkSubscription", "Get subscription details for a customer"),
+        tool("initiateRefund", "Initiate a refund request for a customer"),
+        tool("explainRefundPolicy", "Explain the refund policy"),
+        tool("changePlan", "Change the subscription plan of a customer")));
+
+    List<Message> messages = new ArrayList<>();
+    messages.add(Message.system(SYSTEM_PROMPT));
+    for (int i = 0; i < 10; i++) {
+      messages.add(i % 2 == 0
+          ? Message.user("I was charged twice for my Pro plan this month, customer-00" + i + ". Can you check?")
+          : Message.assistant("I checked your subscription: you are on the Pro plan billed monthly at $99.99."));
+    }
+    request = new OpenAIRequest(messages, tools);
+    responseBytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    serverExecutor = Executors.newFixedThreadPool(2);
+    server.setExecutor(serverExecutor);
+    server.createContext("/", exchange -> {
+      try (InputStream in = exchange.getRequestBody()) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, responseBytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(responseBytes);
+      }
+    });
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+    HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    restClient = AzureOpenAIConfig.restClient(new JdkClientHttpRequestFactory(httpClient));
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  private static Tool tool(String name, String description) {
+    return new Tool(new Function(name, description, Map.of(
+        "type", "object",
+        "properties", Map.of(
+            "customerId", Map.of("type", "string", "description", "Customer ID (e.g., customer-001)"),
+            "reason", Map.of("type", "string", "description", "Reason provided by the customer")),
+        "required", List.of("customerId"))));
+  }
+
+  @Benchmark
+  public OpenAIResponse restClientDefault() {
+    return restClient.post()
+        .uri(baseUrl + "/openai/deployments/test/chat/completions")
+        .body(request)
+        .retrieve()
+        .body(OpenAIResponse.class);
+  }
+
+  @Benchmark
+  public OpenAIResponse restClientCodec() {
+    return restClient.post()
+        .uri(baseUrl + "/openai/deployments/test/chat/completions")
+        .body(out -> codec.writeRequest(request, out))
+        .exchange((req, resp) -> codec.readResponse(resp.getBody()));
+  }
+
+  @Benchmark
+  public byte[] writeObjectMapper() throws IOException {
+    return objectMapper.writeValueAsBytes(request);
+  }
+
+  @Benchmark
+  public int writeCodec() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+    codec.writeRequest(request, out);
+    return out.size();
+  }
+
+  @Benchmark
+  public OpenAIResponse readObjectMapper() throws IOException {
+    return responseReader.readValue(new ByteArrayInputStream(responseBytes));
+  }
+
+  @Benchmark
+  public OpenAIResponse readCodec() throws IOException {
+    return codec.readResponse(new ByteArrayInputStream(responseBytes));
+  }
+}
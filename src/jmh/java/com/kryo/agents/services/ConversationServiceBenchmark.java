@@ -0,0 +1,117 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.ConversationSummary;
+import com.kryo.agents.models.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ConversationService} alone and under a mixed read/write load (the {@code contended}
+ * group: two writers, four history readers, one sidebar reader). With more conversations
+ * than the service tracks, lookups also pay for LRU eviction. The store is rebuilt every
+ * iteration so appended messages do not make later iterations slower.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationServiceBenchmark {
+
+  private static final int USERS = 4;
+  private static final int MESSAGES_PER_CONVERSATION = 20;
+
+  @Param({"8", "1000"})
+  public int conversations;
+
+  private ConversationService conversationService;
+  private ChatMessage userMessage;
+  private ChatMessage assistantMessage;
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+    int nextConversation(int conversations) {
+      return random.nextInt(conversations);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    conversationService = new ConversationService(new TokenEstimator("o200k_base"), 8000);
+    userMessage = new ChatMessage(Role.USER, "My deployment keeps failing with a 503 after I rotate the API key, what should I check?");
+    assistantMessage = new ChatMessage(Role.ASSISTANT,
+        "A 503 right after rotating keys usually means the old key is still cached by a client. "
+            + "Restart the workers, confirm the new key in the environment, and retry with backoff.");
+
+    for (int c = 0; c < conversations; c++) {
+      for (int m = 0; m < MESSAGES_PER_CONVERSATION; m++) {
+        conversationService.addMessage(conversationId(c), userId(c), m % 2 == 0 ? userMessage : assistantMessage);
+      }
+    }
+  }
+
+  private static String conversationId(int index) {
+    return "conversation-" + index;
+  }
+
+  private static String userId(int conversation) {
+    return "user-" + (conversation % USERS);
+  }
+
+  @Benchmark
+  public void addMessage(Cursor cursor) {
+    int c = cursor.nextConversation(conversations);
+    conversationService.addMessage(conversationId(c), userId(c), userMessage);
+  }
+
+  @Benchmark
+  public List<ChatMessage> getRecentHistory(Cursor cursor) {
+    return conversationService.getRecentHistory(conversationId(cursor.nextConversation(conversations)));
+  }
+
+  @Benchmark
+  public List<ConversationSummary> getSummaries(Cursor cursor) {
+    return conversationService.getSummaries(userId(cursor.nextConversation(conversations)));
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(2)
+  public void contendedAddMessage(Cursor cursor) {
+    addMessage(cursor);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(4)
+  public List<ChatMessage> contendedGetRecentHistory(Cursor cursor) {
+    return getRecentHistory(cursor);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public List<ConversationSummary> contendedGetSummaries(Cursor cursor) {
+    return getSummaries(cursor);
+  }
+}
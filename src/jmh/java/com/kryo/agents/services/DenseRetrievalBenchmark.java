@@ -0,0 +1,98 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.retrieval.DenseIndexer;
+import com.kryo.agents.retrieval.EmbeddingCache;
+import com.kryo.agents.retrieval.HashingEmbedder;
+import com.kryo.agents.retrieval.HnswIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-neighbour search over chunk embeddings, through the {@link HnswIndex} graph
+ * ({@code hnsw}) against comparing the query with every vector ({@code exact}), with float
+ * and int8 vectors. Recall@10 of the graph against the exact results, at the benchmarked
+ * {@code ef} and two larger ones, is printed at the end of each trial, since a faster search
+ * only counts if it still finds the same chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DenseRetrievalBenchmark {
+
+  private static final int K = 10;
+  private static final int EF_SEARCH = 64;
+
+  @Param({"10000", "100000"})
+  public int chunks;
+
+  @Param({"false", "true"})
+  public boolean quantize;
+
+  private HnswIndex index;
+  private float[][] queries;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SyntheticCorpus corpus = new SyntheticCorpus(20_000, 42);
+    DenseIndexer indexer = new DenseIndexer(new HashingEmbedder(256), EmbeddingCache.inMemory(), quantize);
+    index = indexer.index(corpus.chunks(chunks, 40));
+    List<String> texts = corpus.queries(64, 4);
+    queries = new float[texts.size()][];
+    for (int i = 0; i < texts.size(); i++) {
+      queries[i] = indexer.embedQuery(texts.get(i));
+    }
+  }
+
+  @Benchmark
+  public int[] hnsw() {
+    float[] query = queries[next];
+    next = (next + 1) % queries.length;
+    return index.search(query, K, EF_SEARCH);
+  }
+
+  @Benchmark
+  public int[] exact() {
+    float[] query = queries[next];
+    next = (next + 1) % queries.length;
+    return index.exactSearch(query, K);
+  }
+
+  @TearDown(Level.Trial)
+  public void printRecall() {
+    System.out.println();
+    for (int ef : new int[] {EF_SEARCH, 2 * EF_SEARCH, 4 * EF_SEARCH}) {
+      int found = 0;
+      for (float[] query : queries) {
+        int[] approximate = index.search(query, K, ef);
+        for (int expected : index.exactSearch(query, K)) {
+          for (int node : approximate) {
+            if (node == expected) {
+              found++;
+              break;
+            }
+          }
+        }
+      }
+      System.out.printf("recall@%d (chunks=%d, quantize=%s, ef=%d): %.3f%n", K, chunks, quantize, ef,
+          (double) found / (queries.length * K));
+    }
+  }
+}
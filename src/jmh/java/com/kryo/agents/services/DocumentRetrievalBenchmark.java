@@ -0,0 +1,65 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.retrieval.HashingEmbedder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DocumentRetrievalService#retrieveDocuments} over synthetic corpora, against the
+ * {@link LinearScanRetrieval} it replaced. The query set is fixed per trial and cycled, so
+ * every size and implementation sees the same mix of common and rare terms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DocumentRetrievalBenchmark {
+
+  @Param({"10", "1000", "100000", "1000000"})
+  public int chunks;
+
+  private DocumentRetrievalService retrievalService;
+  private LinearScanRetrieval linearScan;
+  private List<String> queries;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    SyntheticCorpus corpus = new SyntheticCorpus(20_000, 42);
+    List<DocumentChunk> documents = corpus.chunks(chunks, 40);
+    retrievalService = new DocumentRetrievalService(new SimpleMeterRegistry(), new HashingEmbedder(256));
+    retrievalService.addChunks(documents);
+    linearScan = new LinearScanRetrieval(documents);
+    queries = corpus.queries(64, 4);
+  }
+
+  @Benchmark
+  public List<DocumentChunk> retrieveDocuments() {
+    String query = queries.get(next);
+    next = (next + 1) % queries.size();
+    return retrievalService.retrieveDocuments(query);
+  }
+
+  @Benchmark
+  public List<DocumentChunk> linearScan() {
+    String query = queries.get(next);
+    next = (next + 1) % queries.size();
+    return linearScan.retrieveDocuments(query);
+  }
+}
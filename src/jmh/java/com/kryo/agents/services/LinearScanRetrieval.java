@@ -0,0 +1,72 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The retrieval that predates the BM25 index, kept verbatim as the benchmark baseline: every
+ * query re-normalizes every chunk and scores it with substring checks, then sorts all scores.
+ */
+final class LinearScanRetrieval {
+
+  private final List<DocumentChunk> documentStore;
+
+  LinearScanRetrieval(List<DocumentChunk> documentStore) {
+    this.documentStore = documentStore;
+  }
+
+  List<DocumentChunk> retrieveDocuments(String query) {
+    String processedQuery = normalizeAndStem(query);
+
+    return documentStore.stream()
+        .map(chunk -> new ScoredChunk(chunk, calculateScore(chunk, processedQuery)))
+        .filter(sc -> sc.score >= 2)
+        .sorted(Comparator.comparingInt(ScoredChunk::score).reversed())
+        .limit(5)
+        .map(ScoredChunk::chunk)
+        .collect(Collectors.toList());
+  }
+
+  private int calculateScore(DocumentChunk chunk, String processedQuery) {
+    int score = 0;
+    String content = normalizeAndStem(chunk.header() + " " + chunk.content());
+    String[] queryTokens = processedQuery.split("\\s+");
+
+    for (String token : queryTokens) {
+      if (token.length() < 3)
+        continue;
+
+      if (content.contains(" " + token + " ")) {
+        score += 2;
+      } else if (content.contains(token)) {
+        score += 1;
+      }
+    }
+    return score;
+  }
+
+  private String normalizeAndStem(String text) {
+    if (text == null)
+      return "";
+    String normalized = text.toLowerCase().replaceAll("[^a-z0-9\\s]", " ");
+
+    StringBuilder stemmed = new StringBuilder();
+    for (String word : normalized.split("\\s+")) {
+      if (word.endsWith("ing"))
+        word = word.substring(0, word.length() - 3);
+      else if (word.endsWith("s") && !word.endsWith("ss"))
+        word = word.substring(0, word.length() - 1);
+      else if (word.endsWith("ed"))
+        word = word.substring(0, word.length() - 2);
+
+      stemmed.append(" ").append(word).append(" ");
+    }
+    return stemmed.toString();
+  }
+
+  private record ScoredChunk(DocumentChunk chunk, int score) {
+  }
+}
@@ -0,0 +1,129 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.retrieval.Bm25Index;
+import com.kryo.agents.retrieval.IndexFile;
+import com.kryo.agents.retrieval.MarkdownChunker;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to a queryable retrieval index at startup, parsing markdown and building the index
+ * ({@code source=parsed}) against mapping a persisted {@link IndexFile} ({@code source=mapped}).
+ * The {@code retainedHeapMb} counter is the heap still in use by the loaded index after a
+ * full GC; the mapped index keeps postings and chunk text in the page cache instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class RetrievalStartupBenchmark {
+
+  private static final long FINGERPRINT = 1L;
+  private static final int CHUNKS_PER_FILE = 50;
+
+  @Param({"1000", "100000", "1000000"})
+  public int chunks;
+
+  @Param({"parsed", "mapped"})
+  public String source;
+
+  private Path directory;
+  private Path indexFile;
+  private long baselineHeapBytes;
+  private Bm25Index loaded;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Heap {
+    public long retainedHeapMb;
+  }
+
+  @Setup(Level.Trial)
+  public void writeCorpus() throws IOException {
+    directory = Files.createTempDirectory("retrieval-startup");
+    List<DocumentChunk> documents = new SyntheticCorpus(20_000, 42).chunks(chunks, 40);
+    for (int file = 0; file * CHUNKS_PER_FILE < documents.size(); file++) {
+      try (Writer writer = Files.newBufferedWriter(directory.resolve("doc-" + file + ".md"), StandardCharsets.UTF_8)) {
+        for (DocumentChunk chunk : documents.subList(file * CHUNKS_PER_FILE,
+            Math.min(documents.size(), (file + 1) * CHUNKS_PER_FILE))) {
+          writer.write("## " + chunk.header() + "\n" + chunk.content() + "\n\n");
+        }
+      }
+    }
+    indexFile = directory.resolve("retrieval.idx");
+    IndexFile.write(parse(), FINGERPRINT, indexFile);
+  }
+
+  @Setup(Level.Invocation)
+  public void measureBaseline() {
+    baselineHeapBytes = usedHeapAfterGc();
+  }
+
+  @Benchmark
+  public Bm25Index load() throws IOException {
+    loaded = "mapped".equals(source) ? IndexFile.open(indexFile, FINGERPRINT).orElseThrow() : parse();
+    return loaded;
+  }
+
+  @TearDown(Level.Invocation)
+  public void measureRetained(Heap heap) {
+    heap.retainedHeapMb = Math.max(0, usedHeapAfterGc() - baselineHeapBytes) >> 20;
+    loaded = null;
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteCorpus() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private Bm25Index parse() throws IOException {
+    List<DocumentChunk> parsed = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.filter(path -> path.toString().endsWith(".md")).sorted().toList()) {
+        try (InputStream in = Files.newInputStream(file)) {
+          parsed.addAll(MarkdownChunker.parse(file.getFileName().toString(), in));
+        }
+      }
+    }
+    return Bm25Index.build(parsed);
+  }
+
+  private static long usedHeapAfterGc() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
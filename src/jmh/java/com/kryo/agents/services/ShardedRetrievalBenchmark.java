@@ -0,0 +1,71 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.retrieval.Bm25Index;
+import com.kryo.agents.retrieval.IndexSnapshot;
+import com.kryo.agents.retrieval.ShardedSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword query latency distribution (read p0.50 / p0.99 from the sample-time output) when
+ * one query is ranked on {@code shards} threads through {@link ShardedSearch}. With
+ * {@code shards=1} the query is ranked on the calling thread only. Shard hand-off only pays
+ * off with idle cores, so compare runs on the same machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ShardedRetrievalBenchmark {
+
+  private static final int MIN_POSTINGS_PER_SHARD = 20_000;
+
+  @Param({"100000", "1000000"})
+  public int chunks;
+
+  @Param({"1", "2", "4", "8"})
+  public int shards;
+
+  private IndexSnapshot snapshot;
+  private ShardedSearch sharded;
+  private List<String> queries;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SyntheticCorpus corpus = new SyntheticCorpus(20_000, 42);
+    snapshot = IndexSnapshot.of(Bm25Index.build(corpus.chunks(chunks, 40)));
+    sharded = shards > 1 ? new ShardedSearch(shards, MIN_POSTINGS_PER_SHARD) : null;
+    queries = corpus.queries(64, 4);
+  }
+
+  @Benchmark
+  public int[] search() {
+    String query = queries.get(next);
+    next = (next + 1) % queries.size();
+    return snapshot.search(query, 5, sharded);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (sharded != null) {
+      sharded.close();
+    }
+  }
+}
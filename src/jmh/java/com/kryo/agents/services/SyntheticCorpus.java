@@ -0,0 +1,89 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator for documentation-like chunks. Words follow a Zipf distribution over a
+ * made-up vocabulary, so a few terms are very common and most are rare, as in real docs;
+ * the same seed always produces the same corpus and queries.
+ */
+final class SyntheticCorpus {
+
+  private static final String[] SYLLABLES = {
+      "ka", "lo", "mi", "ter", "ban", "sol", "ri", "den", "vo", "pra", "gen", "tu", "lex", "mor", "fi", "zan"
+  };
+  private static final String[] DOMAIN_TERMS = {
+      "error", "timeout", "token", "request", "config", "deploy", "webhook", "refund", "invoice", "header",
+      "retry", "endpoint", "latency", "cluster", "schema", "payload"
+  };
+
+  private final String[] vocabulary;
+  private final double[] cumulative;
+  private final SplittableRandom random;
+
+  SyntheticCorpus(int vocabularySize, long seed) {
+    this.random = new SplittableRandom(seed);
+    this.vocabulary = new String[vocabularySize];
+    for (int i = 0; i < vocabularySize; i++) {
+      vocabulary[i] = i < DOMAIN_TERMS.length ? DOMAIN_TERMS[i] : word(i);
+    }
+
+    this.cumulative = new double[vocabularySize];
+    double total = 0;
+    for (int i = 0; i < vocabularySize; i++) {
+      total += 1.0 / (i + 1);
+      cumulative[i] = total;
+    }
+    for (int i = 0; i < vocabularySize; i++) {
+      cumulative[i] /= total;
+    }
+  }
+
+  List<DocumentChunk> chunks(int count, int wordsPerChunk) {
+    List<DocumentChunk> chunks = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String header = sentence(3);
+      chunks.add(new DocumentChunk("synthetic-" + (i / 50) + ".md", header, sentence(wordsPerChunk)));
+    }
+    return chunks;
+  }
+
+  List<String> queries(int count, int wordsPerQuery) {
+    List<String> queries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      queries.add(sentence(wordsPerQuery));
+    }
+    return queries;
+  }
+
+  private String sentence(int words) {
+    StringBuilder text = new StringBuilder(words * 8);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        text.append(' ');
+      }
+      text.append(vocabulary[sampleRank()]);
+    }
+    return text.toString();
+  }
+
+  private int sampleRank() {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+  }
+
+  private static String word(int id) {
+    StringBuilder word = new StringBuilder();
+    int value = id;
+    do {
+      word.append(SYLLABLES[value % SYLLABLES.length]);
+      value /= SYLLABLES.length;
+    } while (value > 0);
+    return word.toString();
+  }
+}
@@ -1,10 +1,30 @@
 package com.kryo.agents.agents;
 
 import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.openai.Message;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
 public interface Agent {
   String getName();
 
   String respond(String message, List<ChatMessage> history);
+
+  default String respond(String message, List<ChatMessage> history, Speculation speculation) {
+    return respond(message, history);
+  }
+
+  default String respondStreaming(String message, List<ChatMessage> history, Speculation speculation,
+      Consumer<String> onToken) {
+    String reply = respond(message, history, speculation);
+    onToken.accept(reply);
+    return reply;
+  }
+
+  default CompletableFuture<Message> speculate(String message, List<ChatMessage> history,
+      ExecutorService executor) {
+    return null;
+  }
 }
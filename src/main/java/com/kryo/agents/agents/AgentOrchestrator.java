@@ -1,17 +1,30 @@
 package com.kryo.agents.agents;
 
 import com.kryo.agents.config.AppConstants;
+import com.kryo.agents.exceptions.CircuitOpenException;
 import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.models.openai.Message;
 import com.kryo.agents.services.AzureOpenAIService;
 import com.kryo.agents.services.ConversationService;
+import com.kryo.agents.services.DocumentRetrievalService;
+import com.kryo.agents.services.LocalIntentClassifier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -24,13 +37,40 @@ public class AgentOrchestrator {
   private final Map<String, String> conversationAgentMap;
   private final AzureOpenAIService openAIService;
   private final ConversationService conversationService;
+  private final LocalIntentClassifier localClassifier;
+  private final DocumentRetrievalService retrievalService;
+  private final ExecutorService executor;
+
+  private final Counter speculationHits;
+  private final Counter speculationMisses;
+  private final Counter prefetchUsed;
+  private final Counter prefetchWasted;
+  private final Timer speculationSaved;
+  private final Timer localClassification;
+  private final Timer llmClassification;
+  private final Timer degradedClassification;
 
   public AgentOrchestrator(List<Agent> agents, AzureOpenAIService openAIService,
-      ConversationService conversationService) {
+      ConversationService conversationService, LocalIntentClassifier localClassifier,
+      DocumentRetrievalService retrievalService, @Qualifier("llmCallExecutor") ExecutorService executor,
+      MeterRegistry meterRegistry) {
     this.agentMap = agents.stream()
         .collect(Collectors.toMap(Agent::getName, Function.identity()));
     this.openAIService = openAIService;
     this.conversationService = conversationService;
+    this.localClassifier = localClassifier;
+    this.retrievalService = retrievalService;
+    this.executor = executor;
+    this.speculationHits = Counter.builder("routing.speculation").tag("outcome", "hit").register(meterRegistry);
+    this.speculationMisses = Counter.builder("routing.speculation").tag("outcome", "miss").register(meterRegistry);
+    this.prefetchUsed = Counter.builder("routing.prefetch").tag("outcome", "used").register(meterRegistry);
+    this.prefetchWasted = Counter.builder("routing.prefetch").tag("outcome", "wasted").register(meterRegistry);
+    this.speculationSaved = Timer.builder("routing.speculation.latency.saved")
+        .description("Speculative work that overlapped with classification")
+        .register(meterRegistry);
+    this.localClassification = classificationTimer(meterRegistry, "local");
+    this.llmClassification = classificationTimer(meterRegistry, "llm");
+    this.degradedClassification = classificationTimer(meterRegistry, "degraded");
     this.conversationAgentMap = Collections.synchronizedMap(
         new LinkedHashMap<String, String>(AppConstants.MAX_TRACKED_CONVERSATIONS, 0.75f, true) {
           @Override
@@ -40,6 +80,69 @@ public class AgentOrchestrator {
         });
   }
 
+  private static Timer classificationTimer(MeterRegistry meterRegistry, String source) {
+    return Timer.builder("routing.classification")
+        .description("Time to pick an agent for a message")
+        .tag("source", source)
+        .register(meterRegistry);
+  }
+
+  public Dispatch dispatch(String conversationId, String userMessage, List<ChatMessage> history) {
+    if (userMessage == null || userMessage.trim().isEmpty()) {
+      return new Dispatch(route(conversationId, userMessage), Speculation.NONE);
+    }
+
+    long startNanos = System.nanoTime();
+    AtomicLong documentsDoneNanos = new AtomicLong();
+    AtomicLong completionDoneNanos = new AtomicLong();
+
+    CompletableFuture<List<DocumentChunk>> documents = Speculation.submit(
+        () -> retrievalService.retrieveDocuments(userMessage), executor);
+    documents.whenComplete((result, error) -> documentsDoneNanos.set(System.nanoTime()));
+
+    String stickyAgentName = getCurrentAgent(conversationId);
+    Agent stickyAgent = stickyAgentName == null ? null : agentMap.get(stickyAgentName);
+    CompletableFuture<Message> firstCompletion = stickyAgent == null || openAIService.isDegraded()
+        ? null
+        : stickyAgent.speculate(userMessage, history, executor);
+    if (firstCompletion != null) {
+      firstCompletion.whenComplete((result, error) -> completionDoneNanos.set(System.nanoTime()));
+    }
+
+    Agent agent = route(conversationId, userMessage);
+    long routedNanos = System.nanoTime();
+
+    if (firstCompletion != null) {
+      if (agent == stickyAgent) {
+        speculationHits.increment();
+        recordOverlap(startNanos, routedNanos, completionDoneNanos.get());
+      } else {
+        speculationMisses.increment();
+        firstCompletion.cancel(true);
+        firstCompletion = null;
+        logger.debug("Speculation discarded: sticky={}, routed={}", stickyAgentName, agent.getName());
+      }
+    }
+
+    if ("technical".equals(agent.getName())) {
+      prefetchUsed.increment();
+      if (firstCompletion == null) {
+        recordOverlap(startNanos, routedNanos, documentsDoneNanos.get());
+      }
+    } else {
+      prefetchWasted.increment();
+      documents.cancel(true);
+      documents = null;
+    }
+
+    return new Dispatch(agent, new Speculation(documents, firstCompletion));
+  }
+
+  private void recordOverlap(long startNanos, long routedNanos, long doneNanos) {
+    long overlapEnd = doneNanos == 0 ? routedNanos : Math.min(doneNanos, routedNanos);
+    speculationSaved.record(overlapEnd - startNanos, TimeUnit.NANOSECONDS);
+  }
+
   public Agent route(String userMessage) {
     return route(null, userMessage);
   }
@@ -53,16 +156,14 @@ public class AgentOrchestrator {
     String currentAgent = getCurrentAgent(conversationId);
 
     List<ChatMessage> history = (conversationId != null)
-        ? conversationService.getRecentHistory(conversationId, AppConstants.MAX_CONTEXT_MESSAGES)
+        ? conversationService.getRecentHistory(conversationId)
         : Collections.singletonList(new ChatMessage(com.kryo.agents.models.Role.USER, userMessage));
 
     if (history.isEmpty()) {
       history = Collections.singletonList(new ChatMessage(com.kryo.agents.models.Role.USER, userMessage));
     }
 
-    String suggestedAgent = openAIService.classifyIntent(history);
-
-    String normalizedSuggested = normalizeAgentName(suggestedAgent);
+    String normalizedSuggested = classify(userMessage, history, currentAgent);
 
     if (!agentMap.containsKey(normalizedSuggested) && !"router".equals(normalizedSuggested)) {
       logger.warn("Model suggested unknown agent '{}', defaulting to router", normalizedSuggested);
@@ -81,6 +182,49 @@ public class AgentOrchestrator {
     return agentMap.getOrDefault(finalAgent, agentMap.get("router"));
   }
 
+  /**
+   * The local classifier only sees the latest message, so once a conversation has an agent a
+   * local label is trusted only when it keeps that agent; a switch is left to the LLM, which
+   * reads the history.
+   */
+  private String classify(String userMessage, List<ChatMessage> history, String currentAgent) {
+    long localStart = System.nanoTime();
+    LocalIntentClassifier.Classification local = localClassifier.classify(userMessage);
+    boolean keepsAgent = currentAgent == null || currentAgent.equals(local.label()) || "router".equals(local.label());
+    if (keepsAgent && localClassifier.isConfident(local) && !localClassifier.shouldShadowCheck()) {
+      localClassification.record(System.nanoTime() - localStart, TimeUnit.NANOSECONDS);
+      localClassifier.recordLocalDecision();
+      logger.debug("Local classifier routed message: label={}, confidence={}", local.label(), local.confidence());
+      return local.label();
+    }
+    if (openAIService.isDegraded()) {
+      return classifyDegraded(local, localStart);
+    }
+
+    long start = System.nanoTime();
+    String suggested;
+    try {
+      suggested = normalizeAgentName(openAIService.classifyIntent(history));
+    } catch (CircuitOpenException e) {
+      return classifyDegraded(local, localStart);
+    }
+    long llmNanos = System.nanoTime() - start;
+    llmClassification.record(llmNanos, TimeUnit.NANOSECONDS);
+    localClassifier.recordLlmDecision(userMessage, local, suggested, llmNanos);
+    return suggested;
+  }
+
+  /**
+   * With the LLM unavailable the local heuristic decides even below its confidence threshold;
+   * a message it cannot place at all stays with the conversation's current agent.
+   */
+  private String classifyDegraded(LocalIntentClassifier.Classification local, long startNanos) {
+    degradedClassification.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    logger.debug("LLM unavailable, routing on local classifier: label={}, confidence={}", local.label(),
+        local.confidence());
+    return local.label();
+  }
+
   private String getCurrentAgent(String conversationId) {
     if (conversationId == null) {
       return null;
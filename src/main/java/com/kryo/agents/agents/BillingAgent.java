@@ -2,11 +2,16 @@ package com.kryo.agents.agents;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kryo.agents.codec.OpenAICodec;
+import com.kryo.agents.models.CallType;
 import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.Role;
 import com.kryo.agents.models.openai.Message;
 import com.kryo.agents.models.openai.Tool;
+import com.kryo.agents.resilience.Deadline;
 import com.kryo.agents.services.AzureOpenAIService;
 import com.kryo.agents.services.BillingService;
+import com.kryo.agents.services.ContextAssembler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -16,6 +21,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class BillingAgent implements Agent {
@@ -24,16 +31,46 @@ public class BillingAgent implements Agent {
   private static final Set<String> VALID_PLANS = Set.of("Starter", "Pro", "Enterprise");
   private static final int MAX_CUSTOMER_ID_LENGTH = 100;
   private static final int MAX_REASON_LENGTH = 500;
+  private static final List<Tool> TOOLS = List.of(
+      buildCheckSubscriptionTool(),
+      buildInitiateRefundTool(),
+      buildExplainRefundPolicyTool(),
+      buildChangePlanTool());
+  private static final String SYSTEM_PROMPT = """
+      You are a senior Billing Support Specialist. You handle subscription inquiries and refund requests with accuracy and empathy.
+
+      YOUR CAPABILITIES:
+      - Check subscription details (plan, pricing, billing cycle).
+      - Initiate refund requests and generate support tickets.
+      - Explain refund policy and timelines.
+      - Change subscription plans.
+
+      CORE GUIDELINES:
+      - EXTRACTION: Use `customerId` and `reason` if provided in the user's message. Do NOT ask for them again if present.
+      - PERSONALIZATION: When reporting results, explicitly state which specific part of the policy applies to the user. (e.g., "Since you requested this within 7 days, you qualify for a Full Refund").
+      - ACCURACY: Report tool outputs exactly. Do not speculate on dates.
+
+      SITUATIONAL GUIDELINES:
+      - REFUSALS: If a refund is denied based on policy, explain why clearly but gently.
+      - PRIVACY: Do not repeat full customer IDs unless confirming them.
+      - TONE: Helpful, reassuring, and concise.
+
+      Available tools: checkSubscription, initiateRefund, explainRefundPolicy, changePlan
+      """;
 
   private final AzureOpenAIService openAIService;
   private final BillingService billingService;
   private final ObjectMapper objectMapper;
+  private final ContextAssembler contextAssembler;
 
   public BillingAgent(AzureOpenAIService openAIService, BillingService billingService,
-      ObjectMapper objectMapper) {
+      ObjectMapper objectMapper, ContextAssembler contextAssembler, OpenAICodec codec) {
     this.openAIService = openAIService;
     this.billingService = billingService;
     this.objectMapper = objectMapper;
+    this.contextAssembler = contextAssembler;
+    codec.registerStatic(SYSTEM_PROMPT);
+    codec.registerTools(TOOLS);
   }
 
   @Override
@@ -43,56 +80,44 @@ public class BillingAgent implements Agent {
 
   @Override
   public String respond(String message, List<ChatMessage> history) {
-    String systemPrompt = """
-        You are a senior Billing Support Specialist. You handle subscription inquiries and refund requests with accuracy and empathy.
-
-        YOUR CAPABILITIES:
-        - Check subscription details (plan, pricing, billing cycle).
-        - Initiate refund requests and generate support tickets.
-        - Explain refund policy and timelines.
-        - Change subscription plans.
-
-        CORE GUIDELINES:
-        - EXTRACTION: Use `customerId` and `reason` if provided in the user's message. Do NOT ask for them again if present.
-        - PERSONALIZATION: When reporting results, explicitly state which specific part of the policy applies to the user. (e.g., "Since you requested this within 7 days, you qualify for a Full Refund").
-        - ACCURACY: Report tool outputs exactly. Do not speculate on dates.
-
-        SITUATIONAL GUIDELINES:
-        - REFUSALS: If a refund is denied based on policy, explain why clearly but gently.
-        - PRIVACY: Do not repeat full customer IDs unless confirming them.
-        - TONE: Helpful, reassuring, and concise.
-
-        Available tools: checkSubscription, initiateRefund, explainRefundPolicy, changePlan
-        """;
-
-    List<Tool> tools = List.of(
-        buildCheckSubscriptionTool(),
-        buildInitiateRefundTool(),
-        buildExplainRefundPolicyTool(),
-        buildChangePlanTool());
-
-    List<Message> conversation = new ArrayList<>();
-    conversation.add(Message.system(systemPrompt));
-
-    for (ChatMessage msg : history) {
-      conversation.add(new Message(msg.role().name().toLowerCase(), msg.content()));
-    }
+    return respond(message, history, Speculation.NONE);
+  }
 
-    if (history.isEmpty() || !history.get(history.size() - 1).content().equals(message)) {
-      conversation.add(Message.user(message));
-    }
+  @Override
+  public String respond(String message, List<ChatMessage> history, Speculation speculation) {
+    List<Message> conversation = buildConversation(message, history);
+    Message firstResponse = speculation.awaitFirstCompletion().orElse(null);
 
     try {
-      Message response = openAIService.executeToolCallLoop(conversation, tools,
-          this::executeToolCall);
+      Message response = openAIService.executeToolCallLoop(getName(), conversation, TOOLS,
+          this::executeToolCall, firstResponse);
       return response != null && response.content() != null ? response.content()
           : "I apologize, I could not generate a response.";
     } catch (Exception e) {
+      Deadline.check();
       logger.error("Billing agent response failed", e);
       return "I apologize, but I am encountering an error while processing your request. Please try again.";
     }
   }
 
+  @Override
+  public CompletableFuture<Message> speculate(String message, List<ChatMessage> history,
+      ExecutorService executor) {
+    List<Message> conversation = buildConversation(message, history);
+    return Speculation.submit(
+        () -> openAIService.sendRequest(getName(), CallType.AGENT_ANSWER, conversation, TOOLS), executor);
+  }
+
+  private List<Message> buildConversation(String message, List<ChatMessage> history) {
+    List<ChatMessage> turns = history;
+    if (history.isEmpty() || !history.get(history.size() - 1).content().equals(message)) {
+      turns = new ArrayList<>(history);
+      turns.add(new ChatMessage(Role.USER, message));
+    }
+
+    return contextAssembler.assemble(CallType.AGENT_ANSWER, List.of(Message.system(SYSTEM_PROMPT)), turns);
+  }
+
   public String executeToolCall(String toolName, String argumentsJson) {
     try {
       JsonNode args = objectMapper.readTree(argumentsJson);
@@ -211,7 +236,7 @@ public class BillingAgent implements Agent {
     }
   }
 
-  private Tool buildCheckSubscriptionTool() {
+  private static Tool buildCheckSubscriptionTool() {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put("type", "object");
 
@@ -228,7 +253,7 @@ public class BillingAgent implements Agent {
         parameters));
   }
 
-  private Tool buildInitiateRefundTool() {
+  private static Tool buildInitiateRefundTool() {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put("type", "object");
 
@@ -248,7 +273,7 @@ public class BillingAgent implements Agent {
         parameters));
   }
 
-  private Tool buildExplainRefundPolicyTool() {
+  private static Tool buildExplainRefundPolicyTool() {
     return new Tool(new com.kryo.agents.models.openai.Function(
         "explainRefundPolicy",
         "Get the refund policy details including timeframes and percentages",
@@ -257,7 +282,7 @@ public class BillingAgent implements Agent {
             "properties", Map.of())));
   }
 
-  private Tool buildChangePlanTool() {
+  private static Tool buildChangePlanTool() {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put("type", "object");
 
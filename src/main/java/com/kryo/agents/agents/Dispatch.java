@@ -0,0 +1,6 @@
+package com.kryo.agents.agents;
+
+public record Dispatch(
+    Agent agent,
+    Speculation speculation) {
+}
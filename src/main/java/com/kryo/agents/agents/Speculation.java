@@ -0,0 +1,72 @@
+package com.kryo.agents.agents;
+
+import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.resilience.Deadline;
+import com.kryo.agents.resilience.UsageTally;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Work started while the orchestrator is still classifying a message: a document
+ * retrieval prefetch and, for a sticky agent, its first completion. Agents consume
+ * whichever parts are present and fall back to doing the work themselves otherwise.
+ */
+public record Speculation(
+    CompletableFuture<List<DocumentChunk>> documents,
+    CompletableFuture<Message> firstCompletion) {
+
+  private static final Logger logger = LoggerFactory.getLogger(Speculation.class);
+
+  public static final Speculation NONE = new Speculation(null, null);
+
+  public List<DocumentChunk> documentsOr(Supplier<List<DocumentChunk>> fallback) {
+    if (documents != null) {
+      try {
+        return documents.join();
+      } catch (CompletionException | CancellationException e) {
+        logger.debug("Document prefetch failed, retrieving inline: {}", e.getMessage());
+      }
+    }
+    return fallback.get();
+  }
+
+  public Optional<Message> awaitFirstCompletion() {
+    if (firstCompletion == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.ofNullable(firstCompletion.join());
+    } catch (CompletionException | CancellationException e) {
+      logger.debug("Speculative completion failed, requesting inline: {}", e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  public static <T> CompletableFuture<T> submit(Supplier<T> work, ExecutorService executor) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Supplier<T> charged = Deadline.propagate(UsageTally.propagate(work));
+    Future<?> task = executor.submit(() -> {
+      try {
+        result.complete(charged.get());
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    result.whenComplete((value, error) -> {
+      if (result.isCancelled()) {
+        task.cancel(true);
+      }
+    });
+    return result;
+  }
+}
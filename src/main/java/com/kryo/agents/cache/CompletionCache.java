@@ -0,0 +1,121 @@
+package com.kryo.agents.cache;
+
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.models.openai.OpenAIRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Component
+public class CompletionCache {
+
+  private final int maxEntries;
+  private final long ttlNanos;
+  private final Set<CallType> cacheableCallTypes = EnumSet.noneOf(CallType.class);
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter sizeEvictions;
+  private final Counter expiredEvictions;
+
+  private final LinkedHashMap<String, CachedCompletion> entries;
+
+  public CompletionCache(
+      @Value("${azure.openai.cache.max-entries:1000}") int maxEntries,
+      @Value("${azure.openai.cache.ttl:10m}") Duration ttl,
+      @Value("${azure.openai.cache.call-types:classification,agent-answer}") List<String> callTypes,
+      MeterRegistry meterRegistry) {
+    this.maxEntries = maxEntries;
+    this.ttlNanos = ttl.toNanos();
+
+    for (CallType callType : CallType.values()) {
+      if (callType != CallType.TOOL_STEP && callTypes.contains(callType.key())) {
+        cacheableCallTypes.add(callType);
+      }
+    }
+
+    this.hits = Counter.builder("azure.openai.cache.requests").tag("result", "hit").register(meterRegistry);
+    this.misses = Counter.builder("azure.openai.cache.requests").tag("result", "miss").register(meterRegistry);
+    this.sizeEvictions = Counter.builder("azure.openai.cache.evictions").tag("cause", "size")
+        .register(meterRegistry);
+    this.expiredEvictions = Counter.builder("azure.openai.cache.evictions").tag("cause", "expired")
+        .register(meterRegistry);
+
+    this.entries = new LinkedHashMap<>(Math.min(maxEntries, 1024), 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedCompletion> eldest) {
+        if (size() > CompletionCache.this.maxEntries) {
+          sizeEvictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+
+    Gauge.builder("azure.openai.cache.size", this, CompletionCache::size).register(meterRegistry);
+  }
+
+  public boolean isCacheable(CallType callType, OpenAIRequest request) {
+    return maxEntries > 0
+        && cacheableCallTypes.contains(callType)
+        && (request.tools() == null || request.tools().isEmpty())
+        && !Boolean.TRUE.equals(request.stream());
+  }
+
+  /**
+   * Looks up a completion by the request's {@link RequestFingerprinter fingerprint}, which the
+   * caller computes once per call and also passes to {@link #put}. A null fingerprint bypasses
+   * the cache.
+   */
+  public Optional<Message> get(CallType callType, OpenAIRequest request, String fingerprint) {
+    if (fingerprint == null || !isCacheable(callType, request)) {
+      return Optional.empty();
+    }
+
+    synchronized (entries) {
+      CachedCompletion cached = entries.get(fingerprint);
+      if (cached != null && cached.expiresAtNanos() - System.nanoTime() <= 0) {
+        entries.remove(fingerprint);
+        expiredEvictions.increment();
+        cached = null;
+      }
+      if (cached == null) {
+        misses.increment();
+        return Optional.empty();
+      }
+      hits.increment();
+      return Optional.of(cached.message());
+    }
+  }
+
+  public void put(CallType callType, OpenAIRequest request, String fingerprint, Message message) {
+    if (fingerprint == null || !isCacheable(callType, request) || message == null || message.content() == null
+        || (message.tool_calls() != null && !message.tool_calls().isEmpty())) {
+      return;
+    }
+
+    synchronized (entries) {
+      entries.put(fingerprint, new CachedCompletion(message, System.nanoTime() + ttlNanos));
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private record CachedCompletion(Message message, long expiresAtNanos) {
+  }
+}
@@ -0,0 +1,44 @@
+package com.kryo.agents.cache;
+
+import com.kryo.agents.codec.OpenAICodec;
+import com.kryo.agents.models.openai.OpenAIRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Hashes the request body exactly as the codec would send it, streaming the encoded bytes into
+ * the digest rather than serializing the request a second time.
+ */
+@Component
+public class RequestFingerprinter {
+
+  private static final Logger logger = LoggerFactory.getLogger(RequestFingerprinter.class);
+
+  private final OpenAICodec codec;
+
+  public RequestFingerprinter(OpenAICodec codec) {
+    this.codec = codec;
+  }
+
+  public Optional<String> fingerprint(OpenAIRequest request) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      try (DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+        codec.writeRequest(request, out);
+      }
+      return Optional.of(HexFormat.of().formatHex(digest.digest()));
+    } catch (IOException | NoSuchAlgorithmException e) {
+      logger.warn("Could not fingerprint OpenAI request: {}", e.getMessage());
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,519 @@
+package com.kryo.agents.codec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kryo.agents.models.openai.EmbeddingResponse;
+import com.kryo.agents.models.openai.FunctionCall;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.models.openai.OpenAIRequest;
+import com.kryo.agents.models.openai.OpenAIResponse;
+import com.kryo.agents.models.openai.Tool;
+import com.kryo.agents.models.openai.ToolCall;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams chat completion requests straight into the request body and pulls only the
+ * fields we read out of responses. Static prompts and tool definitions registered up
+ * front are written from cached UTF-8 bytes instead of being re-encoded on every call.
+ */
+@Component
+public class OpenAICodec {
+
+  private static final SerializedString MESSAGES = new SerializedString("messages");
+  private static final SerializedString TEMPERATURE = new SerializedString("temperature");
+  private static final SerializedString MAX_TOKENS = new SerializedString("max_tokens");
+  private static final SerializedString TOOLS = new SerializedString("tools");
+  private static final SerializedString TOOL_CHOICE = new SerializedString("tool_choice");
+  private static final SerializedString STREAM = new SerializedString("stream");
+  private static final SerializedString ROLE = new SerializedString("role");
+  private static final SerializedString CONTENT = new SerializedString("content");
+  private static final SerializedString TOOL_CALL_ID = new SerializedString("tool_call_id");
+  private static final SerializedString TOOL_CALLS = new SerializedString("tool_calls");
+  private static final SerializedString ID = new SerializedString("id");
+  private static final SerializedString TYPE = new SerializedString("type");
+  private static final SerializedString FUNCTION = new SerializedString("function");
+  private static final SerializedString NAME = new SerializedString("name");
+  private static final SerializedString ARGUMENTS = new SerializedString("arguments");
+  private static final SerializedString INPUT = new SerializedString("input");
+
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter toolWriter;
+  private final JsonFactory jsonFactory;
+  private final Map<String, SerializedString> staticStrings = new ConcurrentHashMap<>();
+  private volatile Map<List<Tool>, SerializedString> staticTools = new IdentityHashMap<>();
+
+  public OpenAICodec(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    // Tool schemas are usually built from maps; sorting their keys keeps the encoded tools, and so
+    // the prompt prefix the provider caches, identical across calls and restarts.
+    this.toolWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    this.jsonFactory = objectMapper.getFactory();
+    for (String role : List.of("system", "user", "assistant", "tool")) {
+      registerStatic(role);
+    }
+  }
+
+  public String registerStatic(String text) {
+    staticStrings.computeIfAbsent(text, t -> {
+      SerializedString encoded = new SerializedString(t);
+      encoded.asQuotedUTF8();
+      return encoded;
+    });
+    return text;
+  }
+
+  public List<Tool> registerTools(List<Tool> tools) {
+    try {
+      SerializedString encoded = new SerializedString(toolWriter.writeValueAsString(tools));
+      encoded.asUnquotedUTF8();
+      synchronized (this) {
+        Map<List<Tool>, SerializedString> updated = new IdentityHashMap<>(staticTools);
+        updated.put(tools, encoded);
+        staticTools = updated;
+      }
+      return tools;
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not pre-encode tool definitions", e);
+    }
+  }
+
+  public void writeRequest(OpenAIRequest request, OutputStream out) throws IOException {
+    try (JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+      gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      gen.writeStartObject();
+
+      if (request.messages() != null) {
+        gen.writeFieldName(MESSAGES);
+        gen.writeStartArray();
+        for (Message message : request.messages()) {
+          writeMessage(gen, message);
+        }
+        gen.writeEndArray();
+      }
+      gen.writeFieldName(TEMPERATURE);
+      gen.writeNumber(request.temperature());
+      gen.writeFieldName(MAX_TOKENS);
+      gen.writeNumber(request.max_tokens());
+
+      if (request.tools() != null) {
+        gen.writeFieldName(TOOLS);
+        SerializedString encoded = staticTools.get(request.tools());
+        if (encoded != null) {
+          gen.writeRawValue(encoded);
+        } else {
+          toolWriter.writeValue(gen, request.tools());
+        }
+      }
+      if (request.tool_choice() != null) {
+        gen.writeFieldName(TOOL_CHOICE);
+        if (request.tool_choice() instanceof String choice) {
+          writeString(gen, choice);
+        } else {
+          objectMapper.writeValue(gen, request.tool_choice());
+        }
+      }
+      if (request.stream() != null) {
+        gen.writeFieldName(STREAM);
+        gen.writeBoolean(request.stream());
+      }
+      gen.writeEndObject();
+    }
+  }
+
+  private void writeMessage(JsonGenerator gen, Message message) throws IOException {
+    gen.writeStartObject();
+    if (message.role() != null) {
+      gen.writeFieldName(ROLE);
+      writeString(gen, message.role());
+    }
+    if (message.content() != null) {
+      gen.writeFieldName(CONTENT);
+      writeString(gen, message.content());
+    }
+    if (message.tool_call_id() != null) {
+      gen.writeFieldName(TOOL_CALL_ID);
+      gen.writeString(message.tool_call_id());
+    }
+    if (message.tool_calls() != null) {
+      gen.writeFieldName(TOOL_CALLS);
+      gen.writeStartArray();
+      for (ToolCall toolCall : message.tool_calls()) {
+        gen.writeStartObject();
+        gen.writeFieldName(ID);
+        gen.writeString(toolCall.id());
+        gen.writeFieldName(TYPE);
+        gen.writeString(toolCall.type());
+        gen.writeFieldName(FUNCTION);
+        if (toolCall.function() == null) {
+          gen.writeNull();
+        } else {
+          gen.writeStartObject();
+          gen.writeFieldName(NAME);
+          gen.writeString(toolCall.function().name());
+          gen.writeFieldName(ARGUMENTS);
+          gen.writeString(toolCall.function().arguments());
+          gen.writeEndObject();
+        }
+        gen.writeEndObject();
+      }
+      gen.writeEndArray();
+    }
+    gen.writeEndObject();
+  }
+
+  private void writeString(JsonGenerator gen, String value) throws IOException {
+    SerializableString encoded = staticStrings.get(value);
+    if (encoded != null) {
+      gen.writeString(encoded);
+    } else {
+      gen.writeString(value);
+    }
+  }
+
+  public OpenAIResponse readResponse(InputStream in) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+
+      String id = null;
+      List<OpenAIResponse.Choice> choices = null;
+      OpenAIResponse.Usage usage = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "id" -> id = parser.getValueAsString();
+          case "choices" -> choices = readFirstChoice(parser);
+          case "usage" -> usage = readUsage(parser);
+          default -> parser.skipChildren();
+        }
+      }
+      return new OpenAIResponse(id, choices, usage);
+    }
+  }
+
+  public void writeEmbeddingRequest(List<String> inputs, OutputStream out) throws IOException {
+    try (JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+      gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      gen.writeStartObject();
+      gen.writeFieldName(INPUT);
+      gen.writeStartArray();
+      for (String input : inputs) {
+        gen.writeString(input);
+      }
+      gen.writeEndArray();
+      gen.writeEndObject();
+    }
+  }
+
+  /** Reads embedding vectors straight into float arrays, ordered by each item's {@code index}. */
+  public EmbeddingResponse readEmbeddingResponse(InputStream in) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+
+      List<float[]> embeddings = new ArrayList<>();
+      OpenAIResponse.Usage usage = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "data" -> readEmbeddings(parser, embeddings);
+          case "usage" -> usage = readUsage(parser);
+          default -> parser.skipChildren();
+        }
+      }
+      return new EmbeddingResponse(embeddings.toArray(float[][]::new), usage);
+    }
+  }
+
+  private static void readEmbeddings(JsonParser parser, List<float[]> embeddings) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      int index = embeddings.size();
+      float[] embedding = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "index" -> index = parser.getValueAsInt();
+          case "embedding" -> embedding = readFloats(parser);
+          default -> parser.skipChildren();
+        }
+      }
+      while (embeddings.size() <= index) {
+        embeddings.add(null);
+      }
+      embeddings.set(index, embedding);
+    }
+  }
+
+  private static float[] readFloats(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    float[] values = new float[256];
+    int size = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = parser.getFloatValue();
+    }
+    return Arrays.copyOf(values, size);
+  }
+
+  public String readDeltaContent(String chunk) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(chunk)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+      String content = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        if ("choices".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+          JsonToken first = parser.nextToken();
+          if (first == JsonToken.START_OBJECT) {
+            content = readDeltaFromChoice(parser);
+          }
+          if (first != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+            skipRemainingArray(parser);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return content;
+    }
+  }
+
+  /** {@code values} as a JSON array of strings; the escaping keeps each value inside its own element. */
+  public String writeStringArray(List<String> values) throws IOException {
+    StringWriter out = new StringWriter();
+    try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
+      gen.writeStartArray();
+      for (String value : values) {
+        gen.writeString(value);
+      }
+      gen.writeEndArray();
+    }
+    return out.toString();
+  }
+
+  public List<String> readStringArray(String json) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        return null;
+      }
+      List<String> values = new ArrayList<>();
+      JsonToken token;
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (token != JsonToken.VALUE_STRING) {
+          return null;
+        }
+        values.add(parser.getText());
+      }
+      return values;
+    }
+  }
+
+  private String readDeltaFromChoice(JsonParser parser) throws IOException {
+    String content = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("delta".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String deltaField = parser.currentName();
+          parser.nextToken();
+          if ("content".equals(deltaField)) {
+            content = parser.getValueAsString();
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return content;
+  }
+
+  private List<OpenAIResponse.Choice> readFirstChoice(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    JsonToken first = parser.nextToken();
+    if (first != JsonToken.START_OBJECT) {
+      if (first != JsonToken.END_ARRAY) {
+        parser.skipChildren();
+        skipRemainingArray(parser);
+      }
+      return List.of();
+    }
+
+    int index = 0;
+    Message message = null;
+    String finishReason = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "index" -> index = parser.getValueAsInt();
+        case "message" -> message = readMessage(parser);
+        case "finish_reason" -> finishReason = parser.getValueAsString();
+        default -> parser.skipChildren();
+      }
+    }
+    skipRemainingArray(parser);
+    return List.of(new OpenAIResponse.Choice(index, message, finishReason));
+  }
+
+  private Message readMessage(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return null;
+    }
+
+    String role = null;
+    String content = null;
+    String toolCallId = null;
+    List<ToolCall> toolCalls = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "role" -> role = parser.getValueAsString();
+        case "content" -> content = parser.getValueAsString();
+        case "tool_call_id" -> toolCallId = parser.getValueAsString();
+        case "tool_calls" -> toolCalls = readToolCalls(parser);
+        default -> parser.skipChildren();
+      }
+    }
+    return new Message(role, content, toolCallId, toolCalls);
+  }
+
+  private List<ToolCall> readToolCalls(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+
+    List<ToolCall> toolCalls = new ArrayList<>();
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      String id = null;
+      String type = null;
+      FunctionCall function = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "id" -> id = parser.getValueAsString();
+          case "type" -> type = parser.getValueAsString();
+          case "function" -> function = readFunction(parser);
+          default -> parser.skipChildren();
+        }
+      }
+      toolCalls.add(new ToolCall(id, type, function));
+    }
+    return toolCalls;
+  }
+
+  private FunctionCall readFunction(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return null;
+    }
+
+    String name = null;
+    String arguments = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "name" -> name = parser.getValueAsString();
+        case "arguments" -> arguments = parser.getValueAsString();
+        default -> parser.skipChildren();
+      }
+    }
+    return new FunctionCall(name, arguments);
+  }
+
+  private OpenAIResponse.Usage readUsage(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return null;
+    }
+
+    int promptTokens = 0;
+    int completionTokens = 0;
+    int totalTokens = 0;
+    OpenAIResponse.PromptTokensDetails promptDetails = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "prompt_tokens" -> promptTokens = parser.getValueAsInt();
+        case "completion_tokens" -> completionTokens = parser.getValueAsInt();
+        case "total_tokens" -> totalTokens = parser.getValueAsInt();
+        case "prompt_tokens_details" -> promptDetails = readPromptTokensDetails(parser);
+        default -> parser.skipChildren();
+      }
+    }
+    return new OpenAIResponse.Usage(promptTokens, completionTokens, totalTokens, promptDetails);
+  }
+
+  private OpenAIResponse.PromptTokensDetails readPromptTokensDetails(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return null;
+    }
+
+    int cachedTokens = 0;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("cached_tokens".equals(field)) {
+        cachedTokens = parser.getValueAsInt();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return new OpenAIResponse.PromptTokensDetails(cachedTokens);
+  }
+
+  private static void skipRemainingArray(JsonParser parser) throws IOException {
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      parser.skipChildren();
+    }
+  }
+}
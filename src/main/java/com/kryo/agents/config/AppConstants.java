@@ -2,5 +2,4 @@ package com.kryo.agents.config;
 
 public class AppConstants {
   public static final int MAX_TRACKED_CONVERSATIONS = 10;
-  public static final int MAX_CONTEXT_MESSAGES = 10;
 }
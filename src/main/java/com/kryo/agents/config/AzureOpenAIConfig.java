@@ -1,36 +1,79 @@
 package com.kryo.agents.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class AzureOpenAIConfig {
 
-  @Value("${azure.openai.endpoint}")
-  private String endpoint;
-
-  @Value("${azure.openai.key}")
-  private String apiKey;
-
   @Value("${azure.openai.timeout.connect:10000}")
   private int connectTimeout;
 
   @Value("${azure.openai.timeout.read:30000}")
   private int readTimeout;
 
+  @Value("${azure.openai.http.client:jdk}")
+  private String clientType;
+
+  @Value("${azure.openai.http.http2:true}")
+  private boolean http2;
+
+  @Value("${azure.openai.http.max-in-flight:50}")
+  private int maxInFlight;
+
+  @Value("${azure.openai.http.acquire-timeout:5s}")
+  private Duration acquireTimeout;
+
+  @Bean
+  public HttpClient azureOpenAiHttpClient() {
+    return HttpClient.newBuilder()
+        .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofMillis(connectTimeout))
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+  }
+
   @Bean
-  public RestClient azureOpenAiClient() {
-    var factory = new org.springframework.http.client.SimpleClientHttpRequestFactory();
-    factory.setConnectTimeout(connectTimeout);
-    factory.setReadTimeout(readTimeout);
+  public InFlightRequests azureOpenAiInFlightRequests(MeterRegistry meterRegistry) {
+    return new InFlightRequests(maxInFlight, acquireTimeout.toMillis(), meterRegistry);
+  }
 
+  @Bean
+  public RestClient azureOpenAiClient(HttpClient azureOpenAiHttpClient) {
+    return restClient(requestFactory(azureOpenAiHttpClient));
+  }
+
+  /**
+   * The client shape used for Azure OpenAI. It takes no interceptors, because any interceptor
+   * makes {@code RestClient} buffer request bodies instead of streaming them.
+   */
+  public static RestClient restClient(ClientHttpRequestFactory requestFactory) {
     return RestClient.builder()
-        .requestFactory(factory)
-        .baseUrl(endpoint)
-        .defaultHeader("api-key", apiKey)
+        .requestFactory(requestFactory)
         .defaultHeader("Content-Type", "application/json")
         .build();
   }
+
+  private ClientHttpRequestFactory requestFactory(HttpClient httpClient) {
+    if ("simple".equalsIgnoreCase(clientType)) {
+      var factory = new SimpleClientHttpRequestFactory();
+      factory.setConnectTimeout(connectTimeout);
+      factory.setReadTimeout(readTimeout);
+      return factory;
+    }
+
+    var factory = new JdkClientHttpRequestFactory(httpClient);
+    factory.setReadTimeout(Duration.ofMillis(readTimeout));
+    return factory;
+  }
 }
@@ -0,0 +1,77 @@
+package com.kryo.agents.config;
+
+import com.kryo.agents.resilience.EndpointPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+@Component
+public class ConnectionPrewarmer {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionPrewarmer.class);
+
+  private final HttpClient httpClient;
+  private final EndpointPool endpointPool;
+
+  @Value("${azure.openai.http.client:jdk}")
+  private String clientType;
+
+  @Value("${azure.openai.http.prewarm-connections:2}")
+  private int prewarmConnections;
+
+  @Value("${azure.openai.timeout.connect:10000}")
+  private int connectTimeout;
+
+  public ConnectionPrewarmer(HttpClient azureOpenAiHttpClient, EndpointPool endpointPool) {
+    this.httpClient = azureOpenAiHttpClient;
+    this.endpointPool = endpointPool;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void prewarm() {
+    if (!"jdk".equalsIgnoreCase(clientType) || prewarmConnections <= 0) {
+      return;
+    }
+    for (EndpointPool.Endpoint endpoint : endpointPool.endpoints()) {
+      prewarm(endpoint.url());
+    }
+  }
+
+  private void prewarm(String endpoint) {
+    HttpRequest request;
+    try {
+      request = HttpRequest.newBuilder(URI.create(endpoint))
+          .method("HEAD", HttpRequest.BodyPublishers.noBody())
+          .timeout(Duration.ofMillis(connectTimeout))
+          .build();
+    } catch (IllegalArgumentException e) {
+      logger.warn("Skipping connection pre-warming, invalid endpoint: {}", e.getMessage());
+      return;
+    }
+
+    long start = System.nanoTime();
+    CompletableFuture<?>[] handshakes = IntStream.range(0, prewarmConnections)
+        .mapToObj(i -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+        .toArray(CompletableFuture[]::new);
+
+    CompletableFuture.allOf(handshakes).whenComplete((ignored, error) -> {
+      long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+      if (error != null) {
+        logger.warn("Connection pre-warming failed after {}ms: {}", elapsedMs, error.getMessage());
+      } else {
+        logger.info("Pre-warmed {} connection(s) to {} in {}ms", prewarmConnections, endpoint, elapsedMs);
+      }
+    });
+  }
+}
@@ -0,0 +1,21 @@
+package com.kryo.agents.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutorConfig {
+
+  @Bean(destroyMethod = "close")
+  public ExecutorService chatStreamExecutor() {
+    return Executors.newVirtualThreadPerTaskExecutor();
+  }
+
+  @Bean(destroyMethod = "close")
+  public ExecutorService llmCallExecutor() {
+    return Executors.newVirtualThreadPerTaskExecutor();
+  }
+}
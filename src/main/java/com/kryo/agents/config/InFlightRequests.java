@@ -0,0 +1,97 @@
+package com.kryo.agents.config;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.ConcurrencyLimitExceededException;
+import com.kryo.agents.resilience.Deadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of upstream requests in flight and reports how many are. A caller holds a
+ * {@link Slot} around the whole exchange, response included; this counts requests, not
+ * connections, since HTTP/2 multiplexes many of them over one connection and the JDK
+ * HttpClient does not report its pool.
+ * <p>
+ * This is deliberately not a {@code ClientHttpRequestInterceptor}: any interceptor makes
+ * {@code RestClient} buffer the whole request body before sending it, which would undo the
+ * codec writing straight to the connection.
+ */
+public class InFlightRequests {
+
+  private final int maxInFlight;
+  private final long acquireTimeoutMs;
+  private final Semaphore permits;
+  private final AtomicInteger pending = new AtomicInteger();
+
+  public InFlightRequests(int maxInFlight, long acquireTimeoutMs, MeterRegistry meterRegistry) {
+    this.maxInFlight = maxInFlight;
+    this.acquireTimeoutMs = acquireTimeoutMs;
+    this.permits = new Semaphore(maxInFlight, true);
+
+    Gauge.builder("azure.openai.http.requests.active", this, InFlightRequests::active)
+        .description("Upstream requests in flight, until their response is closed")
+        .register(meterRegistry);
+    Gauge.builder("azure.openai.http.requests.available", this, InFlightRequests::available)
+        .description("Requests that can start without waiting")
+        .register(meterRegistry);
+    Gauge.builder("azure.openai.http.requests.pending", this, InFlightRequests::pending)
+        .description("Requests waiting for an in-flight slot")
+        .register(meterRegistry);
+    Gauge.builder("azure.openai.http.requests.max", this, InFlightRequests::max)
+        .description("Configured maximum number of upstream requests in flight")
+        .register(meterRegistry);
+  }
+
+  public Slot acquire() {
+    pending.incrementAndGet();
+    try {
+      long waitNanos = Deadline.remainingNanos(TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs));
+      if (!permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS)) {
+        throw new ConcurrencyLimitExceededException(
+            "Timed out after " + acquireTimeoutMs + "ms waiting for an in-flight request slot");
+      }
+      return new Slot();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AiCallException("Interrupted while waiting for an in-flight request slot", e);
+    } finally {
+      pending.decrementAndGet();
+    }
+  }
+
+  public int active() {
+    return maxInFlight - permits.availablePermits();
+  }
+
+  public int available() {
+    return permits.availablePermits();
+  }
+
+  public int pending() {
+    return pending.get();
+  }
+
+  public int max() {
+    return maxInFlight;
+  }
+
+  public final class Slot implements AutoCloseable {
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Slot() {
+    }
+
+    @Override
+    public void close() {
+      if (released.compareAndSet(false, true)) {
+        permits.release();
+      }
+    }
+  }
+}
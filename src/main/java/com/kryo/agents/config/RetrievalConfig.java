@@ -0,0 +1,41 @@
+package com.kryo.agents.config;
+
+import com.kryo.agents.retrieval.Embedder;
+import com.kryo.agents.retrieval.HashingEmbedder;
+import com.kryo.agents.services.AzureOpenAIService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class RetrievalConfig {
+
+  /**
+   * Embeddings for dense retrieval: the Azure embeddings deployment, or a local hashing
+   * stand-in that needs no network.
+   */
+  @Bean
+  public Embedder embedder(@Value("${retrieval.dense.embedder:local}") String embedder,
+      @Value("${retrieval.dense.dimensions:256}") int dimensions,
+      ObjectProvider<AzureOpenAIService> openAIService) {
+    return switch (embedder) {
+      case "azure" -> new Embedder() {
+        @Override
+        public String model() {
+          return "azure-" + openAIService.getObject().embeddingModel();
+        }
+
+        @Override
+        public float[][] embed(List<String> texts) {
+          return openAIService.getObject().embed(texts);
+        }
+      };
+      case "local" -> new HashingEmbedder(dimensions);
+      default -> throw new IllegalArgumentException(
+          "retrieval.dense.embedder must be 'azure' or 'local', was '" + embedder + "'");
+    };
+  }
+}
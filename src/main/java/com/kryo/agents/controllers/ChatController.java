@@ -2,6 +2,7 @@ package com.kryo.agents.controllers;
 
 import com.kryo.agents.agents.Agent;
 import com.kryo.agents.agents.AgentOrchestrator;
+import com.kryo.agents.agents.Dispatch;
 import com.kryo.agents.models.ChatMessage;
 import com.kryo.agents.models.ChatRequest;
 import com.kryo.agents.models.ChatResponse;
@@ -9,21 +10,60 @@ import com.kryo.agents.models.ConversationSummary;
 import com.kryo.agents.models.Role;
 import com.kryo.agents.services.ConversationService;
 import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.CircuitOpenException;
+import com.kryo.agents.exceptions.DeadlineExceededException;
+import com.kryo.agents.exceptions.RateLimitExceededException;
+import com.kryo.agents.resilience.Deadline;
+import com.kryo.agents.resilience.UsageTally;
+import com.kryo.agents.resilience.UserRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @RestController
 @RequestMapping("/api/chat")
 public class ChatController {
 
+  private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+
   private final AgentOrchestrator orchestrator;
   private final ConversationService conversationService;
+  private final ExecutorService streamExecutor;
+  private final MeterRegistry meterRegistry;
+  private final UserRateLimiter rateLimiter;
+
+  @Value("${chat.stream.timeout:120000}")
+  private long streamTimeout;
+
+  @Value("${chat.deadline:60s}")
+  private Duration requestDeadline;
 
   public ChatController(AgentOrchestrator orchestrator,
-      ConversationService conversationService) {
+      ConversationService conversationService,
+      @Qualifier("chatStreamExecutor") ExecutorService streamExecutor, MeterRegistry meterRegistry,
+      UserRateLimiter rateLimiter) {
     this.orchestrator = orchestrator;
     this.conversationService = conversationService;
+    this.streamExecutor = streamExecutor;
+    this.meterRegistry = meterRegistry;
+    this.rateLimiter = rateLimiter;
   }
 
   @PostMapping
@@ -33,14 +73,10 @@ public class ChatController {
       return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
           .body(java.util.Map.of("error", "Unauthorized: Missing X-User-ID header"));
     }
-    if (request.conversationId() == null || request.conversationId().isBlank()) {
-      return ResponseEntity.badRequest().body(java.util.Map.of("error", "conversationId cannot be null or blank"));
-    }
-    if (request.message() == null || request.message().isBlank()) {
-      return ResponseEntity.badRequest().body(java.util.Map.of("error", "message cannot be null or blank"));
-    }
-    if (request.message().length() > 8000) {
-      return ResponseEntity.badRequest().body(java.util.Map.of("error", "message cannot exceed 8000 characters"));
+    checkRateLimit(userId);
+    String validationError = validate(request);
+    if (validationError != null) {
+      return ResponseEntity.badRequest().body(java.util.Map.of("error", validationError));
     }
 
     String conversationId = request.conversationId();
@@ -48,11 +84,26 @@ public class ChatController {
 
     conversationService.addMessage(conversationId, userId, new ChatMessage(Role.USER, userMessage));
 
-    Agent agent = orchestrator.route(conversationId, userMessage);
-
-    java.util.List<ChatMessage> history = conversationService.getRecentHistory(conversationId,
-        com.kryo.agents.config.AppConstants.MAX_CONTEXT_MESSAGES);
-    String reply = agent.respond(userMessage, history);
+    Agent agent;
+    String reply;
+    UsageTally usage = UsageTally.open();
+    // A blocking request can't notice a client hanging up, so only the deadline bounds it.
+    Deadline deadline = Deadline.after(requestDeadline);
+    try (Deadline.Scope scope = deadline.enter()) {
+      java.util.List<ChatMessage> history = conversationService.getRecentHistory(conversationId);
+      Dispatch dispatch = orchestrator.dispatch(conversationId, userMessage, history);
+      agent = dispatch.agent();
+      long respondStart = System.nanoTime();
+      reply = agent.respond(userMessage, history, dispatch.speculation());
+      recordResponse(agent, "blocking", System.nanoTime() - respondStart);
+      Deadline.check();
+    } catch (AiCallException e) {
+      throw abandonedOr(deadline, e);
+    } finally {
+      deadline.close();
+      usage.close();
+      rateLimiter.charge(userId, usage.tokens());
+    }
 
     conversationService.addMessage(conversationId, userId, new ChatMessage(Role.ASSISTANT, reply));
 
@@ -60,11 +111,154 @@ public class ChatController {
     return ResponseEntity.ok(response);
   }
 
+  @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter chatStream(@RequestBody ChatRequest request,
+      @RequestHeader(value = "X-User-ID", required = false) String userId) {
+    if (userId == null || userId.isBlank()) {
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized: Missing X-User-ID header");
+    }
+    checkRateLimit(userId);
+    String validationError = validate(request);
+    if (validationError != null) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, validationError);
+    }
+
+    SseEmitter emitter = new SseEmitter(streamTimeout);
+    Deadline deadline = Deadline.after(requestDeadline);
+    emitter.onError(error -> deadline.cancel("client disconnected"));
+    emitter.onTimeout(() -> deadline.cancel("stream timed out"));
+    streamExecutor.execute(() -> streamReply(request, userId, emitter, deadline));
+    return emitter;
+  }
+
+  private void streamReply(ChatRequest request, String userId, SseEmitter emitter, Deadline deadline) {
+    long startNanos = System.nanoTime();
+    AtomicLong firstTokenNanos = new AtomicLong(-1);
+    String conversationId = request.conversationId();
+    String userMessage = request.message();
+    UsageTally usage = UsageTally.open();
+
+    try (Deadline.Scope scope = deadline.enter()) {
+      conversationService.addMessage(conversationId, userId, new ChatMessage(Role.USER, userMessage));
+
+      java.util.List<ChatMessage> history = conversationService.getRecentHistory(conversationId);
+      Dispatch dispatch = orchestrator.dispatch(conversationId, userMessage, history);
+      Agent agent = dispatch.agent();
+      sendEvent(emitter, "agent", java.util.Map.of("conversationId", conversationId, "agent", agent.getName()));
+
+      long respondStart = System.nanoTime();
+      String reply = agent.respondStreaming(userMessage, history, dispatch.speculation(), token -> {
+        firstTokenNanos.compareAndSet(-1, System.nanoTime());
+        sendEvent(emitter, "token", java.util.Map.of("content", token));
+      });
+      recordResponse(agent, "streaming", System.nanoTime() - respondStart);
+
+      conversationService.addMessage(conversationId, userId, new ChatMessage(Role.ASSISTANT, reply));
+
+      long endNanos = System.nanoTime();
+      long timeToFirstTokenMs = firstTokenNanos.get() < 0 ? -1 : (firstTokenNanos.get() - startNanos) / 1_000_000;
+      long totalMs = (endNanos - startNanos) / 1_000_000;
+      logger.info("Streamed reply: conversationId={}, agent={}, timeToFirstTokenMs={}, totalMs={}",
+          conversationId, agent.getName(), timeToFirstTokenMs, totalMs);
+
+      sendEvent(emitter, "done", java.util.Map.of(
+          "conversationId", conversationId,
+          "agent", agent.getName(),
+          "timeToFirstTokenMs", timeToFirstTokenMs,
+          "totalMs", totalMs));
+      emitter.complete();
+    } catch (AiCallException e) {
+      AiCallException failure = abandonedOr(deadline, e);
+      logger.error("Streaming chat failed: conversationId={}", conversationId, failure);
+      try {
+        sendEvent(emitter, "error", java.util.Map.of("error", "AI Service Error: " + failure.getMessage()));
+        emitter.complete();
+      } catch (UncheckedIOException sendFailure) {
+        emitter.completeWithError(sendFailure);
+      }
+    } catch (Exception e) {
+      logger.warn("Streaming chat aborted: conversationId={}, error={}", conversationId, e.getMessage());
+      // Stops speculative work still running for this turn.
+      deadline.cancel("stream aborted");
+      emitter.completeWithError(e);
+    } finally {
+      deadline.close();
+      usage.close();
+      rateLimiter.charge(userId, usage.tokens());
+    }
+  }
+
+  private void checkRateLimit(String userId) {
+    UserRateLimiter.Decision decision = rateLimiter.tryAcquire(userId);
+    if (!decision.allowed()) {
+      throw new RateLimitExceededException(decision.limit(), decision.retryAfter());
+    }
+  }
+
+  private static AiCallException abandonedOr(Deadline deadline, AiCallException e) {
+    if (deadline.isCancelled() && !(e instanceof DeadlineExceededException)) {
+      DeadlineExceededException abandoned = new DeadlineExceededException(deadline.reason());
+      abandoned.addSuppressed(e);
+      return abandoned;
+    }
+    return e;
+  }
+
+  private void recordResponse(Agent agent, String mode, long nanos) {
+    Timer.builder("agent.response")
+        .description("Time an agent takes to produce its full reply, tools and LLM calls included")
+        .tags("agent", agent.getName(), "mode", mode)
+        .register(meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void sendEvent(SseEmitter emitter, String name, Object data) {
+    try {
+      emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Client disconnected from stream", e);
+    }
+  }
+
+  private String validate(ChatRequest request) {
+    if (request.conversationId() == null || request.conversationId().isBlank()) {
+      return "conversationId cannot be null or blank";
+    }
+    if (request.message() == null || request.message().isBlank()) {
+      return "message cannot be null or blank";
+    }
+    if (request.message().length() > 8000) {
+      return "message cannot exceed 8000 characters";
+    }
+    return null;
+  }
+
   @ExceptionHandler(AiCallException.class)
   public ResponseEntity<String> handleAiCallException(AiCallException e) {
     return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("AI Service Error: " + e.getMessage());
   }
 
+  @ExceptionHandler(CircuitOpenException.class)
+  public ResponseEntity<String> handleCircuitOpen(CircuitOpenException e) {
+    long seconds = Math.max(1, (e.getRetryAfter().orElse(Duration.ZERO).toMillis() + 999) / 1000);
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+        .body("AI Service Error: " + e.getMessage());
+  }
+
+  @ExceptionHandler(DeadlineExceededException.class)
+  public ResponseEntity<String> handleDeadlineExceeded(DeadlineExceededException e) {
+    return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("AI Service Error: " + e.getMessage());
+  }
+
+  @ExceptionHandler(RateLimitExceededException.class)
+  public ResponseEntity<String> handleRateLimitExceeded(RateLimitExceededException e) {
+    long seconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+        .body(e.getMessage());
+  }
+
   @GetMapping("/conversations")
   public ResponseEntity<?> getConversations(@RequestHeader(value = "X-User-ID", required = false) String userId) {
     if (userId == null || userId.isBlank()) {
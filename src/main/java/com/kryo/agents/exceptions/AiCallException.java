@@ -1,11 +1,60 @@
 package com.kryo.agents.exceptions;
 
+import java.time.Duration;
+import java.util.Optional;
+
 public class AiCallException extends RuntimeException {
+  private final int statusCode;
+  private final Duration retryAfter;
+  private final boolean retryable;
+
   public AiCallException(String message) {
+    this(message, 0);
+  }
+
+  public AiCallException(String message, int statusCode) {
+    this(message, statusCode, null);
+  }
+
+  public AiCallException(String message, int statusCode, Duration retryAfter) {
+    this(message, statusCode, retryAfter, statusCode == 408 || statusCode == 429 || statusCode >= 500);
+  }
+
+  protected AiCallException(String message, int statusCode, Duration retryAfter, boolean retryable) {
     super(message);
+    this.statusCode = statusCode;
+    this.retryAfter = retryAfter;
+    this.retryable = retryable;
   }
 
   public AiCallException(String message, Throwable cause) {
+    this(message, cause, false);
+  }
+
+  public AiCallException(String message, Throwable cause, boolean retryable) {
     super(message, cause);
+    this.statusCode = 0;
+    this.retryAfter = null;
+    this.retryable = retryable;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Optional<Duration> getRetryAfter() {
+    return Optional.ofNullable(retryAfter);
+  }
+
+  public boolean isThrottled() {
+    return statusCode == 429;
+  }
+
+  public boolean isServerError() {
+    return statusCode >= 500;
+  }
+
+  public boolean isRetryable() {
+    return retryable;
   }
 }
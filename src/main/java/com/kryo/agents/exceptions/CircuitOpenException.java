@@ -0,0 +1,11 @@
+package com.kryo.agents.exceptions;
+
+import java.time.Duration;
+
+public class CircuitOpenException extends AiCallException {
+
+  public CircuitOpenException(Duration retryAfter) {
+    super("Azure OpenAI is unavailable, calls are suspended for " + retryAfter.toMillis() + "ms", 503,
+        retryAfter, false);
+  }
+}
@@ -0,0 +1,12 @@
+package com.kryo.agents.exceptions;
+
+/**
+ * Raised before a request is sent, when the local concurrency limiter has no permit to give.
+ * Azure never saw the call, so it is neither an upstream 429 nor worth retrying.
+ */
+public class ConcurrencyLimitExceededException extends AiCallException {
+
+  public ConcurrencyLimitExceededException(String message) {
+    super(message, 0, null, false);
+  }
+}
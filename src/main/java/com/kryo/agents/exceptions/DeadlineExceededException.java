@@ -0,0 +1,8 @@
+package com.kryo.agents.exceptions;
+
+public class DeadlineExceededException extends AiCallException {
+
+  public DeadlineExceededException(String reason) {
+    super("Request abandoned: " + reason);
+  }
+}
@@ -0,0 +1,22 @@
+package com.kryo.agents.exceptions;
+
+import java.time.Duration;
+
+public class RateLimitExceededException extends RuntimeException {
+  private final String limit;
+  private final Duration retryAfter;
+
+  public RateLimitExceededException(String limit, Duration retryAfter) {
+    super("Rate limit exceeded: too many " + limit);
+    this.limit = limit;
+    this.retryAfter = retryAfter;
+  }
+
+  public String getLimit() {
+    return limit;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
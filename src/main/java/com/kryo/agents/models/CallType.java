@@ -0,0 +1,18 @@
+package com.kryo.agents.models;
+
+public enum CallType {
+  CLASSIFICATION("classification"),
+  AGENT_ANSWER("agent-answer"),
+  TOOL_STEP("tool-step"),
+  EMBEDDING("embedding");
+
+  private final String key;
+
+  CallType(String key) {
+    this.key = key;
+  }
+
+  public String key() {
+    return key;
+  }
+}
@@ -0,0 +1,7 @@
+package com.kryo.agents.models.openai;
+
+/** Embeddings in input order; {@code usage} only carries prompt and total tokens. */
+public record EmbeddingResponse(
+    float[][] embeddings,
+    OpenAIResponse.Usage usage) {
+}
@@ -9,12 +9,21 @@ public record OpenAIRequest(
     double temperature,
     int max_tokens,
     List<Tool> tools,
-    Object tool_choice) {
+    Object tool_choice,
+    Boolean stream) {
   public OpenAIRequest(List<Message> messages) {
-    this(messages, 0.7, 800, null, null);
+    this(messages, 0.7, 800, null, null, null);
   }
 
   public OpenAIRequest(List<Message> messages, List<Tool> tools) {
-    this(messages, 0.7, 800, tools, "auto");
+    this(messages, 0.7, 800, tools, "auto", null);
+  }
+
+  public OpenAIRequest withMaxTokens(int maxTokens) {
+    return new OpenAIRequest(messages, temperature, maxTokens, tools, tool_choice, stream);
+  }
+
+  public OpenAIRequest streaming() {
+    return new OpenAIRequest(messages, temperature, max_tokens, tools, tool_choice, true);
   }
 }
@@ -20,6 +20,15 @@ public record OpenAIResponse(
   public record Usage(
       int prompt_tokens,
       int completion_tokens,
-      int total_tokens) {
+      int total_tokens,
+      PromptTokensDetails prompt_tokens_details) {
+    public int cachedTokens() {
+      return prompt_tokens_details == null ? 0 : prompt_tokens_details.cached_tokens();
+    }
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public record PromptTokensDetails(
+      int cached_tokens) {
   }
 }
@@ -0,0 +1,284 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.ConcurrencyLimitExceededException;
+import com.kryo.agents.models.CallType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limiter for outbound LLM calls. The limit grows additively while
+ * latency stays near its long-term baseline, and shrinks multiplicatively on 429/5xx,
+ * latency growth or when Azure's rate-limit headers report the quota running out.
+ * <p>
+ * Latency is measured up to the response headers, so a long streamed answer is not read as
+ * congestion, and each call type keeps its own baseline: an embedding and a tool step that
+ * generates a long answer take very different times on an idle deployment.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+  private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+  private static final double BACKOFF_RATIO = 0.9;
+  private static final double DROP_RATIO = 0.5;
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double BASELINE_SMOOTHING = 0.05;
+  private static final double RECENT_SMOOTHING = 0.3;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxQueue;
+  private final long maxWaitNanos;
+  private final long tokenReserve;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition permitAvailable = lock.newCondition();
+
+  private double limit;
+  private int inFlight;
+  private int queued;
+  private final Map<CallType, Latency> latencies = new EnumMap<>(CallType.class);
+
+  private final Counter queueFullRejections;
+  private final Counter timeoutRejections;
+  private final Counter drops;
+
+  public AdaptiveConcurrencyLimiter(
+      @Value("${azure.openai.limiter.initial-limit:20}") int initialLimit,
+      @Value("${azure.openai.limiter.min-limit:1}") int minLimit,
+      @Value("${azure.openai.limiter.max-limit:200}") int maxLimit,
+      @Value("${azure.openai.limiter.max-queue:100}") int maxQueue,
+      @Value("${azure.openai.limiter.max-wait:5s}") Duration maxWait,
+      @Value("${azure.openai.limiter.token-reserve:8000}") long tokenReserve,
+      MeterRegistry meterRegistry) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxQueue = maxQueue;
+    this.maxWaitNanos = maxWait.toNanos();
+    this.tokenReserve = tokenReserve;
+    this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+
+    Gauge.builder("azure.openai.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+        .description("Current adaptive concurrency limit")
+        .register(meterRegistry);
+    Gauge.builder("azure.openai.limiter.inflight", this, AdaptiveConcurrencyLimiter::getInFlight)
+        .description("LLM calls currently in flight")
+        .register(meterRegistry);
+    Gauge.builder("azure.openai.limiter.queue", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+        .description("Callers waiting for a concurrency permit")
+        .register(meterRegistry);
+    this.queueFullRejections = Counter.builder("azure.openai.limiter.rejections")
+        .tag("reason", "queue_full")
+        .register(meterRegistry);
+    this.timeoutRejections = Counter.builder("azure.openai.limiter.rejections")
+        .tag("reason", "timeout")
+        .register(meterRegistry);
+    this.drops = Counter.builder("azure.openai.limiter.drops")
+        .description("Calls that ended in throttling, server errors or timeouts")
+        .register(meterRegistry);
+  }
+
+  private static final class Latency {
+    double baselineNanos;
+    double recentNanos;
+  }
+
+  public Permit acquire(CallType callType) {
+    lock.lock();
+    try {
+      if (inFlight < (int) limit) {
+        inFlight++;
+        return new Permit(callType);
+      }
+      if (queued >= maxQueue) {
+        queueFullRejections.increment();
+        throw new ConcurrencyLimitExceededException("LLM concurrency limit reached and wait queue is full");
+      }
+
+      queued++;
+      try {
+        long remainingNanos = Deadline.remainingNanos(maxWaitNanos);
+        while (inFlight >= (int) limit) {
+          if (remainingNanos <= 0) {
+            timeoutRejections.increment();
+            throw new ConcurrencyLimitExceededException("Timed out waiting for an LLM concurrency permit");
+          }
+          remainingNanos = permitAvailable.awaitNanos(remainingNanos);
+        }
+        inFlight++;
+        return new Permit(callType);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AiCallException("Interrupted while waiting for an LLM concurrency permit", e);
+      } finally {
+        queued--;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void onRateLimitHeaders(HttpHeaders headers) {
+    long remainingRequests = parseHeader(headers, "x-ratelimit-remaining-requests");
+    long remainingTokens = parseHeader(headers, "x-ratelimit-remaining-tokens");
+    if (remainingRequests < 0 && remainingTokens < 0) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      double previous = limit;
+      if (remainingRequests >= 0 && remainingRequests < limit) {
+        limit = Math.max(minLimit, remainingRequests);
+      }
+      if (remainingTokens >= 0 && remainingTokens < tokenReserve) {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+      }
+      if (limit < previous) {
+        logger.debug("Concurrency limit lowered from rate-limit headers: {} -> {} (requests={}, tokens={})",
+            (int) previous, (int) limit, remainingRequests, remainingTokens);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onSuccess(CallType callType, long rttNanos) {
+    lock.lock();
+    try {
+      inFlight--;
+      Latency latency = latencies.computeIfAbsent(callType, type -> new Latency());
+      if (latency.baselineNanos == 0) {
+        latency.baselineNanos = rttNanos;
+        latency.recentNanos = rttNanos;
+      } else {
+        latency.baselineNanos += (rttNanos - latency.baselineNanos) * BASELINE_SMOOTHING;
+        latency.recentNanos += (rttNanos - latency.recentNanos) * RECENT_SMOOTHING;
+      }
+
+      if (latency.recentNanos > latency.baselineNanos * LATENCY_TOLERANCE) {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+      } else if (inFlight + 1 >= limit / 2) {
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+      }
+      permitAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onDropped() {
+    drops.increment();
+    lock.lock();
+    try {
+      inFlight--;
+      double previous = limit;
+      limit = Math.max(minLimit, limit * DROP_RATIO);
+      logger.warn("LLM call dropped, concurrency limit {} -> {}", (int) previous, (int) limit);
+      permitAvailable.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onIgnore() {
+    lock.lock();
+    try {
+      inFlight--;
+      permitAvailable.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static long parseHeader(HttpHeaders headers, String name) {
+    String value = headers.getFirst(name);
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  public final class Permit {
+
+    private final CallType callType;
+    private final long startNanos = System.nanoTime();
+    private long respondedNanos;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(CallType callType) {
+      this.callType = callType;
+    }
+
+    /** Marks the response headers as received; the latency sample ends here. */
+    public void responded() {
+      if (respondedNanos == 0) {
+        respondedNanos = System.nanoTime();
+      }
+    }
+
+    public void success() {
+      if (released.compareAndSet(false, true)) {
+        long end = respondedNanos == 0 ? System.nanoTime() : respondedNanos;
+        onSuccess(callType, end - startNanos);
+      }
+    }
+
+    public void dropped() {
+      if (released.compareAndSet(false, true)) {
+        onDropped();
+      }
+    }
+
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        onIgnore();
+      }
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.CircuitOpenException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker around upstream LLM calls. It opens once the share of failed or slow
+ * calls among the last {@code window-size} crosses the threshold, rejects calls without
+ * touching the network for {@code open-duration}, then lets a few trial calls through and
+ * closes again only if they all succeed. Throttling is left to the limiter and endpoint
+ * pool; only server errors, unreachable endpoints and slow responses count as failures.
+ */
+@Component
+public class CircuitBreaker {
+
+  private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final boolean enabled;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long slowCallNanos;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final boolean[] window;
+  private int windowCount;
+  private int windowNext;
+  private int windowFailures;
+
+  private State state = State.CLOSED;
+  private long openedAtNanos;
+  private long degradedSinceNanos;
+  private long degradedTotalNanos;
+  private int trialsStarted;
+  private int trialsSucceeded;
+
+  private final MeterRegistry meterRegistry;
+  private final Counter rejections;
+
+  public CircuitBreaker(
+      @Value("${azure.openai.circuit-breaker.enabled:true}") boolean enabled,
+      @Value("${azure.openai.circuit-breaker.window-size:20}") int windowSize,
+      @Value("${azure.openai.circuit-breaker.minimum-calls:10}") int minimumCalls,
+      @Value("${azure.openai.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+      @Value("${azure.openai.circuit-breaker.slow-call-threshold:10s}") Duration slowCallThreshold,
+      @Value("${azure.openai.circuit-breaker.open-duration:30s}") Duration openDuration,
+      @Value("${azure.openai.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+      MeterRegistry meterRegistry) {
+    this.enabled = enabled;
+    this.window = new boolean[Math.max(1, windowSize)];
+    this.minimumCalls = Math.clamp(minimumCalls, 1, window.length);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCallThreshold.toNanos();
+    this.openNanos = openDuration.toNanos();
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    this.meterRegistry = meterRegistry;
+
+    for (State each : State.values()) {
+      Gauge.builder("azure.openai.circuit.state", this, breaker -> breaker.getState() == each ? 1 : 0)
+          .description("1 for the circuit breaker's current state")
+          .tag("state", each.name().toLowerCase())
+          .register(meterRegistry);
+    }
+    FunctionCounter.builder("azure.openai.circuit.degraded.time", this, CircuitBreaker::degradedSeconds)
+        .description("Time the breaker has spent open or half-open, serving degraded fallbacks")
+        .baseUnit("seconds")
+        .register(meterRegistry);
+    this.rejections = Counter.builder("azure.openai.circuit.rejections")
+        .description("Calls failed fast because the breaker was open")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns a permit for one upstream attempt, or throws {@link CircuitOpenException} while
+   * the breaker is open or its trial calls are all in flight.
+   */
+  public Permit acquire() {
+    if (!enabled) {
+      return new Permit(false);
+    }
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      if (state == State.OPEN && now - openedAtNanos >= openNanos) {
+        transition(State.HALF_OPEN, now);
+      }
+      if (state == State.CLOSED) {
+        return new Permit(false);
+      }
+      if (state == State.HALF_OPEN && trialsStarted < halfOpenCalls) {
+        trialsStarted++;
+        return new Permit(true);
+      }
+      rejections.increment();
+      throw new CircuitOpenException(Duration.ofNanos(Math.max(0, openedAtNanos + openNanos - now)));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Whether a call made now would be let through, without reserving a trial slot. */
+  public boolean isCallPermitted() {
+    if (!enabled) {
+      return true;
+    }
+    lock.lock();
+    try {
+      return switch (state) {
+        case CLOSED -> true;
+        case OPEN -> System.nanoTime() - openedAtNanos >= openNanos;
+        case HALF_OPEN -> trialsStarted < halfOpenCalls;
+      };
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public State getState() {
+    lock.lock();
+    try {
+      return state;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onResult(Permit permit, boolean failed) {
+    if (!enabled) {
+      return;
+    }
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      if (permit.trial) {
+        if (state != State.HALF_OPEN) {
+          return;
+        }
+        if (failed) {
+          transition(State.OPEN, now);
+        } else if (++trialsSucceeded >= halfOpenCalls) {
+          transition(State.CLOSED, now);
+        }
+        return;
+      }
+      if (state != State.CLOSED) {
+        return;
+      }
+
+      if (windowCount == window.length) {
+        windowFailures -= window[windowNext] ? 1 : 0;
+      } else {
+        windowCount++;
+      }
+      window[windowNext] = failed;
+      windowFailures += failed ? 1 : 0;
+      windowNext = (windowNext + 1) % window.length;
+
+      if (windowCount >= minimumCalls && (double) windowFailures / windowCount >= failureRateThreshold) {
+        logger.warn("Circuit breaker opening: {} of the last {} LLM calls failed or were slow",
+            windowFailures, windowCount);
+        transition(State.OPEN, now);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onIgnored(Permit permit) {
+    if (!permit.trial) {
+      return;
+    }
+    lock.lock();
+    try {
+      if (state == State.HALF_OPEN) {
+        trialsStarted = Math.max(0, trialsStarted - 1);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void transition(State to, long now) {
+    State from = state;
+    state = to;
+    trialsStarted = 0;
+    trialsSucceeded = 0;
+    if (to == State.OPEN) {
+      openedAtNanos = now;
+    }
+    if (from == State.CLOSED) {
+      degradedSinceNanos = now;
+    } else if (to == State.CLOSED) {
+      degradedTotalNanos += now - degradedSinceNanos;
+      windowCount = 0;
+      windowNext = 0;
+      windowFailures = 0;
+    }
+    logger.info("Circuit breaker {} -> {}", from, to);
+    Counter.builder("azure.openai.circuit.transitions")
+        .tags("from", from.name().toLowerCase(), "to", to.name().toLowerCase())
+        .register(meterRegistry)
+        .increment();
+  }
+
+  private double degradedSeconds() {
+    lock.lock();
+    try {
+      long total = degradedTotalNanos + (state == State.CLOSED ? 0 : System.nanoTime() - degradedSinceNanos);
+      return total / (double) TimeUnit.SECONDS.toNanos(1);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public final class Permit {
+
+    private final boolean trial;
+    private long sentNanos = System.nanoTime();
+    private long respondedNanos;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(boolean trial) {
+      this.trial = trial;
+    }
+
+    /**
+     * Marks the request as sent, so time spent queueing for a concurrency permit before it
+     * is not counted as a slow upstream call.
+     */
+    public void sent() {
+      sentNanos = System.nanoTime();
+    }
+
+    /** Marks the response headers as received, so long streams are not counted as slow. */
+    public void responded() {
+      if (respondedNanos == 0) {
+        respondedNanos = System.nanoTime();
+      }
+    }
+
+    public void success() {
+      if (released.compareAndSet(false, true)) {
+        long end = respondedNanos == 0 ? System.nanoTime() : respondedNanos;
+        onResult(this, end - sentNanos >= slowCallNanos);
+      }
+    }
+
+    public void failure() {
+      if (released.compareAndSet(false, true)) {
+        onResult(this, true);
+      }
+    }
+
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        onIgnored(this);
+      }
+    }
+  }
+}
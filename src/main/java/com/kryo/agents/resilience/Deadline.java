@@ -0,0 +1,143 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.DeadlineExceededException;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Time budget of one chat turn. Threads working on the turn {@link #enter} it; when the
+ * budget runs out or the turn is cancelled (e.g. the client went away) those threads are
+ * interrupted, which unwinds blocking waits the same way an interrupted caller already
+ * does: single-flight waiters leave, hedges are cancelled and HTTP exchanges are aborted.
+ * Stages that wait on their own timeout cap it with {@link #remainingNanos(long)}.
+ */
+public final class Deadline implements AutoCloseable {
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+  private static final ScheduledThreadPoolExecutor WATCHDOG = watchdog();
+
+  private final long expiresAtNanos;
+  private final Set<Thread> threads = new HashSet<>();
+  private final ScheduledFuture<?> expiry;
+  private volatile String cancelReason;
+
+  private Deadline(Duration budget) {
+    this.expiresAtNanos = System.nanoTime() + budget.toNanos();
+    this.expiry = WATCHDOG.schedule(() -> cancel("deadline exceeded"), budget.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private static ScheduledThreadPoolExecutor watchdog() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+        Thread.ofPlatform().name("deadline-watchdog").daemon().factory());
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  public static Deadline after(Duration budget) {
+    return new Deadline(budget);
+  }
+
+  /** The deadline of the turn running on this thread, or {@code null} outside a turn. */
+  public static Deadline current() {
+    return CURRENT.get();
+  }
+
+  /** {@code capNanos}, or less if the current turn has less time left. */
+  public static long remainingNanos(long capNanos) {
+    Deadline deadline = CURRENT.get();
+    return deadline == null ? capNanos : Math.min(capNanos, deadline.remainingNanos());
+  }
+
+  /** Throws if the current turn has run out of time or was cancelled. */
+  public static void check() {
+    Deadline deadline = CURRENT.get();
+    if (deadline != null && deadline.isCancelled()) {
+      throw new DeadlineExceededException(deadline.cancelReason);
+    }
+  }
+
+  public static <T> Supplier<T> propagate(Supplier<T> work) {
+    Deadline captured = CURRENT.get();
+    if (captured == null) {
+      return work;
+    }
+    return () -> {
+      try (Scope scope = captured.enter()) {
+        return work.get();
+      }
+    };
+  }
+
+  public long remainingNanos() {
+    return isCancelled() ? 0 : Math.max(expiresAtNanos - System.nanoTime(), 0);
+  }
+
+  public boolean isCancelled() {
+    return cancelReason != null;
+  }
+
+  public String reason() {
+    return cancelReason;
+  }
+
+  public void cancel(String reason) {
+    synchronized (threads) {
+      if (cancelReason != null) {
+        return;
+      }
+      cancelReason = reason;
+      threads.forEach(Thread::interrupt);
+    }
+  }
+
+  /** Binds this deadline to the calling thread until the returned scope is closed. */
+  public Scope enter() {
+    Thread thread = Thread.currentThread();
+    Deadline outer = CURRENT.get();
+    CURRENT.set(this);
+    synchronized (threads) {
+      threads.add(thread);
+      if (cancelReason != null) {
+        thread.interrupt();
+      }
+    }
+    return new Scope(thread, outer);
+  }
+
+  @Override
+  public void close() {
+    expiry.cancel(false);
+  }
+
+  public final class Scope implements AutoCloseable {
+    private final Thread thread;
+    private final Deadline outer;
+
+    private Scope(Thread thread, Deadline outer) {
+      this.thread = thread;
+      this.outer = outer;
+    }
+
+    @Override
+    public void close() {
+      synchronized (threads) {
+        threads.remove(thread);
+        if (cancelReason != null) {
+          // The interrupt was meant for this turn only; don't leak it to the next task on a pooled thread.
+          Thread.interrupted();
+        }
+      }
+      if (outer == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(outer);
+      }
+    }
+  }
+}
@@ -0,0 +1,410 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Azure OpenAI deployments completions are spread over. Each call goes to the endpoint
+ * with the lowest latency-weighted outstanding load; prompts sharing a prefix stay on one
+ * endpoint (so its prompt cache keeps paying off) unless that endpoint is clearly busier.
+ * Endpoints that throttle or keep failing are ejected and only come back once a one-token
+ * health probe succeeds. With a single endpoint nothing is ever ejected.
+ */
+@Component
+public class EndpointPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(EndpointPool.class);
+  private static final String PREFIX = "azure.openai.endpoints";
+  private static final String PROBE_BODY = "{\"messages\":[{\"role\":\"user\",\"content\":\"ping\"}],\"max_tokens\":1}";
+  private static final double LATENCY_SMOOTHING = 0.2;
+  private static final double ERROR_SMOOTHING = 0.1;
+  private static final double ERROR_PENALTY = 10.0;
+  private static final double UNKNOWN_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final double AFFINITY_TOLERANCE = 2.0;
+
+  private final List<Endpoint> endpoints;
+  private final HttpClient httpClient;
+  private final String apiVersion;
+  private final boolean affinity;
+  private final int failureThreshold;
+  private final long ejectionNanos;
+  private final long maxEjectionNanos;
+  private final long tokenReserve;
+  private final Duration probeTimeout;
+  private final ScheduledExecutorService healthChecker;
+  private final MeterRegistry meterRegistry;
+
+  public EndpointPool(Environment environment, HttpClient azureOpenAiHttpClient,
+      @Value("${azure.openai.api-version}") String apiVersion,
+      @Value("${azure.openai.balancer.affinity:true}") boolean affinity,
+      @Value("${azure.openai.balancer.failure-threshold:3}") int failureThreshold,
+      @Value("${azure.openai.balancer.ejection-time:10s}") Duration ejectionTime,
+      @Value("${azure.openai.balancer.max-ejection-time:5m}") Duration maxEjectionTime,
+      @Value("${azure.openai.balancer.health-check-interval:5s}") Duration healthCheckInterval,
+      @Value("${azure.openai.limiter.token-reserve:8000}") long tokenReserve,
+      @Value("${azure.openai.timeout.read:30000}") int readTimeoutMs,
+      MeterRegistry meterRegistry) {
+    this.httpClient = azureOpenAiHttpClient;
+    this.apiVersion = apiVersion;
+    this.affinity = affinity;
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.ejectionNanos = ejectionTime.toNanos();
+    this.maxEjectionNanos = Math.max(ejectionNanos, maxEjectionTime.toNanos());
+    this.tokenReserve = tokenReserve;
+    this.probeTimeout = Duration.ofMillis(readTimeoutMs);
+    this.meterRegistry = meterRegistry;
+    this.endpoints = loadEndpoints(environment);
+
+    for (Endpoint endpoint : endpoints) {
+      Gauge.builder("azure.openai.endpoint.outstanding", endpoint, e -> e.outstanding.get())
+          .description("Calls currently in flight to the endpoint")
+          .tag("endpoint", endpoint.name())
+          .register(meterRegistry);
+      Gauge.builder("azure.openai.endpoint.in.rotation", endpoint, e -> e.ejected ? 0 : 1)
+          .description("1 while the endpoint receives traffic, 0 while it is ejected")
+          .tag("endpoint", endpoint.name())
+          .register(meterRegistry);
+      Gauge.builder("azure.openai.endpoint.error.rate", endpoint, e -> e.errorRate)
+          .description("Smoothed share of calls to the endpoint that throttled or failed")
+          .tag("endpoint", endpoint.name())
+          .register(meterRegistry);
+    }
+
+    this.healthChecker = endpoints.size() > 1
+        ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("endpoint-health").daemon().factory())
+        : null;
+    if (healthChecker != null) {
+      long interval = healthCheckInterval.toNanos();
+      healthChecker.scheduleWithFixedDelay(this::checkEjected, interval, interval, TimeUnit.NANOSECONDS);
+    }
+    logger.info("Balancing completions over {} endpoint(s): {}", endpoints.size(),
+        endpoints.stream().map(Endpoint::name).toList());
+  }
+
+  /**
+   * Reads {@code azure.openai.endpoints[i].url|key|deployment-name|name}; without any, the
+   * single {@code azure.openai.endpoint} / {@code key} / {@code deployment-name} is used.
+   */
+  private List<Endpoint> loadEndpoints(Environment environment) {
+    List<Endpoint> loaded = new ArrayList<>();
+    for (int i = 0; environment.containsProperty(PREFIX + "[" + i + "].url"); i++) {
+      String prefix = PREFIX + "[" + i + "].";
+      loaded.add(new Endpoint(
+          environment.getProperty(prefix + "name", "endpoint-" + i),
+          environment.getRequiredProperty(prefix + "url"),
+          environment.getProperty(prefix + "key", environment.getProperty("azure.openai.key")),
+          environment.getProperty(prefix + "deployment-name", environment.getProperty("azure.openai.deployment-name"))));
+    }
+    if (loaded.isEmpty()) {
+      loaded.add(new Endpoint("default",
+          environment.getRequiredProperty("azure.openai.endpoint"),
+          environment.getRequiredProperty("azure.openai.key"),
+          environment.getRequiredProperty("azure.openai.deployment-name")));
+    }
+    return List.copyOf(loaded);
+  }
+
+  public List<Endpoint> endpoints() {
+    return endpoints;
+  }
+
+  public boolean isSingle() {
+    return endpoints.size() == 1;
+  }
+
+  /**
+   * Picks the endpoint for one attempt. {@code affinityKey} identifies the prompt prefix,
+   * or is {@code null} when the prompt is too short to benefit from provider caching.
+   */
+  public Endpoint select(Long affinityKey) {
+    if (endpoints.size() == 1) {
+      return endpoints.get(0);
+    }
+    long now = System.nanoTime();
+    List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+    for (Endpoint endpoint : endpoints) {
+      if (!endpoint.ejected) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      // Everything is ejected: keep serving from the endpoint expected to recover first.
+      return endpoints.stream().min(Comparator.comparingLong(e -> e.ejectedUntil - now)).orElseThrow();
+    }
+    List<Endpoint> withQuota = candidates.stream().filter(e -> !e.isSaturated(now)).toList();
+    if (!withQuota.isEmpty()) {
+      candidates = withQuota;
+    }
+
+    Endpoint best = candidates.stream().min(Comparator.comparingDouble(Endpoint::score)).orElseThrow();
+    if (affinity && affinityKey != null) {
+      Endpoint home = candidates.stream()
+          .max(Comparator.comparingLong(e -> mix(affinityKey ^ e.seed)))
+          .orElseThrow();
+      if (home.score() <= best.score() * AFFINITY_TOLERANCE) {
+        return home;
+      }
+    }
+    return best;
+  }
+
+  private static long mix(long x) {
+    x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+    x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return x ^ (x >>> 33);
+  }
+
+  void checkEjected() {
+    long now = System.nanoTime();
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.ejected && endpoint.ejectedUntil - now <= 0 && endpoint.probing.compareAndSet(false, true)) {
+        try {
+          probe(endpoint);
+        } finally {
+          endpoint.probing.set(false);
+        }
+      }
+    }
+  }
+
+  private void probe(Endpoint endpoint) {
+    int status;
+    try {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint.completionsUrl(apiVersion)))
+          .header("api-key", endpoint.key())
+          .header("Content-Type", "application/json")
+          .timeout(probeTimeout)
+          .POST(HttpRequest.BodyPublishers.ofString(PROBE_BODY))
+          .build();
+      status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Exception e) {
+      logger.debug("Health probe to endpoint {} failed: {}", endpoint.name(), e.getMessage());
+      status = 0;
+    }
+
+    if (status >= 200 && status < 300) {
+      endpoint.restore();
+      logger.info("Endpoint {} passed its health check and is back in rotation", endpoint.name());
+    } else {
+      endpoint.eject(null, "probe");
+      logger.debug("Endpoint {} failed its health check with status {}", endpoint.name(), status);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (healthChecker != null) {
+      healthChecker.shutdownNow();
+    }
+  }
+
+  public final class Endpoint {
+
+    private final String name;
+    private final String url;
+    private final String key;
+    private final String deployment;
+    private final long seed;
+    private final Timer latency;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile double latencyNanos;
+    private volatile double errorRate;
+    private volatile long remainingTokens = -1;
+    private volatile long remainingRequests = -1;
+    private volatile long quotaSeenAt;
+    private volatile boolean ejected;
+    private volatile long ejectedUntil;
+    private int consecutiveFailures;
+    private int ejections;
+
+    private Endpoint(String name, String url, String key, String deployment) {
+      this.name = name;
+      this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+      this.key = key;
+      this.deployment = deployment;
+      this.seed = mix(name.hashCode());
+      this.latency = Timer.builder("azure.openai.endpoint.latency")
+          .description("Time until the endpoint answered with response headers")
+          .tag("endpoint", name)
+          .register(meterRegistry);
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public String url() {
+      return url;
+    }
+
+    public String key() {
+      return key;
+    }
+
+    public String deployment() {
+      return deployment;
+    }
+
+    public boolean isEjected() {
+      return ejected;
+    }
+
+    String completionsUrl(String apiVersion) {
+      return url + "/openai/deployments/" + deployment + "/chat/completions?api-version=" + apiVersion;
+    }
+
+    public Call start() {
+      outstanding.incrementAndGet();
+      return new Call(this);
+    }
+
+    double score() {
+      double rtt = latencyNanos == 0 ? UNKNOWN_LATENCY_NANOS : latencyNanos;
+      return (outstanding.get() + 1) * rtt * (1 + ERROR_PENALTY * errorRate);
+    }
+
+    /** Azure reports quota per deployment; one that is nearly out is avoided for a few seconds. */
+    boolean isSaturated(long now) {
+      if (now - quotaSeenAt > ejectionNanos) {
+        return false;
+      }
+      return remainingRequests == 0 || (remainingTokens >= 0 && remainingTokens < tokenReserve);
+    }
+
+    synchronized void recordResponse(long rttNanos, HttpHeaders headers) {
+      latency.record(rttNanos, TimeUnit.NANOSECONDS);
+      latencyNanos = latencyNanos == 0 ? rttNanos : latencyNanos + (rttNanos - latencyNanos) * LATENCY_SMOOTHING;
+      long tokens = parseHeader(headers, "x-ratelimit-remaining-tokens");
+      long requests = parseHeader(headers, "x-ratelimit-remaining-requests");
+      if (tokens >= 0 || requests >= 0) {
+        remainingTokens = tokens;
+        remainingRequests = requests;
+        quotaSeenAt = System.nanoTime();
+      }
+    }
+
+    private synchronized void onSuccess() {
+      consecutiveFailures = 0;
+      errorRate -= errorRate * ERROR_SMOOTHING;
+    }
+
+    private synchronized void onFailure(AiCallException failure) {
+      errorRate += (1 - errorRate) * ERROR_SMOOTHING;
+      if (endpoints.size() == 1 || ejected) {
+        return;
+      }
+      if (failure.isThrottled()) {
+        eject(failure.getRetryAfter().orElse(null), "throttled");
+      } else if (++consecutiveFailures >= failureThreshold) {
+        eject(null, "failures");
+      }
+    }
+
+    private synchronized void eject(Duration retryAfter, String reason) {
+      ejections++;
+      long backoff = Math.min(maxEjectionNanos, ejectionNanos << Math.min(ejections - 1, 16));
+      long duration = retryAfter == null ? backoff : Math.max(retryAfter.toNanos(), ejectionNanos);
+      ejectedUntil = System.nanoTime() + duration;
+      if (!ejected) {
+        ejected = true;
+        logger.warn("Ejected endpoint {} for {}ms ({})", name, duration / 1_000_000, reason);
+      }
+      Counter.builder("azure.openai.endpoint.ejections")
+          .description("Times an endpoint was taken out of rotation")
+          .tags("endpoint", name, "reason", reason)
+          .register(meterRegistry)
+          .increment();
+    }
+
+    private synchronized void restore() {
+      ejected = false;
+      ejections = 0;
+      consecutiveFailures = 0;
+      errorRate = 0;
+    }
+  }
+
+  /** One attempt against an endpoint; exactly one of the completion methods must be called. */
+  public static final class Call {
+
+    private final Endpoint endpoint;
+    private final long startNanos = System.nanoTime();
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private Call(Endpoint endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    public Endpoint endpoint() {
+      return endpoint;
+    }
+
+    public void responded(HttpHeaders headers) {
+      endpoint.recordResponse(System.nanoTime() - startNanos, headers);
+    }
+
+    public void success() {
+      if (done.compareAndSet(false, true)) {
+        endpoint.outstanding.decrementAndGet();
+        endpoint.onSuccess();
+      }
+    }
+
+    /** Throttling, server errors and I/O failures count against the endpoint; client errors do not. */
+    public void failure(AiCallException failure) {
+      if (done.compareAndSet(false, true)) {
+        endpoint.outstanding.decrementAndGet();
+        if (failure.isThrottled() || failure.isServerError() || failure.isRetryable()) {
+          endpoint.onFailure(failure);
+        }
+      }
+    }
+
+    public void release() {
+      if (done.compareAndSet(false, true)) {
+        endpoint.outstanding.decrementAndGet();
+      }
+    }
+  }
+
+  private static long parseHeader(HttpHeaders headers, String name) {
+    String value = headers.getFirst(name);
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
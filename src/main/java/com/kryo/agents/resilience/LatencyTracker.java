@@ -0,0 +1,32 @@
+package com.kryo.agents.resilience;
+
+import java.util.Arrays;
+
+public class LatencyTracker {
+
+  private final long[] samples;
+  private final int minSamples;
+  private int next;
+  private int count;
+
+  public LatencyTracker(int windowSize, int minSamples) {
+    this.samples = new long[windowSize];
+    this.minSamples = minSamples;
+  }
+
+  public synchronized void record(long nanos) {
+    samples[next] = nanos;
+    next = (next + 1) % samples.length;
+    count = Math.min(count + 1, samples.length);
+  }
+
+  public synchronized long percentileNanos(double percentile) {
+    if (count < minSamples) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile * count) - 1;
+    return sorted[Math.clamp(index, 0, count - 1)];
+  }
+}
@@ -0,0 +1,34 @@
+package com.kryo.agents.resilience;
+
+/**
+ * Token bucket that allows retries (and hedges) for at most {@code ratio} of the
+ * original request volume, so retries cannot multiply the load during an outage.
+ */
+public class RetryBudget {
+
+  private final double ratio;
+  private final double maxTokens;
+  private double tokens;
+
+  public RetryBudget(double ratio, double maxTokens) {
+    this.ratio = ratio;
+    this.maxTokens = maxTokens;
+    this.tokens = maxTokens;
+  }
+
+  public synchronized void recordRequest() {
+    tokens = Math.min(maxTokens, tokens + ratio);
+  }
+
+  public synchronized boolean tryWithdraw() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+
+  public synchronized double available() {
+    return tokens;
+  }
+}
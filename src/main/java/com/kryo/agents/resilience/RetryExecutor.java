@@ -0,0 +1,208 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.models.CallType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Retries transient LLM failures with jittered exponential backoff that honours
+ * Retry-After, bounded by a shared {@link RetryBudget}. Call types with hedging enabled
+ * fire a second attempt once the first has run longer than the observed p95.
+ */
+@Component
+public class RetryExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(RetryExecutor.class);
+  private static final String PREFIX = "azure.openai.retry.";
+
+  private final Map<CallType, RetryPolicy> policies = new EnumMap<>(CallType.class);
+  private final Map<CallType, LatencyTracker> latencies = new EnumMap<>(CallType.class);
+  private final Map<CallType, Counter> retryCounters = new EnumMap<>(CallType.class);
+  private final RetryBudget budget;
+  private final ExecutorService executor;
+  private final Counter budgetExhausted;
+  private final Counter hedgesFired;
+  private final Counter hedgesWon;
+
+  public RetryExecutor(Environment environment,
+      @Qualifier("llmCallExecutor") ExecutorService executor,
+      MeterRegistry meterRegistry) {
+    this.executor = executor;
+    this.budget = new RetryBudget(
+        environment.getProperty(PREFIX + "budget-ratio", Double.class, 0.2),
+        environment.getProperty(PREFIX + "budget-max-tokens", Double.class, 20.0));
+
+    policies.put(CallType.CLASSIFICATION, loadPolicy(environment, CallType.CLASSIFICATION, 2, 200, 2000, true));
+    policies.put(CallType.AGENT_ANSWER, loadPolicy(environment, CallType.AGENT_ANSWER, 3, 500, 8000, false));
+    policies.put(CallType.TOOL_STEP, loadPolicy(environment, CallType.TOOL_STEP, 3, 500, 8000, false));
+    policies.put(CallType.EMBEDDING, loadPolicy(environment, CallType.EMBEDDING, 3, 500, 8000, false));
+
+    for (CallType callType : CallType.values()) {
+      latencies.put(callType, new LatencyTracker(200, 20));
+      retryCounters.put(callType, Counter.builder("azure.openai.retries")
+          .tag("call_type", callType.key())
+          .register(meterRegistry));
+    }
+
+    Gauge.builder("azure.openai.retry.budget", budget, RetryBudget::available)
+        .description("Retry tokens currently available")
+        .register(meterRegistry);
+    this.budgetExhausted = Counter.builder("azure.openai.retry.budget.exhausted").register(meterRegistry);
+    this.hedgesFired = Counter.builder("azure.openai.hedges").tag("outcome", "fired").register(meterRegistry);
+    this.hedgesWon = Counter.builder("azure.openai.hedges").tag("outcome", "won").register(meterRegistry);
+  }
+
+  private static RetryPolicy loadPolicy(Environment environment, CallType callType, int maxAttempts,
+      long initialBackoffMs, long maxBackoffMs, boolean hedge) {
+    String prefix = PREFIX + callType.key() + ".";
+    return new RetryPolicy(
+        environment.getProperty(prefix + "max-attempts", Integer.class, maxAttempts),
+        durationProperty(environment, prefix + "initial-backoff", Duration.ofMillis(initialBackoffMs)),
+        durationProperty(environment, prefix + "max-backoff", Duration.ofMillis(maxBackoffMs)),
+        durationProperty(environment, prefix + "max-retry-after", Duration.ofSeconds(10)),
+        environment.getProperty(prefix + "hedge", Boolean.class, hedge));
+  }
+
+  private static Duration durationProperty(Environment environment, String key, Duration defaultValue) {
+    String value = environment.getProperty(key);
+    return value == null ? defaultValue : DurationStyle.detectAndParse(value);
+  }
+
+  public RetryPolicy policy(CallType callType) {
+    return policies.get(callType);
+  }
+
+  public <T> T execute(CallType callType, Supplier<T> call) {
+    return execute(callType, call, true);
+  }
+
+  public <T> T execute(CallType callType, Supplier<T> call, boolean hedgeable) {
+    RetryPolicy policy = policies.get(callType);
+    budget.recordRequest();
+
+    int attempt = 1;
+    while (true) {
+      Deadline.check();
+      try {
+        return hedgeable && policy.hedge() ? hedged(callType, call) : timed(callType, call);
+      } catch (AiCallException e) {
+        if (!e.isRetryable() || attempt >= policy.maxAttempts()) {
+          throw e;
+        }
+        Optional<Duration> delay = policy.delayBefore(attempt + 1, e.getRetryAfter());
+        if (delay.isEmpty()) {
+          logger.warn("Not retrying {} call: Retry-After {} exceeds limit", callType.key(), e.getRetryAfter().get());
+          throw e;
+        }
+        if (delay.get().toNanos() >= Deadline.remainingNanos(Long.MAX_VALUE)) {
+          logger.warn("Not retrying {} call: backoff outlasts the request deadline", callType.key());
+          throw e;
+        }
+        if (!budget.tryWithdraw()) {
+          budgetExhausted.increment();
+          logger.warn("Not retrying {} call: retry budget exhausted", callType.key());
+          throw e;
+        }
+
+        attempt++;
+        retryCounters.get(callType).increment();
+        logger.warn("Retrying {} call (attempt {}/{}) in {}ms after: {}",
+            callType.key(), attempt, policy.maxAttempts(), delay.get().toMillis(), e.getMessage());
+        sleep(delay.get());
+      }
+    }
+  }
+
+  private <T> T timed(CallType callType, Supplier<T> call) {
+    long start = System.nanoTime();
+    T result = call.get();
+    latencies.get(callType).record(System.nanoTime() - start);
+    return result;
+  }
+
+  private <T> T hedged(CallType callType, Supplier<T> call) {
+    long hedgeDelayNanos = latencies.get(callType).percentileNanos(0.95);
+    if (hedgeDelayNanos < 0) {
+      return timed(callType, call);
+    }
+
+    Supplier<T> attempt = Deadline.propagate(call);
+    CompletableFuture<T> winner = new CompletableFuture<>();
+    AtomicInteger launched = new AtomicInteger(1);
+    AtomicInteger failures = new AtomicInteger();
+    Future<?> primary = executor.submit(() -> runAttempt(callType, attempt, winner, launched, failures, false));
+    Future<?> hedge = null;
+
+    try {
+      try {
+        return winner.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        if (!budget.tryWithdraw()) {
+          return winner.get();
+        }
+        launched.incrementAndGet();
+        hedgesFired.increment();
+        logger.debug("Hedging {} call after {}ms", callType.key(), hedgeDelayNanos / 1_000_000);
+        hedge = executor.submit(() -> runAttempt(callType, attempt, winner, launched, failures, true));
+        return winner.get();
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtime) {
+        throw runtime;
+      }
+      throw new AiCallException("LLM call failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AiCallException("Interrupted while waiting for LLM response", e);
+    } finally {
+      primary.cancel(true);
+      if (hedge != null) {
+        hedge.cancel(true);
+      }
+    }
+  }
+
+  private <T> void runAttempt(CallType callType, Supplier<T> call, CompletableFuture<T> winner,
+      AtomicInteger launched, AtomicInteger failures, boolean isHedge) {
+    try {
+      T result = timed(callType, call);
+      if (winner.complete(result) && isHedge) {
+        hedgesWon.increment();
+      }
+    } catch (RuntimeException e) {
+      if (failures.incrementAndGet() >= launched.get()) {
+        winner.completeExceptionally(e);
+      }
+    }
+  }
+
+  private static void sleep(Duration delay) {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AiCallException("Interrupted while backing off before retry", e);
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.kryo.agents.resilience;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+public record RetryPolicy(
+    int maxAttempts,
+    Duration initialBackoff,
+    Duration maxBackoff,
+    Duration maxRetryAfter,
+    boolean hedge) {
+
+  public Optional<Duration> delayBefore(int nextAttempt, Optional<Duration> retryAfter) {
+    long ceilingMs = Math.min(maxBackoff.toMillis(),
+        initialBackoff.toMillis() * (1L << Math.min(nextAttempt - 2, 20)));
+    long jitteredMs = ThreadLocalRandom.current().nextLong(ceilingMs + 1);
+
+    if (retryAfter.isEmpty()) {
+      return Optional.of(Duration.ofMillis(jitteredMs));
+    }
+    if (retryAfter.get().compareTo(maxRetryAfter) > 0) {
+      return Optional.empty();
+    }
+    return Optional.of(Duration.ofMillis(Math.max(retryAfter.get().toMillis(), jitteredMs)));
+  }
+}
@@ -0,0 +1,150 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls that share a key into one upstream call. The call runs on
+ * its own task rather than on the first caller's thread, so an interrupted waiter only
+ * stops waiting; the shared call is cancelled once every waiter has gone. For the same reason
+ * the shared call is not bound to any caller's {@link Deadline}: each waiter stops waiting
+ * when its own deadline passes, and the call ends once the last one has left.
+ */
+@Component
+public class SingleFlight {
+
+  private final boolean enabled;
+  private final ExecutorService executor;
+  private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+  private final Counter leaders;
+  private final Counter coalesced;
+  private final Counter abandoned;
+
+  public SingleFlight(@Value("${azure.openai.single-flight.enabled:true}") boolean enabled,
+      @Qualifier("llmCallExecutor") ExecutorService executor,
+      MeterRegistry meterRegistry) {
+    this.enabled = enabled;
+    this.executor = executor;
+
+    this.leaders = Counter.builder("azure.openai.singleflight.calls").tag("role", "leader")
+        .register(meterRegistry);
+    this.coalesced = Counter.builder("azure.openai.singleflight.calls").tag("role", "follower")
+        .description("Upstream calls saved by joining an identical in-flight request")
+        .register(meterRegistry);
+    this.abandoned = Counter.builder("azure.openai.singleflight.abandoned")
+        .description("Shared calls cancelled because every waiter went away")
+        .register(meterRegistry);
+    Gauge.builder("azure.openai.singleflight.inflight", flights, ConcurrentHashMap::size)
+        .register(meterRegistry);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String key, Supplier<T> call) {
+    if (!enabled || key == null) {
+      return call.get();
+    }
+
+    Flight[] created = new Flight[1];
+    Flight flight = flights.compute(key, (k, existing) -> {
+      if (existing != null && existing.tryJoin()) {
+        return existing;
+      }
+      created[0] = new Flight();
+      return created[0];
+    });
+
+    if (flight == created[0]) {
+      leaders.increment();
+      flight.task = executor.submit(() -> run(key, flight, call));
+    } else {
+      coalesced.increment();
+    }
+
+    try {
+      long remainingNanos = Deadline.remainingNanos(Long.MAX_VALUE);
+      return (T) (remainingNanos == Long.MAX_VALUE
+          ? flight.result.get()
+          : flight.result.get(remainingNanos, TimeUnit.NANOSECONDS));
+    } catch (TimeoutException e) {
+      leave(key, flight);
+      Deadline.check();
+      throw new DeadlineExceededException("deadline exceeded");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtime) {
+        throw runtime;
+      }
+      throw new AiCallException("LLM call failed", e.getCause());
+    } catch (CancellationException e) {
+      throw new AiCallException("Shared LLM call was cancelled", e);
+    } catch (InterruptedException e) {
+      leave(key, flight);
+      Thread.currentThread().interrupt();
+      Deadline.check();
+      throw new AiCallException("Interrupted while waiting for LLM response", e);
+    }
+  }
+
+  public int inFlight() {
+    return flights.size();
+  }
+
+  private void run(String key, Flight flight, Supplier<?> call) {
+    try {
+      flight.result.complete(call.get());
+    } catch (Throwable t) {
+      flight.result.completeExceptionally(t);
+    } finally {
+      flights.remove(key, flight);
+    }
+  }
+
+  private void leave(String key, Flight flight) {
+    if (flight.waiters.decrementAndGet() > 0) {
+      return;
+    }
+    flights.remove(key, flight);
+    if (!flight.result.isDone()) {
+      abandoned.increment();
+      flight.result.cancel(false);
+      Future<?> task = flight.task;
+      if (task != null) {
+        task.cancel(true);
+      }
+    }
+  }
+
+  private static final class Flight {
+    final CompletableFuture<Object> result = new CompletableFuture<>();
+    final AtomicInteger waiters = new AtomicInteger(1);
+    volatile Future<?> task;
+
+    boolean tryJoin() {
+      int current;
+      do {
+        current = waiters.get();
+        if (current == 0) {
+          return false;
+        }
+      } while (!waiters.compareAndSet(current, current + 1));
+      return true;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.kryo.agents.resilience;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Tokens used by the LLM calls of one chat turn, so the turn can be charged to its user
+ * once it is over. The tally is bound to the thread handling the turn; callers that hand
+ * work to another thread capture it there with {@link #propagate}.
+ */
+public final class UsageTally implements AutoCloseable {
+
+  private static final ThreadLocal<UsageTally> CURRENT = new ThreadLocal<>();
+
+  private final LongAdder tokens = new LongAdder();
+  private final UsageTally previous;
+
+  private UsageTally(UsageTally previous) {
+    this.previous = previous;
+  }
+
+  public static UsageTally open() {
+    UsageTally tally = new UsageTally(CURRENT.get());
+    CURRENT.set(tally);
+    return tally;
+  }
+
+  /** The tally of the turn running on this thread, or {@code null} outside a turn. */
+  public static UsageTally current() {
+    return CURRENT.get();
+  }
+
+  public static <T> Supplier<T> propagate(Supplier<T> work) {
+    UsageTally captured = CURRENT.get();
+    if (captured == null) {
+      return work;
+    }
+    return () -> {
+      UsageTally outer = CURRENT.get();
+      CURRENT.set(captured);
+      try {
+        return work.get();
+      } finally {
+        restore(outer);
+      }
+    };
+  }
+
+  public void add(long count) {
+    if (count > 0) {
+      tokens.add(count);
+    }
+  }
+
+  public long tokens() {
+    return tokens.sum();
+  }
+
+  @Override
+  public void close() {
+    restore(previous);
+  }
+
+  private static void restore(UsageTally tally) {
+    if (tally == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(tally);
+    }
+  }
+}
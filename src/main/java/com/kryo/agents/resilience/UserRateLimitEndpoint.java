@@ -0,0 +1,37 @@
+package com.kryo.agents.resilience;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the users currently rejected by {@link UserRateLimiter}, longest wait first. The response
+ * carries user IDs, so the endpoint is left out of the default web exposure and is meant for a
+ * management port that is not publicly reachable.
+ */
+@Component
+@Endpoint(id = "ratelimits")
+public class UserRateLimitEndpoint {
+
+  private static final int MAX_LISTED = 100;
+
+  private final UserRateLimiter rateLimiter;
+
+  public UserRateLimitEndpoint(UserRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  @ReadOperation
+  public Map<String, Object> throttled() {
+    List<Map<String, Object>> users = rateLimiter.throttledUsers(MAX_LISTED).stream()
+        .map(user -> Map.<String, Object>of(
+            "userId", user.userId(),
+            "limit", user.limit(),
+            "retryAfterMs", user.retryAfter().toMillis()))
+        .toList();
+    return Map.of("trackedUsers", rateLimiter.trackedUsers(), "throttled", users);
+  }
+}
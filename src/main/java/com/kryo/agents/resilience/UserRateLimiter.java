@@ -0,0 +1,209 @@
+package com.kryo.agents.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user limits on chat requests per second and LLM tokens per minute. Each limit is a
+ * GCRA bucket: one "theoretical arrival time" per user, advanced with compare-and-set, so
+ * admitting a known user never blocks. Token use is only known once a turn is over, so it
+ * is charged afterwards; a user who owes more than a minute of allowance is rejected until
+ * the debt drains.
+ *
+ * <p>A bucket that has refilled holds no information, so idle users are dropped once more
+ * than {@code max-tracked-users} are tracked. If every tracked user is still active,
+ * arbitrary ones are forgotten, which only ever makes their limit more lenient.
+ */
+@Component
+public class UserRateLimiter {
+
+  private static final Logger logger = LoggerFactory.getLogger(UserRateLimiter.class);
+  private static final long NEVER = Long.MIN_VALUE;
+
+  private final boolean enabled;
+  private final long requestIntervalNanos;
+  private final long requestToleranceNanos;
+  private final long tokenIntervalNanos;
+  private final long tokenToleranceNanos;
+  private final int maxTrackedUsers;
+
+  private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicBoolean pruning = new AtomicBoolean();
+
+  private final Counter requestRejections;
+  private final Counter tokenRejections;
+  private final Counter chargedTokens;
+  private final Counter forgottenUsers;
+
+  public UserRateLimiter(
+      @Value("${chat.rate-limit.enabled:true}") boolean enabled,
+      @Value("${chat.rate-limit.requests-per-second:2}") double requestsPerSecond,
+      @Value("${chat.rate-limit.request-burst:10}") int requestBurst,
+      @Value("${chat.rate-limit.tokens-per-minute:40000}") long tokensPerMinute,
+      @Value("${chat.rate-limit.max-tracked-users:100000}") int maxTrackedUsers,
+      MeterRegistry meterRegistry) {
+    this.enabled = enabled;
+    this.requestIntervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+    this.requestToleranceNanos = requestIntervalNanos * (Math.max(requestBurst, 1) - 1);
+    this.tokenIntervalNanos = tokensPerMinute > 0 ? Math.max(TimeUnit.MINUTES.toNanos(1) / tokensPerMinute, 1) : 0;
+    this.tokenToleranceNanos = TimeUnit.MINUTES.toNanos(1);
+    this.maxTrackedUsers = maxTrackedUsers;
+
+    this.requestRejections = Counter.builder("chat.ratelimit.rejections").tag("limit", "requests")
+        .register(meterRegistry);
+    this.tokenRejections = Counter.builder("chat.ratelimit.rejections").tag("limit", "tokens")
+        .register(meterRegistry);
+    this.chargedTokens = Counter.builder("chat.ratelimit.tokens.charged").baseUnit("tokens")
+        .register(meterRegistry);
+    this.forgottenUsers = Counter.builder("chat.ratelimit.users.forgotten")
+        .description("Users dropped from tracking while their bucket was not yet full")
+        .register(meterRegistry);
+    Gauge.builder("chat.ratelimit.users.tracked", buckets, Map::size).register(meterRegistry);
+  }
+
+  public Decision tryAcquire(String userId) {
+    return tryAcquire(userId, System.nanoTime());
+  }
+
+  Decision tryAcquire(String userId, long now) {
+    if (!enabled) {
+      return Decision.ALLOWED;
+    }
+    Bucket bucket = bucket(userId, now);
+
+    if (tokenIntervalNanos > 0) {
+      long debt = ahead(bucket.tokenTat.get(), now);
+      if (debt > tokenToleranceNanos) {
+        tokenRejections.increment();
+        return bucket.reject("tokens", debt - tokenToleranceNanos, now);
+      }
+    }
+
+    if (requestIntervalNanos > 0) {
+      while (true) {
+        long tat = bucket.requestTat.get();
+        long queued = ahead(tat, now);
+        if (queued > requestToleranceNanos) {
+          requestRejections.increment();
+          return bucket.reject("requests", queued - requestToleranceNanos, now);
+        }
+        if (bucket.requestTat.compareAndSet(tat, now + queued + requestIntervalNanos)) {
+          break;
+        }
+      }
+    }
+    return Decision.ALLOWED;
+  }
+
+  public void charge(String userId, long tokens) {
+    charge(userId, tokens, System.nanoTime());
+  }
+
+  void charge(String userId, long tokens, long now) {
+    if (!enabled || tokenIntervalNanos == 0 || tokens <= 0) {
+      return;
+    }
+    chargedTokens.increment(tokens);
+    long cost = Math.min(tokens, Long.MAX_VALUE / 4 / tokenIntervalNanos) * tokenIntervalNanos;
+    bucket(userId, now).tokenTat.accumulateAndGet(now, (tat, at) -> at + ahead(tat, at) + cost);
+  }
+
+  public List<Throttled> throttledUsers(int limit) {
+    return throttledUsers(limit, System.nanoTime());
+  }
+
+  List<Throttled> throttledUsers(int limit, long now) {
+    List<Throttled> throttled = new ArrayList<>();
+    buckets.forEach((userId, bucket) -> {
+      long remaining = ahead(bucket.throttledUntil, now);
+      if (remaining > 0) {
+        throttled.add(new Throttled(userId, bucket.throttledBy, Duration.ofNanos(remaining)));
+      }
+    });
+    throttled.sort(Comparator.comparing(Throttled::retryAfter).reversed());
+    return throttled.size() > limit ? List.copyOf(throttled.subList(0, limit)) : throttled;
+  }
+
+  public int trackedUsers() {
+    return buckets.size();
+  }
+
+  /** How far a theoretical arrival time lies ahead of {@code now}; zero once it has passed. */
+  private static long ahead(long tat, long now) {
+    return tat == NEVER ? 0 : Math.max(tat - now, 0);
+  }
+
+  private Bucket bucket(String userId, long now) {
+    Bucket bucket = buckets.get(userId);
+    if (bucket != null) {
+      return bucket;
+    }
+    if (buckets.size() >= maxTrackedUsers) {
+      prune(now);
+    }
+    return buckets.computeIfAbsent(userId, id -> new Bucket());
+  }
+
+  private void prune(long now) {
+    if (!pruning.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      int target = Math.max(maxTrackedUsers - maxTrackedUsers / 10, 1);
+      buckets.values().removeIf(bucket -> bucket.isFull(now));
+      int forgotten = 0;
+      Iterator<Bucket> active = buckets.values().iterator();
+      while (buckets.size() > target && active.hasNext()) {
+        active.next();
+        active.remove();
+        forgotten++;
+      }
+      if (forgotten > 0) {
+        forgottenUsers.increment(forgotten);
+        logger.warn("Rate limiter tracks more than {} active users, forgot {}", maxTrackedUsers, forgotten);
+      }
+    } finally {
+      pruning.set(false);
+    }
+  }
+
+  private static final class Bucket {
+    private final AtomicLong requestTat = new AtomicLong(NEVER);
+    private final AtomicLong tokenTat = new AtomicLong(NEVER);
+    private volatile long throttledUntil = NEVER;
+    private volatile String throttledBy;
+
+    private Decision reject(String limit, long waitNanos, long now) {
+      throttledBy = limit;
+      throttledUntil = now + waitNanos;
+      return new Decision(false, limit, Duration.ofNanos(waitNanos));
+    }
+
+    private boolean isFull(long now) {
+      return ahead(requestTat.get(), now) == 0 && ahead(tokenTat.get(), now) == 0;
+    }
+  }
+
+  public record Decision(boolean allowed, String limit, Duration retryAfter) {
+    static final Decision ALLOWED = new Decision(true, null, Duration.ZERO);
+  }
+
+  public record Throttled(String userId, String limit, Duration retryAfter) {
+  }
+}
@@ -0,0 +1,380 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable inverted index over document chunks, ranked with Okapi BM25. Every chunk is
+ * analyzed once when the index is built; a query then only walks the postings of its own
+ * terms, merging them document-at-a-time into a bounded {@link TopK}.
+ * <p>
+ * A query term also matches indexed terms it is a prefix of ("config" finds "configuration")
+ * at half weight, the way the old substring scoring gave partial matches half the points.
+ * A chunk is returned only if it matches one query term exactly or two by prefix.
+ * <p>
+ * Postings are packed into flat int buffers, one range per term, so the same index can live
+ * on the heap or be mapped from an {@link IndexFile} without copying.
+ */
+public final class Bm25Index {
+
+  static final float K1 = 1.2f;
+  static final float B = 0.75f;
+  private static final float PREFIX_WEIGHT = 0.5f;
+  private static final float MIN_MATCH_WEIGHT = 1.0f;
+  private static final int MAX_PREFIX_EXPANSIONS = 32;
+
+  public static final Bm25Index EMPTY = build(List.of());
+
+  private final ChunkStore chunks;
+  private final IntBuffer docLengths;
+  private final long totalLength;
+  private final float averageDocLength;
+  private final TermDictionary terms;
+  private final IntBuffer postingOffsets;
+  private final IntBuffer postingDocs;
+  private final IntBuffer postingFreqs;
+
+  Bm25Index(ChunkStore chunks, IntBuffer docLengths, TermDictionary terms, IntBuffer postingOffsets,
+      IntBuffer postingDocs, IntBuffer postingFreqs) {
+    this.chunks = chunks;
+    this.docLengths = docLengths;
+    this.terms = terms;
+    this.postingOffsets = postingOffsets;
+    this.postingDocs = postingDocs;
+    this.postingFreqs = postingFreqs;
+    long totalLength = 0;
+    for (int doc = 0; doc < docLengths.limit(); doc++) {
+      totalLength += docLengths.get(doc);
+    }
+    this.totalLength = totalLength;
+    this.averageDocLength = averageDocLength(totalLength, docLengths.limit());
+  }
+
+  static float averageDocLength(long totalLength, int documentCount) {
+    return documentCount == 0 ? 1 : Math.max(1, (float) totalLength / documentCount);
+  }
+
+  public static Bm25Index build(List<DocumentChunk> chunks) {
+    List<DocumentChunk> documents = List.copyOf(chunks);
+    int[] docLengths = new int[documents.size()];
+    Map<String, PostingsBuilder> postings = new HashMap<>();
+    Map<String, int[]> docTerms = new HashMap<>();
+
+    for (int doc = 0; doc < documents.size(); doc++) {
+      DocumentChunk chunk = documents.get(doc);
+      docTerms.clear();
+      int[] length = new int[1];
+      TextAnalyzer.analyze(chunk.header(), term -> {
+        length[0]++;
+        docTerms.computeIfAbsent(term, t -> new int[1])[0]++;
+      });
+      TextAnalyzer.analyze(chunk.content(), term -> {
+        length[0]++;
+        docTerms.computeIfAbsent(term, t -> new int[1])[0]++;
+      });
+      docLengths[doc] = length[0];
+      for (Map.Entry<String, int[]> entry : docTerms.entrySet()) {
+        postings.computeIfAbsent(entry.getKey(), t -> new PostingsBuilder()).add(doc, entry.getValue()[0]);
+      }
+    }
+
+    String[] terms = postings.keySet().toArray(String[]::new);
+    Arrays.sort(terms);
+    int[] postingOffsets = new int[terms.length + 1];
+    for (int i = 0; i < terms.length; i++) {
+      postingOffsets[i + 1] = Math.addExact(postingOffsets[i], postings.get(terms[i]).size);
+    }
+    int[] postingDocs = new int[postingOffsets[terms.length]];
+    int[] postingFreqs = new int[postingDocs.length];
+    for (int i = 0; i < terms.length; i++) {
+      PostingsBuilder builder = postings.remove(terms[i]);
+      System.arraycopy(builder.docs, 0, postingDocs, postingOffsets[i], builder.size);
+      System.arraycopy(builder.freqs, 0, postingFreqs, postingOffsets[i], builder.size);
+    }
+    return new Bm25Index(ChunkStore.of(documents), IntBuffer.wrap(docLengths), TermDictionary.of(terms),
+        IntBuffer.wrap(postingOffsets), IntBuffer.wrap(postingDocs), IntBuffer.wrap(postingFreqs));
+  }
+
+  public int size() {
+    return chunks.size();
+  }
+
+  public int termCount() {
+    return terms.count();
+  }
+
+  public DocumentChunk chunk(int doc) {
+    return chunks.get(doc);
+  }
+
+  /** The indexed chunks in document id order; decoded one at a time for a mapped index. */
+  public List<DocumentChunk> chunks() {
+    return new AbstractList<>() {
+      @Override
+      public DocumentChunk get(int index) {
+        return chunks.get(index);
+      }
+
+      @Override
+      public int size() {
+        return chunks.size();
+      }
+    };
+  }
+
+  ChunkStore chunkStore() {
+    return chunks;
+  }
+
+  IntBuffer docLengths() {
+    return docLengths;
+  }
+
+  TermDictionary terms() {
+    return terms;
+  }
+
+  IntBuffer postingOffsets() {
+    return postingOffsets;
+  }
+
+  IntBuffer postingDocs() {
+    return postingDocs;
+  }
+
+  IntBuffer postingFreqs() {
+    return postingFreqs;
+  }
+
+  /** Ids of the {@code k} best matching chunks, best first. */
+  public int[] search(String query, int k) {
+    byte[][] queryTerms = queryTerms(query);
+    if (queryTerms.length == 0 || chunks.size() == 0 || k <= 0) {
+      return new int[0];
+    }
+    Cursors cursors = match(queryTerms);
+    if (cursors.size == 0) {
+      return new int[0];
+    }
+    float[] idf = new float[cursors.size];
+    for (int c = 0; c < cursors.size; c++) {
+      idf[c] = idf(documentFrequency(cursors.term[c], null), chunks.size());
+    }
+    TopK top = new TopK(k);
+    rank(cursors, idf, queryTerms.length, averageDocLength, null, 0, 0, chunks.size(), top);
+    return top.drain();
+  }
+
+  /** The distinct analyzed terms of a query that are long enough to search for. */
+  static byte[][] queryTerms(String query) {
+    Set<String> queryTerms = new LinkedHashSet<>();
+    TextAnalyzer.analyze(query, term -> {
+      if (term.length() >= TextAnalyzer.MIN_QUERY_TERM_LENGTH) {
+        queryTerms.add(term);
+      }
+    });
+    return queryTerms.stream().map(term -> term.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+  }
+
+  static float idf(int documentFrequency, int documentCount) {
+    return (float) Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+  }
+
+  /** One cursor per index term matching a query term, exactly or as a prefix. */
+  Cursors match(byte[][] queryTerms) {
+    Cursors cursors = new Cursors();
+    for (int group = 0; group < queryTerms.length; group++) {
+      byte[] termBytes = queryTerms[group];
+      int exact = terms.find(termBytes);
+      if (exact >= 0) {
+        cursors.add(exact, group, 1.0f);
+      }
+      int expansions = 0;
+      for (int term = exact >= 0 ? exact + 1 : -exact - 1;
+          term < terms.count() && expansions < MAX_PREFIX_EXPANSIONS && terms.startsWith(term, termBytes);
+          term++, expansions++) {
+        cursors.add(term, group, PREFIX_WEIGHT);
+      }
+    }
+    return cursors;
+  }
+
+  /** Postings {@code cursors} would walk, a measure of how much work ranking them is. */
+  long postingCount(Cursors cursors) {
+    long count = 0;
+    for (int c = 0; c < cursors.size; c++) {
+      count += postingOffsets.get(cursors.term[c] + 1) - postingOffsets.get(cursors.term[c]);
+    }
+    return count;
+  }
+
+  /** Documents containing {@code term}, not counting {@code deleted} ones. */
+  int documentFrequency(int term, BitSet deleted) {
+    int start = postingOffsets.get(term);
+    int end = postingOffsets.get(term + 1);
+    if (deleted == null) {
+      return end - start;
+    }
+    int live = 0;
+    for (int i = start; i < end; i++) {
+      if (!deleted.get(postingDocs.get(i))) {
+        live++;
+      }
+    }
+    return live;
+  }
+
+  String term(int id) {
+    return terms.term(id);
+  }
+
+  int docLength(int doc) {
+    return docLengths.get(doc);
+  }
+
+  long totalLength() {
+    return totalLength;
+  }
+
+  /**
+   * Scores the documents in {@code [fromDoc, toDoc)} under {@code cursors} and offers them to
+   * {@code top} as {@code docBase + doc}. The idf values and average length are passed in, so
+   * several indexes, or several ranges of one, can be ranked as one corpus; {@code deleted}
+   * documents are skipped.
+   */
+  void rank(Cursors cursors, float[] idf, int groups, float averageDocLength, BitSet deleted, int docBase,
+      int fromDoc, int toDoc, TopK top) {
+    int count = cursors.size;
+    int[] position = new int[count];
+    int[] end = new int[count];
+    int[] heap = new int[count];
+    int heapSize = 0;
+    for (int c = 0; c < count; c++) {
+      int start = postingOffsets.get(cursors.term[c]);
+      int limit = postingOffsets.get(cursors.term[c] + 1);
+      position[c] = fromDoc == 0 ? start : firstPosting(start, limit, fromDoc);
+      end[c] = toDoc == size() ? limit : firstPosting(position[c], limit, toDoc);
+      if (position[c] < end[c]) {
+        heap[heapSize++] = c;
+      }
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(heap, heapSize, i, position);
+    }
+
+    float[] groupScore = new float[groups];
+    float[] groupWeight = new float[groups];
+    while (heapSize > 0) {
+      int doc = postingDocs.get(position[heap[0]]);
+      Arrays.fill(groupScore, 0);
+      Arrays.fill(groupWeight, 0);
+      float norm = K1 * (1 - B + B * docLengths.get(doc) / averageDocLength);
+
+      while (heapSize > 0 && postingDocs.get(position[heap[0]]) == doc) {
+        int c = heap[0];
+        int freq = postingFreqs.get(position[c]);
+        float score = cursors.weight[c] * idf[c] * freq * (K1 + 1) / (freq + norm);
+        int g = cursors.group[c];
+        groupScore[g] = Math.max(groupScore[g], score);
+        groupWeight[g] = Math.max(groupWeight[g], cursors.weight[c]);
+
+        if (++position[c] == end[c]) {
+          heap[0] = heap[--heapSize];
+        }
+        siftDown(heap, heapSize, 0, position);
+      }
+      if (deleted != null && deleted.get(doc)) {
+        continue;
+      }
+
+      float score = 0;
+      float weight = 0;
+      for (int g = 0; g < groups; g++) {
+        score += groupScore[g];
+        weight += groupWeight[g];
+      }
+      if (weight >= MIN_MATCH_WEIGHT) {
+        top.offer(docBase + doc, score);
+      }
+    }
+  }
+
+  /** The first position in {@code [from, to)} whose document is at least {@code doc}, or {@code to}. */
+  private int firstPosting(int from, int to, int doc) {
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      if (postingDocs.get(mid) < doc) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return from;
+  }
+
+  /** Orders postings cursors by the document they are positioned on. */
+  private void siftDown(int[] heap, int size, int index, int[] position) {
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        return;
+      }
+      if (child + 1 < size && postingDocs.get(position[heap[child + 1]]) < postingDocs.get(position[heap[child]])) {
+        child++;
+      }
+      if (postingDocs.get(position[heap[index]]) <= postingDocs.get(position[heap[child]])) {
+        return;
+      }
+      int swap = heap[index];
+      heap[index] = heap[child];
+      heap[child] = swap;
+      index = child;
+    }
+  }
+
+  /** One postings cursor per matched index term, tagged with the query term it came from. */
+  static final class Cursors {
+    int[] term = new int[8];
+    int[] group = new int[8];
+    float[] weight = new float[8];
+    int size;
+
+    void add(int termId, int queryGroup, float termWeight) {
+      if (size == term.length) {
+        term = Arrays.copyOf(term, size * 2);
+        group = Arrays.copyOf(group, size * 2);
+        weight = Arrays.copyOf(weight, size * 2);
+      }
+      term[size] = termId;
+      group[size] = queryGroup;
+      weight[size] = termWeight;
+      size++;
+    }
+  }
+
+  private static final class PostingsBuilder {
+    int[] docs = new int[4];
+    int[] freqs = new int[4];
+    int size;
+
+    void add(int doc, int freq) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+        freqs = Arrays.copyOf(freqs, size * 2);
+      }
+      docs[size] = doc;
+      freqs[size] = freq;
+      size++;
+    }
+  }
+}
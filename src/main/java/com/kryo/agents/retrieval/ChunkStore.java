@@ -0,0 +1,64 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** The chunks an index ranks, addressed by document id. */
+interface ChunkStore {
+
+  int size();
+
+  DocumentChunk get(int doc);
+
+  default String source(int doc) {
+    return get(doc).source();
+  }
+
+  static ChunkStore of(List<DocumentChunk> chunks) {
+    List<DocumentChunk> copy = List.copyOf(chunks);
+    return new ChunkStore() {
+      @Override
+      public int size() {
+        return copy.size();
+      }
+
+      @Override
+      public DocumentChunk get(int doc) {
+        return copy.get(doc);
+      }
+    };
+  }
+
+  /**
+   * Chunk text left in a mapped file as UTF-8 and decoded only when a chunk is returned.
+   * Each chunk is three consecutive strings (source, header, content) in {@code offsets}.
+   */
+  record Mapped(ByteBuffer bytes, IntBuffer offsets) implements ChunkStore {
+
+    @Override
+    public int size() {
+      return (offsets.limit() - 1) / 3;
+    }
+
+    @Override
+    public DocumentChunk get(int doc) {
+      return new DocumentChunk(string(3 * doc), string(3 * doc + 1), string(3 * doc + 2));
+    }
+
+    @Override
+    public String source(int doc) {
+      return string(3 * doc);
+    }
+
+    private String string(int index) {
+      int start = offsets.get(index);
+      byte[] utf8 = new byte[offsets.get(index + 1) - start];
+      bytes.get(start, utf8);
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+  }
+}
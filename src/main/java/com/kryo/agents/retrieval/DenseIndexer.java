@@ -0,0 +1,82 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the {@link HnswIndex} of a set of chunks: each chunk's text is looked up in the
+ * {@link EmbeddingCache} and only the missing ones are sent to the {@link Embedder}, in batches.
+ */
+public final class DenseIndexer {
+
+  private static final Logger logger = LoggerFactory.getLogger(DenseIndexer.class);
+  static final int BATCH_SIZE = 64;
+  /** Keeps each input well inside the embeddings model's token limit. */
+  static final int MAX_INPUT_CHARS = 8000;
+
+  private final Embedder embedder;
+  private final EmbeddingCache cache;
+  private final boolean quantize;
+
+  public DenseIndexer(Embedder embedder, EmbeddingCache cache, boolean quantize) {
+    this.embedder = embedder;
+    this.cache = cache;
+    this.quantize = quantize;
+  }
+
+  /** The index of {@code chunks} in id order, or null when they could not be embedded. */
+  public HnswIndex index(List<DocumentChunk> chunks) {
+    long startNanos = System.nanoTime();
+    float[][] vectors = new float[chunks.size()][];
+    List<Integer> missing = new ArrayList<>();
+    for (int doc = 0; doc < chunks.size(); doc++) {
+      vectors[doc] = cache.get(text(chunks.get(doc)));
+      if (vectors[doc] == null) {
+        missing.add(doc);
+      }
+    }
+
+    try {
+      for (int from = 0; from < missing.size(); from += BATCH_SIZE) {
+        List<Integer> batch = missing.subList(from, Math.min(missing.size(), from + BATCH_SIZE));
+        List<String> texts = batch.stream().map(doc -> text(chunks.get(doc))).toList();
+        float[][] embedded = embedder.embed(texts);
+        for (int i = 0; i < batch.size(); i++) {
+          VectorStore.normalize(embedded[i]);
+          vectors[batch.get(i)] = embedded[i];
+        }
+        cache.putAll(texts, embedded);
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Could not embed {} chunks with {}, dense retrieval is off for them: {}", chunks.size(),
+          embedder.model(), e.getMessage());
+      return null;
+    }
+
+    HnswIndex index = HnswIndex.build(VectorStore.of(vectors, quantize), HnswIndex.DEFAULT_M,
+        HnswIndex.DEFAULT_EF_CONSTRUCTION, chunks.size());
+    logger.debug("Indexed {} chunk vectors ({} embedded, {} cached) in {} ms", chunks.size(), missing.size(),
+        chunks.size() - missing.size(), (System.nanoTime() - startNanos) / 1_000_000);
+    return index;
+  }
+
+  /** The unit-length embedding of a query; throws whatever the embedder throws. */
+  public float[] embedQuery(String query) {
+    float[] vector = embedder.embed(List.of(truncate(query)))[0];
+    VectorStore.normalize(vector);
+    return vector;
+  }
+
+  static String text(DocumentChunk chunk) {
+    return truncate(chunk.header() + "\n\n" + chunk.content());
+  }
+
+  private static String truncate(String text) {
+    return text.length() <= MAX_INPUT_CHARS ? text : text.substring(0, MAX_INPUT_CHARS);
+  }
+}
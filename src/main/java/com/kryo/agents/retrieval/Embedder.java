@@ -0,0 +1,13 @@
+package com.kryo.agents.retrieval;
+
+import java.util.List;
+
+/** Turns text into embedding vectors for dense retrieval. */
+public interface Embedder {
+
+  /** Identifies the model, so vectors cached for one model are never reused for another. */
+  String model();
+
+  /** One vector per text, in order. */
+  float[][] embed(List<String> texts);
+}
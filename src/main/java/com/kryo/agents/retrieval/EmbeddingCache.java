@@ -0,0 +1,120 @@
+package com.kryo.agents.retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeddings keyed by the SHA-256 of the embedded text, so unchanged chunks are never sent to
+ * the embeddings model twice. With a directory, vectors are also appended to one file per
+ * model and read back at startup. A record is the 32-byte hash, the dimension count and the
+ * floats, little-endian; a record torn by a crash is cut off on open.
+ */
+public final class EmbeddingCache {
+
+  private static final int HASH_BYTES = 32;
+
+  private final Map<String, float[]> vectors = new HashMap<>();
+  private final Path file;
+
+  private EmbeddingCache(Path file) {
+    this.file = file;
+  }
+
+  public static EmbeddingCache inMemory() {
+    return new EmbeddingCache(null);
+  }
+
+  public static EmbeddingCache open(Path directory, String model) throws IOException {
+    Files.createDirectories(directory);
+    EmbeddingCache cache = new EmbeddingCache(
+        directory.resolve(model.replaceAll("[^A-Za-z0-9._-]", "_") + ".embeddings"));
+    cache.load();
+    return cache;
+  }
+
+  public synchronized int size() {
+    return vectors.size();
+  }
+
+  synchronized float[] get(String text) {
+    return vectors.get(hash(text));
+  }
+
+  synchronized void putAll(List<String> texts, float[][] embeddings) throws IOException {
+    ByteBuffer records = null;
+    if (file != null) {
+      int bytes = 0;
+      for (float[] embedding : embeddings) {
+        bytes += HASH_BYTES + Integer.BYTES + embedding.length * Float.BYTES;
+      }
+      records = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    for (int i = 0; i < texts.size(); i++) {
+      String hash = hash(texts.get(i));
+      vectors.put(hash, embeddings[i]);
+      if (records != null) {
+        records.put(HexFormat.of().parseHex(hash)).putInt(embeddings[i].length);
+        for (float value : embeddings[i]) {
+          records.putFloat(value);
+        }
+      }
+    }
+    if (records != null) {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND)) {
+        records.flip();
+        while (records.hasRemaining()) {
+          channel.write(records);
+        }
+      }
+    }
+  }
+
+  private void load() throws IOException {
+    if (!Files.isRegularFile(file)) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+          .order(ByteOrder.LITTLE_ENDIAN);
+      byte[] hash = new byte[HASH_BYTES];
+      while (buffer.remaining() >= HASH_BYTES + Integer.BYTES) {
+        int start = buffer.position();
+        buffer.get(hash);
+        int dimensions = buffer.getInt();
+        if (dimensions < 0 || buffer.remaining() < (long) dimensions * Float.BYTES) {
+          buffer.position(start);
+          break;
+        }
+        float[] vector = new float[dimensions];
+        buffer.asFloatBuffer().get(vector);
+        buffer.position(buffer.position() + dimensions * Float.BYTES);
+        vectors.put(HexFormat.of().formatHex(hash), vector);
+      }
+      if (buffer.hasRemaining()) {
+        channel.truncate(buffer.position());
+      }
+    }
+  }
+
+  private static String hash(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.kryo.agents.retrieval;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local stand-in for an embeddings model: hashes the character trigrams of each analyzed term
+ * into a fixed number of signed buckets, counts damped by a square root so a long chunk is not
+ * dominated by its most repeated words. It needs no network and catches misspellings and
+ * word-form variants that exact term matching misses, but unlike a real model it knows nothing
+ * about synonyms, and its similarities run lower, so pair it with a lower similarity floor.
+ */
+public final class HashingEmbedder implements Embedder {
+
+  private final int dimensions;
+
+  public HashingEmbedder(int dimensions) {
+    if (dimensions <= 0) {
+      throw new IllegalArgumentException("dimensions must be positive: " + dimensions);
+    }
+    this.dimensions = dimensions;
+  }
+
+  @Override
+  public String model() {
+    return "hashing-" + dimensions;
+  }
+
+  @Override
+  public float[][] embed(List<String> texts) {
+    float[][] vectors = new float[texts.size()][];
+    for (int i = 0; i < texts.size(); i++) {
+      vectors[i] = embed(texts.get(i));
+    }
+    return vectors;
+  }
+
+  private float[] embed(String text) {
+    Map<String, Integer> trigrams = new HashMap<>();
+    TextAnalyzer.analyze(text, term -> {
+      String padded = "^" + term + "$";
+      for (int i = 0; i + 3 <= padded.length(); i++) {
+        trigrams.merge(padded.substring(i, i + 3), 1, Integer::sum);
+      }
+    });
+    float[] vector = new float[dimensions];
+    trigrams.forEach((trigram, count) -> add(vector, trigram.hashCode() * 0x9E3779B9, (float) Math.sqrt(count)));
+    VectorStore.normalize(vector);
+    return vector;
+  }
+
+  private void add(float[] vector, int hash, float weight) {
+    int mixed = hash ^ (hash >>> 16);
+    vector[Math.floorMod(mixed, dimensions)] += (mixed & 0x40000000) == 0 ? weight : -weight;
+  }
+}
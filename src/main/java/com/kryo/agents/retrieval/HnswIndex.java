@@ -0,0 +1,271 @@
+package com.kryo.agents.retrieval;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Hierarchical navigable small world graph over a {@link VectorStore} for approximate nearest
+ * neighbour search (Malkov and Yashunin, 2016). Each vector is a node linked to its nearest
+ * neighbours on level 0 and, with exponentially decreasing probability, on sparser levels
+ * above; a query descends greedily from the top level and then explores level 0 best-first,
+ * looking at a few thousand vectors instead of all of them.
+ * <p>
+ * The graph is built once and never modified, so any number of threads can search it at
+ * the same time without locking; a changed corpus gets a new index.
+ */
+public final class HnswIndex {
+
+  static final int DEFAULT_M = 16;
+  static final int DEFAULT_EF_CONSTRUCTION = 100;
+
+  public static final HnswIndex EMPTY = build(VectorStore.of(new float[0][], false), DEFAULT_M,
+      DEFAULT_EF_CONSTRUCTION, 0);
+
+  private final VectorStore vectors;
+  /** {@code links[node][level]} are the neighbours of {@code node} on {@code level}. */
+  private final int[][][] links;
+  private final int entryPoint;
+  private final int maxLevel;
+
+  @FunctionalInterface
+  private interface Scorer {
+    float similarity(int node);
+  }
+
+  private HnswIndex(VectorStore vectors, int[][][] links, int entryPoint, int maxLevel) {
+    this.vectors = vectors;
+    this.links = links;
+    this.entryPoint = entryPoint;
+    this.maxLevel = maxLevel;
+  }
+
+  /**
+   * Inserts the vectors in id order. {@code m} neighbours are kept per node on upper levels and
+   * {@code 2m} on level 0; {@code efConstruction} is the candidate list size while linking.
+   */
+  static HnswIndex build(VectorStore vectors, int m, int efConstruction, long seed) {
+    int size = vectors.size();
+    int[][][] links = new int[size][][];
+    int[][] counts = new int[size][];
+    Random random = new Random(seed);
+    double levelMultiplier = 1 / Math.log(m);
+    BitSet visited = new BitSet(size);
+    int entryPoint = -1;
+    int maxLevel = -1;
+
+    for (int node = 0; node < size; node++) {
+      int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+      links[node] = new int[level + 1][];
+      counts[node] = new int[level + 1];
+      for (int l = 0; l <= level; l++) {
+        links[node][l] = new int[maxConnections(l, m) + 1];
+      }
+      if (entryPoint < 0) {
+        entryPoint = node;
+        maxLevel = level;
+        continue;
+      }
+
+      int inserted = node;
+      Scorer scorer = other -> vectors.similarity(inserted, other);
+      int entry = entryPoint;
+      float entryScore = scorer.similarity(entry);
+      for (int l = maxLevel; l > level; l--) {
+        NeighborQueue nearest = searchLayer(links, counts, scorer, entry, entryScore, 1, l, visited, null);
+        entry = nearest.topNode();
+        entryScore = nearest.topScore();
+      }
+      for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+        NeighborQueue candidates = searchLayer(links, counts, scorer, entry, entryScore, efConstruction, l,
+            visited, null);
+        int[] sorted = new int[candidates.size()];
+        float[] scores = new float[sorted.length];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+          scores[i] = candidates.topScore();
+          sorted[i] = candidates.pop();
+        }
+        entry = sorted[0];
+        entryScore = scores[0];
+
+        int maxConnections = maxConnections(l, m);
+        counts[node][l] = selectNeighbors(vectors, sorted, scores, sorted.length, maxConnections, links[node][l]);
+        for (int i = 0; i < counts[node][l]; i++) {
+          connect(vectors, links, counts, links[node][l][i], node, l, maxConnections);
+        }
+      }
+      if (level > maxLevel) {
+        entryPoint = node;
+        maxLevel = level;
+      }
+    }
+
+    for (int node = 0; node < size; node++) {
+      for (int l = 0; l < links[node].length; l++) {
+        links[node][l] = Arrays.copyOf(links[node][l], counts[node][l]);
+      }
+    }
+    return new HnswIndex(vectors, links, entryPoint, maxLevel);
+  }
+
+  public int size() {
+    return vectors.size();
+  }
+
+  int dimensions() {
+    return vectors.dimensions;
+  }
+
+  /** Approximate {@code k} nearest neighbours of a unit-length query, best first. */
+  public int[] search(float[] query, int k, int ef) {
+    TopK top = new TopK(k);
+    search(query, k, ef, -1, null, 0, top);
+    return top.drain();
+  }
+
+  /**
+   * Offers up to {@code k} approximate nearest neighbours with a similarity of at least
+   * {@code minSimilarity} to {@code top} as {@code docBase + node}. {@code deleted} nodes are
+   * still walked through but never returned, so they do not cost recall. A larger {@code ef}
+   * explores more of the graph, trading latency for recall.
+   */
+  void search(float[] query, int k, int ef, float minSimilarity, BitSet deleted, int docBase, TopK top) {
+    if (entryPoint < 0 || k <= 0) {
+      return;
+    }
+    Scorer scorer = node -> vectors.similarity(query, node);
+    BitSet visited = new BitSet(size());
+    int entry = entryPoint;
+    float entryScore = scorer.similarity(entry);
+    for (int l = maxLevel; l > 0; l--) {
+      NeighborQueue nearest = searchLayer(links, null, scorer, entry, entryScore, 1, l, visited, null);
+      entry = nearest.topNode();
+      entryScore = nearest.topScore();
+    }
+    NeighborQueue results = searchLayer(links, null, scorer, entry, entryScore, Math.max(ef, k), 0, visited,
+        deleted);
+    while (results.size() > k) {
+      results.pop();
+    }
+    while (results.size() > 0) {
+      float score = results.topScore();
+      int node = results.pop();
+      if (score >= minSimilarity) {
+        top.offer(docBase + node, score);
+      }
+    }
+  }
+
+  /** Exact {@code k} nearest neighbours by comparing the query with every vector. */
+  public int[] exactSearch(float[] query, int k) {
+    TopK top = new TopK(k);
+    for (int node = 0; node < size(); node++) {
+      top.offer(node, vectors.similarity(query, node));
+    }
+    return top.drain();
+  }
+
+  /**
+   * Best-first search of one level from {@code entry}, returning up to {@code ef} nearest
+   * nodes with the least similar on top. {@code counts} is null once the graph is built and
+   * link arrays are trimmed. {@code excluded} nodes are expanded but not returned.
+   */
+  private static NeighborQueue searchLayer(int[][][] links, int[][] counts, Scorer scorer, int entry,
+      float entryScore, int ef, int level, BitSet visited, BitSet excluded) {
+    visited.clear();
+    NeighborQueue candidates = new NeighborQueue(ef, true);
+    NeighborQueue results = new NeighborQueue(ef + 1, false);
+    candidates.push(entry, entryScore);
+    if (excluded == null || !excluded.get(entry)) {
+      results.push(entry, entryScore);
+    }
+    visited.set(entry);
+
+    while (candidates.size() > 0) {
+      if (results.size() >= ef && candidates.topScore() < results.topScore()) {
+        break;
+      }
+      int node = candidates.pop();
+      int[] neighbors = links[node][level];
+      int count = counts == null ? neighbors.length : counts[node][level];
+      for (int i = 0; i < count; i++) {
+        int neighbor = neighbors[i];
+        if (visited.get(neighbor)) {
+          continue;
+        }
+        visited.set(neighbor);
+        float score = scorer.similarity(neighbor);
+        if (results.size() < ef || score > results.topScore()) {
+          candidates.push(neighbor, score);
+          if (excluded == null || !excluded.get(neighbor)) {
+            results.push(neighbor, score);
+            if (results.size() > ef) {
+              results.pop();
+            }
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Keeps a candidate only if it is closer to the new node than to every neighbour already
+   * kept, which spreads links across directions instead of clustering them (the paper's
+   * heuristic). Candidates are sorted most similar first; returns how many were kept.
+   */
+  private static int selectNeighbors(VectorStore vectors, int[] candidates, float[] scores, int count,
+      int maxConnections, int[] selected) {
+    int kept = 0;
+    for (int i = 0; i < count && kept < maxConnections; i++) {
+      int candidate = candidates[i];
+      boolean diverse = true;
+      for (int j = 0; j < kept && diverse; j++) {
+        diverse = vectors.similarity(candidate, selected[j]) < scores[i];
+      }
+      if (diverse) {
+        selected[kept++] = candidate;
+      }
+    }
+    return kept;
+  }
+
+  /** Adds a back link from {@code node} to {@code neighbor}, re-selecting its links when full. */
+  private static void connect(VectorStore vectors, int[][][] links, int[][] counts, int node, int neighbor,
+      int level, int maxConnections) {
+    int[] nodeLinks = links[node][level];
+    int count = counts[node][level];
+    nodeLinks[count++] = neighbor;
+    if (count <= maxConnections) {
+      counts[node][level] = count;
+      return;
+    }
+
+    float[] scores = new float[count];
+    for (int i = 0; i < count; i++) {
+      scores[i] = vectors.similarity(node, nodeLinks[i]);
+    }
+    sortBySimilarity(nodeLinks, scores, count);
+    int[] candidates = Arrays.copyOf(nodeLinks, count);
+    counts[node][level] = selectNeighbors(vectors, candidates, scores, count, maxConnections, nodeLinks);
+  }
+
+  private static void sortBySimilarity(int[] nodes, float[] scores, int count) {
+    for (int i = 1; i < count; i++) {
+      int node = nodes[i];
+      float score = scores[i];
+      int j = i - 1;
+      while (j >= 0 && scores[j] < score) {
+        nodes[j + 1] = nodes[j];
+        scores[j + 1] = scores[j];
+        j--;
+      }
+      nodes[j + 1] = node;
+      scores[j + 1] = score;
+    }
+  }
+
+  private static int maxConnections(int level, int m) {
+    return level == 0 ? 2 * m : m;
+  }
+}
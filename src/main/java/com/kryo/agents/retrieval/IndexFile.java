@@ -0,0 +1,258 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Binary file holding a {@link Bm25Index} and its chunk text, laid out so it can be
+ * memory-mapped and queried in place: nothing is parsed at open, postings are read straight
+ * from the page cache and chunk text is decoded only for returned results.
+ * <p>
+ * Layout (little-endian): a header with magic, version, the source fingerprint, document and
+ * term counts and a table of {@code (offset, length)} per section, followed by the sections,
+ * each 8-byte aligned: document lengths, term offsets, term bytes, posting offsets, posting
+ * doc ids, posting frequencies, chunk text and chunk text offsets. Each section is mapped on
+ * its own, so a section (not the file) is limited to 2 GB.
+ */
+public final class IndexFile {
+
+  static final int MAGIC = 0x4B524958;
+  static final int VERSION = 1;
+
+  private static final int DOC_LENGTHS = 0;
+  private static final int TERM_OFFSETS = 1;
+  private static final int TERM_BYTES = 2;
+  private static final int POSTING_OFFSETS = 3;
+  private static final int POSTING_DOCS = 4;
+  private static final int POSTING_FREQS = 5;
+  private static final int CHUNK_BYTES = 6;
+  private static final int CHUNK_OFFSETS = 7;
+  private static final int SECTIONS = 8;
+  private static final int HEADER_BYTES = 24 + SECTIONS * 16;
+
+  private IndexFile() {
+  }
+
+  /**
+   * Writes the index to a temporary file next to {@code path} and moves it into place, so
+   * a crash never leaves a half-written index behind.
+   */
+  public static void write(Bm25Index index, long fingerprint, Path path) throws IOException {
+    Path directory = path.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      long[] sections = new long[SECTIONS * 2];
+      try (Output out = new Output(FileChannel.open(temp, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING))) {
+        out.skip(HEADER_BYTES);
+        out.section(sections, DOC_LENGTHS, () -> out.putInts(index.docLengths()));
+        out.section(sections, TERM_OFFSETS, () -> out.putInts(index.terms().offsets()));
+        out.section(sections, TERM_BYTES, () -> out.putBytes(index.terms().bytes()));
+        out.section(sections, POSTING_OFFSETS, () -> out.putInts(index.postingOffsets()));
+        out.section(sections, POSTING_DOCS, () -> out.putInts(index.postingDocs()));
+        out.section(sections, POSTING_FREQS, () -> out.putInts(index.postingFreqs()));
+
+        ChunkStore chunks = index.chunkStore();
+        int[] chunkOffsets = new int[3 * chunks.size() + 1];
+        out.section(sections, CHUNK_BYTES, () -> {
+          long length = 0;
+          for (int doc = 0; doc < chunks.size(); doc++) {
+            DocumentChunk chunk = chunks.get(doc);
+            for (int field = 0; field < 3; field++) {
+              String value = field == 0 ? chunk.source() : field == 1 ? chunk.header() : chunk.content();
+              byte[] utf8 = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+              out.putBytes(ByteBuffer.wrap(utf8));
+              length += utf8.length;
+              chunkOffsets[3 * doc + field + 1] = Math.toIntExact(length);
+            }
+          }
+        });
+        out.section(sections, CHUNK_OFFSETS, () -> out.putInts(IntBuffer.wrap(chunkOffsets)));
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putLong(fingerprint)
+            .putInt(index.size())
+            .putInt(index.termCount());
+        for (long value : sections) {
+          header.putLong(value);
+        }
+        out.writeAt(header.flip(), 0);
+      }
+      try {
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Maps the index at {@code path}, or returns empty when there is none or it was written
+   * by another format version or from other source documents.
+   *
+   * @throws IOException if the file cannot be read or its layout is inconsistent
+   */
+  public static Optional<Bm25Index> open(Path path, long fingerprint) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return Optional.empty();
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize < HEADER_BYTES) {
+        return Optional.empty();
+      }
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+        // a short read only happens for a truncated file, which the size check rules out
+      }
+      header.flip();
+      if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != fingerprint) {
+        return Optional.empty();
+      }
+      int docCount = header.getInt();
+      int termCount = header.getInt();
+
+      ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+      for (int i = 0; i < SECTIONS; i++) {
+        long offset = header.getLong();
+        long length = header.getLong();
+        if (offset < HEADER_BYTES || length < 0 || length > Integer.MAX_VALUE || offset + length > fileSize) {
+          throw new IOException("Corrupt index file " + path + ": section " + i + " out of bounds");
+        }
+        sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+      }
+
+      IntBuffer docLengths = ints(sections[DOC_LENGTHS], docCount, path);
+      IntBuffer termOffsets = ints(sections[TERM_OFFSETS], termCount + 1, path);
+      IntBuffer postingOffsets = ints(sections[POSTING_OFFSETS], termCount + 1, path);
+      int postingCount = postingOffsets.get(termCount);
+      IntBuffer postingDocs = ints(sections[POSTING_DOCS], postingCount, path);
+      IntBuffer postingFreqs = ints(sections[POSTING_FREQS], postingCount, path);
+      IntBuffer chunkOffsets = ints(sections[CHUNK_OFFSETS], 3 * docCount + 1, path);
+      if (termOffsets.get(termCount) != sections[TERM_BYTES].limit()
+          || chunkOffsets.get(3 * docCount) != sections[CHUNK_BYTES].limit()) {
+        throw new IOException("Corrupt index file " + path + ": offsets do not match section sizes");
+      }
+
+      return Optional.of(new Bm25Index(new ChunkStore.Mapped(sections[CHUNK_BYTES], chunkOffsets), docLengths,
+          new TermDictionary(sections[TERM_BYTES], termOffsets), postingOffsets, postingDocs, postingFreqs));
+    }
+  }
+
+  private static IntBuffer ints(ByteBuffer section, int expected, Path path) throws IOException {
+    if (section.limit() != (long) expected * Integer.BYTES) {
+      throw new IOException("Corrupt index file " + path + ": expected " + expected + " ints, found "
+          + section.limit() / Integer.BYTES);
+    }
+    return section.asIntBuffer();
+  }
+
+  @FunctionalInterface
+  private interface SectionBody {
+    void write() throws IOException;
+  }
+
+  /** Buffered little-endian writer that records where each section starts and ends. */
+  private static final class Output implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    Output(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    void skip(int bytes) throws IOException {
+      for (int i = 0; i < bytes; i++) {
+        put((byte) 0);
+      }
+    }
+
+    void section(long[] sections, int section, SectionBody body) throws IOException {
+      while (position % 8 != 0) {
+        put((byte) 0);
+      }
+      long start = position;
+      body.write();
+      if (position - start > Integer.MAX_VALUE) {
+        throw new IOException("Index section " + section + " exceeds 2 GB");
+      }
+      sections[2 * section] = start;
+      sections[2 * section + 1] = position - start;
+    }
+
+    void putInts(IntBuffer ints) throws IOException {
+      for (int i = 0; i < ints.limit(); i++) {
+        if (buffer.remaining() < Integer.BYTES) {
+          flush();
+        }
+        buffer.putInt(ints.get(i));
+        position += Integer.BYTES;
+      }
+    }
+
+    void putBytes(ByteBuffer bytes) throws IOException {
+      for (int from = 0; from < bytes.limit(); ) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        int length = Math.min(bytes.limit() - from, buffer.remaining());
+        buffer.put(bytes.slice(from, length));
+        from += length;
+        position += length;
+      }
+    }
+
+    private void put(byte value) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put(value);
+      position++;
+    }
+
+    void writeAt(ByteBuffer bytes, long at) throws IOException {
+      flush();
+      while (bytes.hasRemaining()) {
+        at += channel.write(bytes, at);
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+        channel.force(false);
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
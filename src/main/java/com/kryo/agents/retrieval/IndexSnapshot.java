@@ -0,0 +1,257 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One published version of the retrieval index: a base {@link Bm25Index} plus one segment per
+ * doc file changed since, searched as a single corpus. A changed file only has its own chunks
+ * indexed; its old chunks in the base are marked deleted rather than re-indexing the base.
+ * <p>
+ * Snapshots are immutable. {@link #update} derives the next version, which the owner publishes
+ * with a single volatile write, so queries never wait for a reload or see a half-built index.
+ * Document ids are global: segment {@code i} owns {@code [docBase(i), docBase(i + 1))}.
+ * <p>
+ * With a {@link DenseIndexer}, every segment also gets an {@link HnswIndex} of its chunk
+ * embeddings, built when the segment is, and queries can rank by vector similarity or fuse
+ * both rankings.
+ */
+public final class IndexSnapshot {
+
+  /** Above this many segments an update merges everything back into one base. */
+  static final int MAX_SEGMENTS = 16;
+
+  /** Candidates taken from each ranking before they are fused. */
+  static final int FUSION_CANDIDATES = 20;
+
+  public static final IndexSnapshot EMPTY = new IndexSnapshot(0, List.of(), null);
+
+  private final long version;
+  private final DenseIndexer dense;
+  private final List<Segment> segments;
+  private final int[] docBases;
+  private final int liveDocs;
+  private final float averageDocLength;
+
+  /**
+   * {@code source} is the doc file a segment was built from, or null for a base of many files;
+   * {@code vectors} is null without dense retrieval or when the chunks could not be embedded.
+   */
+  record Segment(String source, Bm25Index index, BitSet deleted, HnswIndex vectors) {
+  }
+
+  private IndexSnapshot(long version, List<Segment> segments, DenseIndexer dense) {
+    this.version = version;
+    this.dense = dense;
+    this.segments = List.copyOf(segments);
+    this.docBases = new int[segments.size() + 1];
+    int live = 0;
+    long totalLength = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      Segment segment = segments.get(i);
+      Bm25Index index = segment.index();
+      docBases[i + 1] = docBases[i] + index.size();
+      live += index.size();
+      totalLength += index.totalLength();
+      if (segment.deleted() != null) {
+        for (int doc = segment.deleted().nextSetBit(0); doc >= 0; doc = segment.deleted().nextSetBit(doc + 1)) {
+          live--;
+          totalLength -= index.docLength(doc);
+        }
+      }
+    }
+    this.liveDocs = live;
+    this.averageDocLength = Bm25Index.averageDocLength(totalLength, live);
+  }
+
+  public static IndexSnapshot of(Bm25Index base) {
+    return of(base, null);
+  }
+
+  /** The first version; {@code dense} may be null to rank by keywords only. */
+  public static IndexSnapshot of(Bm25Index base, DenseIndexer dense) {
+    return new IndexSnapshot(1, List.of(segment(null, base, dense)), dense);
+  }
+
+  /** The next version with {@code base} replacing every segment. */
+  public IndexSnapshot replace(Bm25Index base) {
+    return new IndexSnapshot(version + 1, List.of(segment(null, base, dense)), dense);
+  }
+
+  private static Segment segment(String source, Bm25Index index, DenseIndexer dense) {
+    return new Segment(source, index, null, dense == null ? null : dense.index(index.chunks()));
+  }
+
+  /**
+   * The next version, with the chunks of each {@code changed} file replacing its previous ones
+   * and the chunks of {@code removed} files dropped. Only the changed files are indexed.
+   */
+  public IndexSnapshot update(Map<String, List<DocumentChunk>> changed, Set<String> removed) {
+    List<Segment> next = new ArrayList<>();
+    for (Segment segment : segments) {
+      if (segment.source() != null) {
+        if (!changed.containsKey(segment.source()) && !removed.contains(segment.source())) {
+          next.add(segment);
+        }
+        continue;
+      }
+      BitSet deleted = segment.deleted() == null ? new BitSet() : (BitSet) segment.deleted().clone();
+      ChunkStore chunks = segment.index().chunkStore();
+      for (int doc = 0; doc < chunks.size(); doc++) {
+        String source = chunks.source(doc);
+        if (changed.containsKey(source) || removed.contains(source)) {
+          deleted.set(doc);
+        }
+      }
+      if (deleted.cardinality() < chunks.size()) {
+        next.add(new Segment(null, segment.index(), deleted.isEmpty() ? null : deleted, segment.vectors()));
+      }
+    }
+    for (Map.Entry<String, List<DocumentChunk>> file : changed.entrySet()) {
+      if (!file.getValue().isEmpty()) {
+        next.add(segment(file.getKey(), Bm25Index.build(file.getValue()), dense));
+      }
+    }
+
+    if (next.size() > MAX_SEGMENTS) {
+      next = List.of(segment(null, Bm25Index.build(new IndexSnapshot(version, next, null).chunks()), dense));
+    }
+    return new IndexSnapshot(version + 1, next, dense);
+  }
+
+  public long version() {
+    return version;
+  }
+
+  /** Chunks searchable in this version. */
+  public int size() {
+    return liveDocs;
+  }
+
+  int segmentCount() {
+    return segments.size();
+  }
+
+  /** True when at least one segment can be searched by vector similarity. */
+  public boolean hasVectors() {
+    return segments.stream().anyMatch(segment -> segment.vectors() != null);
+  }
+
+  /** The embedding of {@code query} for {@link #searchVectors} and {@link #searchHybrid}. */
+  public float[] embedQuery(String query) {
+    if (dense == null) {
+      throw new IllegalStateException("Dense retrieval is not enabled");
+    }
+    return dense.embedQuery(query);
+  }
+
+  /** The searchable chunks, in document id order. */
+  public List<DocumentChunk> chunks() {
+    List<DocumentChunk> chunks = new ArrayList<>(liveDocs);
+    for (Segment segment : segments) {
+      for (int doc = 0; doc < segment.index().size(); doc++) {
+        if (segment.deleted() == null || !segment.deleted().get(doc)) {
+          chunks.add(segment.index().chunk(doc));
+        }
+      }
+    }
+    return chunks;
+  }
+
+  public DocumentChunk chunk(int doc) {
+    int segment = segments.size() - 1;
+    while (docBases[segment] > doc) {
+      segment--;
+    }
+    return segments.get(segment).index().chunk(doc - docBases[segment]);
+  }
+
+  /**
+   * Ids of the {@code k} best matching chunks, best first. Document frequencies, the document
+   * count and the average length span all segments, so scores equal those of one index built
+   * from the same chunks.
+   */
+  public int[] search(String query, int k) {
+    return search(query, k, null);
+  }
+
+  /** As {@link #search(String, int)}, ranked on several threads when {@code sharded} finds it worth it. */
+  public int[] search(String query, int k, ShardedSearch sharded) {
+    if (sharded == null && segments.size() == 1 && segments.get(0).deleted() == null) {
+      return segments.get(0).index().search(query, k);
+    }
+    byte[][] queryTerms = Bm25Index.queryTerms(query);
+    if (queryTerms.length == 0 || liveDocs == 0 || k <= 0) {
+      return new int[0];
+    }
+
+    Bm25Index.Cursors[] matches = new Bm25Index.Cursors[segments.size()];
+    Map<String, Integer> documentFrequencies = new HashMap<>();
+    long postings = 0;
+    for (int s = 0; s < segments.size(); s++) {
+      Segment segment = segments.get(s);
+      matches[s] = segment.index().match(queryTerms);
+      postings += segment.index().postingCount(matches[s]);
+      for (int c = 0; c < matches[s].size; c++) {
+        int term = matches[s].term[c];
+        documentFrequencies.merge(segment.index().term(term),
+            segment.index().documentFrequency(term, segment.deleted()), Integer::sum);
+      }
+    }
+    float[][] idf = new float[segments.size()][];
+    for (int s = 0; s < segments.size(); s++) {
+      idf[s] = new float[matches[s].size];
+      for (int c = 0; c < matches[s].size; c++) {
+        idf[s][c] = Bm25Index.idf(documentFrequencies.get(segments.get(s).index().term(matches[s].term[c])), liveDocs);
+      }
+    }
+
+    ShardedSearch.Shard shard = (fromDoc, toDoc, top) -> {
+      for (int s = 0; s < segments.size(); s++) {
+        int from = Math.max(fromDoc, docBases[s]) - docBases[s];
+        int to = Math.min(toDoc, docBases[s + 1]) - docBases[s];
+        if (matches[s].size > 0 && from < to) {
+          Segment segment = segments.get(s);
+          segment.index().rank(matches[s], idf[s], queryTerms.length, averageDocLength, segment.deleted(),
+              docBases[s], from, to, top);
+        }
+      }
+    };
+    int documents = docBases[segments.size()];
+    int shards = sharded == null ? 1 : sharded.shardsFor(postings);
+    if (shards > 1) {
+      return sharded.rank(k, documents, shards, shard);
+    }
+    TopK top = new TopK(k);
+    shard.rank(0, documents, top);
+    return top.drain();
+  }
+
+  /**
+   * Ids of the {@code k} chunks most similar to the unit-length {@code vector}, best first,
+   * leaving out any below {@code minSimilarity}. Each segment's graph is searched with
+   * {@code ef} candidates and the results merged.
+   */
+  public int[] searchVectors(float[] vector, int k, int ef, float minSimilarity) {
+    TopK top = new TopK(Math.max(k, 0));
+    for (int s = 0; s < segments.size(); s++) {
+      Segment segment = segments.get(s);
+      if (segment.vectors() != null && segment.vectors().dimensions() == vector.length) {
+        segment.vectors().search(vector, k, ef, minSimilarity, segment.deleted(), docBases[s], top);
+      }
+    }
+    return top.drain();
+  }
+
+  /** Keyword and vector rankings combined with {@link RankFusion}; {@code sharded} may be null. */
+  public int[] searchHybrid(String query, float[] vector, int k, int ef, float minSimilarity, ShardedSearch sharded) {
+    int candidates = Math.max(k, FUSION_CANDIDATES);
+    return RankFusion.fuse(k, search(query, candidates, sharded), searchVectors(vector, candidates, ef, minSimilarity));
+  }
+}
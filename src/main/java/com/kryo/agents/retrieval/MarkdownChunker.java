@@ -0,0 +1,43 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Splits a markdown document into one chunk per heading section. */
+public final class MarkdownChunker {
+
+  private MarkdownChunker() {
+  }
+
+  public static List<DocumentChunk> parse(String source, InputStream in) throws IOException {
+    List<DocumentChunk> chunks = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      String currentHeader = "General";
+      StringBuilder currentContent = new StringBuilder();
+
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("#")) {
+          if (!currentContent.isEmpty()) {
+            chunks.add(new DocumentChunk(source, currentHeader, currentContent.toString().trim()));
+            currentContent.setLength(0);
+          }
+          currentHeader = line.replaceAll("#+", "").trim();
+        } else {
+          currentContent.append(line).append("\n");
+        }
+      }
+      if (!currentContent.isEmpty()) {
+        chunks.add(new DocumentChunk(source, currentHeader, currentContent.toString().trim()));
+      }
+    }
+    return chunks;
+  }
+}
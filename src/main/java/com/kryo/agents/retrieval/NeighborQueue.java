@@ -0,0 +1,87 @@
+package com.kryo.agents.retrieval;
+
+import java.util.Arrays;
+
+/** Binary heap of (similarity, node) pairs, with the most or the least similar on top. */
+final class NeighborQueue {
+
+  private final boolean mostSimilarFirst;
+  private float[] scores;
+  private int[] nodes;
+  private int size;
+
+  NeighborQueue(int capacity, boolean mostSimilarFirst) {
+    this.mostSimilarFirst = mostSimilarFirst;
+    this.scores = new float[Math.max(1, capacity)];
+    this.nodes = new int[scores.length];
+  }
+
+  void push(int node, float score) {
+    if (size == scores.length) {
+      scores = Arrays.copyOf(scores, size * 2);
+      nodes = Arrays.copyOf(nodes, size * 2);
+    }
+    scores[size] = score;
+    nodes[size] = node;
+    int index = size++;
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (!above(index, parent)) {
+        return;
+      }
+      swap(index, parent);
+      index = parent;
+    }
+  }
+
+  int pop() {
+    int top = nodes[0];
+    size--;
+    scores[0] = scores[size];
+    nodes[0] = nodes[size];
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        return top;
+      }
+      if (child + 1 < size && above(child + 1, child)) {
+        child++;
+      }
+      if (!above(child, index)) {
+        return top;
+      }
+      swap(index, child);
+      index = child;
+    }
+  }
+
+  int topNode() {
+    return nodes[0];
+  }
+
+  float topScore() {
+    return scores[0];
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  private boolean above(int a, int b) {
+    return mostSimilarFirst ? scores[a] > scores[b] : scores[a] < scores[b];
+  }
+
+  private void swap(int a, int b) {
+    float score = scores[a];
+    scores[a] = scores[b];
+    scores[b] = score;
+    int node = nodes[a];
+    nodes[a] = nodes[b];
+    nodes[b] = node;
+  }
+}
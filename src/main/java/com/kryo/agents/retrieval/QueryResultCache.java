@@ -0,0 +1,173 @@
+package com.kryo.agents.retrieval;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Bounded cache of ranked chunk ids per query, in front of an {@link IndexSnapshot}. Queries
+ * are keyed by their analyzed terms, so "API key not working?" and "api key not working" share
+ * an entry. Ids are only meaningful for the index version they were ranked on: the first
+ * lookup against a newer version drops every entry, and queries still running on an older
+ * version neither read nor fill the cache.
+ * <p>
+ * Eviction is least-frequently-used, oldest first among equals, so a burst of one-off
+ * questions cannot push out the ones asked all day. Counts are halved every
+ * {@code 10 * maxEntries} lookups, letting entries that were popular once age out.
+ */
+public final class QueryResultCache {
+
+  /** Keys longer than this are pasted logs or documents, not questions worth caching. */
+  static final int MAX_KEY_LENGTH = 512;
+  private static final int AGING_FACTOR = 10;
+
+  private final int maxEntries;
+  private final Map<String, Entry> entries = new HashMap<>();
+  private final Map<Integer, LinkedHashSet<String>> frequencies = new HashMap<>();
+  private int minFrequency;
+  private long version = -1;
+  private long lookupsSinceAging;
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter sizeEvictions;
+  private final Counter invalidations;
+
+  private static final class Entry {
+    final int[] ids;
+    int frequency = 1;
+
+    Entry(int[] ids) {
+      this.ids = ids;
+    }
+  }
+
+  public QueryResultCache(int maxEntries, MeterRegistry meterRegistry) {
+    this.maxEntries = maxEntries;
+    this.hits = Counter.builder("retrieval.cache.requests").tag("result", "hit").register(meterRegistry);
+    this.misses = Counter.builder("retrieval.cache.requests").tag("result", "miss").register(meterRegistry);
+    this.sizeEvictions = Counter.builder("retrieval.cache.evictions").tag("cause", "size")
+        .register(meterRegistry);
+    this.invalidations = Counter.builder("retrieval.cache.evictions").tag("cause", "invalidated")
+        .register(meterRegistry);
+    Gauge.builder("retrieval.cache.size", this, QueryResultCache::size).register(meterRegistry);
+    Gauge.builder("retrieval.cache.hit.ratio", this, QueryResultCache::hitRatio)
+        .description("Share of cacheable queries answered from the cache since startup")
+        .register(meterRegistry);
+  }
+
+  /** The cache key of {@code query}, or null when it should not be cached. */
+  public static String key(String query) {
+    StringBuilder key = new StringBuilder();
+    TextAnalyzer.analyze(query, term -> {
+      if (!key.isEmpty()) {
+        key.append(' ');
+      }
+      key.append(term);
+    });
+    return key.isEmpty() || key.length() > MAX_KEY_LENGTH ? null : key.toString();
+  }
+
+  /** Ranked ids cached for {@code key} on index {@code version}, or null. */
+  public synchronized int[] get(long version, String key) {
+    if (maxEntries <= 0) {
+      return null;
+    }
+    if (version < this.version) {
+      misses.increment();
+      return null;
+    }
+    moveTo(version);
+    if (++lookupsSinceAging >= (long) AGING_FACTOR * maxEntries) {
+      age();
+    }
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    touch(key, entry);
+    return entry.ids;
+  }
+
+  /** Caches {@code ids} unless they were ranked on an index version that has since been replaced. */
+  public synchronized void put(long version, String key, int[] ids) {
+    if (maxEntries <= 0 || version < this.version) {
+      return;
+    }
+    moveTo(version);
+    if (entries.containsKey(key)) {
+      return;
+    }
+    if (entries.size() >= maxEntries) {
+      Iterator<String> leastFrequent = frequencies.get(minFrequency).iterator();
+      String evicted = leastFrequent.next();
+      leastFrequent.remove();
+      if (!leastFrequent.hasNext()) {
+        frequencies.remove(minFrequency);
+      }
+      entries.remove(evicted);
+      sizeEvictions.increment();
+    }
+    entries.put(key, new Entry(ids));
+    frequencies.computeIfAbsent(1, f -> new LinkedHashSet<>()).add(key);
+    minFrequency = 1;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private double hitRatio() {
+    double lookups = hits.count() + misses.count();
+    return lookups == 0 ? 0 : hits.count() / lookups;
+  }
+
+  private void moveTo(long version) {
+    if (version == this.version) {
+      return;
+    }
+    if (!entries.isEmpty()) {
+      invalidations.increment(entries.size());
+      entries.clear();
+      frequencies.clear();
+    }
+    this.version = version;
+  }
+
+  private void touch(String key, Entry entry) {
+    LinkedHashSet<String> bucket = frequencies.get(entry.frequency);
+    bucket.remove(key);
+    if (bucket.isEmpty()) {
+      frequencies.remove(entry.frequency);
+      if (minFrequency == entry.frequency) {
+        minFrequency++;
+      }
+    }
+    entry.frequency++;
+    frequencies.computeIfAbsent(entry.frequency, f -> new LinkedHashSet<>()).add(key);
+  }
+
+  /** Halves every count, keeping the order within each new bucket by previous frequency. */
+  private void age() {
+    lookupsSinceAging = 0;
+    Map<Integer, LinkedHashSet<String>> halved = new HashMap<>();
+    minFrequency = Integer.MAX_VALUE;
+    frequencies.keySet().stream().sorted().forEach(frequency -> {
+      int next = Math.max(1, frequency / 2);
+      for (String key : frequencies.get(frequency)) {
+        entries.get(key).frequency = next;
+        halved.computeIfAbsent(next, f -> new LinkedHashSet<>()).add(key);
+      }
+      minFrequency = Math.min(minFrequency, next);
+    });
+    frequencies.clear();
+    frequencies.putAll(halved);
+  }
+}
@@ -0,0 +1,29 @@
+package com.kryo.agents.retrieval;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reciprocal rank fusion (Cormack, Clarke and Buettcher, 2009): a document scores
+ * {@code 1 / (K + rank)} in each ranking it appears in. Only ranks are used, so BM25 scores
+ * and cosine similarities need no common scale.
+ */
+final class RankFusion {
+
+  static final int K = 60;
+
+  private RankFusion() {
+  }
+
+  static int[] fuse(int k, int[]... rankings) {
+    Map<Integer, Float> scores = new HashMap<>();
+    for (int[] ranking : rankings) {
+      for (int rank = 0; rank < ranking.length; rank++) {
+        scores.merge(ranking[rank], 1.0f / (K + rank + 1), Float::sum);
+      }
+    }
+    TopK top = new TopK(k);
+    scores.forEach(top::offer);
+    return top.drain();
+  }
+}
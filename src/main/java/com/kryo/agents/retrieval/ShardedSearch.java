@@ -0,0 +1,80 @@
+package com.kryo.agents.retrieval;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ranks one keyword query on several threads by splitting the document ids into contiguous
+ * shards. Every shard walks only its own part of each postings list into its own
+ * {@link TopK}, and the heaps are merged, so results equal a single-threaded ranking.
+ * <p>
+ * The split adapts to the work a query brings: below {@code minPostingsPerShard} postings
+ * per shard the hand-off costs more than it saves, so small corpora and rare terms are ranked
+ * on the calling thread. The caller ranks the first shard itself while the pool takes the rest.
+ */
+public final class ShardedSearch implements AutoCloseable {
+
+  private final int shards;
+  private final long minPostingsPerShard;
+  private final ExecutorService executor;
+
+  /** Ranks the documents in {@code [fromDoc, toDoc)} into {@code top}. */
+  @FunctionalInterface
+  interface Shard {
+    void rank(int fromDoc, int toDoc, TopK top);
+  }
+
+  public ShardedSearch(int shards, long minPostingsPerShard) {
+    if (shards < 2) {
+      throw new IllegalArgumentException("A sharded search needs at least 2 shards: " + shards);
+    }
+    this.shards = shards;
+    this.minPostingsPerShard = Math.max(1, minPostingsPerShard);
+    this.executor = Executors.newFixedThreadPool(shards - 1,
+        Thread.ofPlatform().name("retrieval-shard-", 1).daemon().factory());
+  }
+
+  public int shards() {
+    return shards;
+  }
+
+  /** How many shards a query walking {@code postings} postings is split into; 1 to stay sequential. */
+  int shardsFor(long postings) {
+    return (int) Math.max(1, Math.min(shards, postings / minPostingsPerShard));
+  }
+
+  /** Best {@code k} document ids of {@code [0, documents)}, split over {@code count} shards. */
+  int[] rank(int k, int documents, int count, Shard shard) {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<TopK>[] others = new CompletableFuture[count - 1];
+    for (int i = 1; i < count; i++) {
+      int fromDoc = (int) ((long) documents * i / count);
+      int toDoc = (int) ((long) documents * (i + 1) / count);
+      others[i - 1] = CompletableFuture.supplyAsync(() -> {
+        TopK top = new TopK(k);
+        shard.rank(fromDoc, toDoc, top);
+        return top;
+      }, executor);
+    }
+    TopK top = new TopK(k);
+    shard.rank(0, (int) ((long) documents / count), top);
+    for (CompletableFuture<TopK> other : others) {
+      try {
+        top.offerAll(other.join());
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+    return top.drain();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,100 @@
+package com.kryo.agents.retrieval;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sorted index terms packed into one byte buffer with an offset table, so a dictionary of
+ * millions of terms costs two buffers instead of millions of {@code String}s and can be read
+ * straight from a mapped index file. Terms are ASCII (see {@link TextAnalyzer}), so byte
+ * order is string order.
+ */
+final class TermDictionary {
+
+  private final ByteBuffer bytes;
+  private final IntBuffer offsets;
+  private final int count;
+
+  TermDictionary(ByteBuffer bytes, IntBuffer offsets) {
+    this.bytes = bytes;
+    this.offsets = offsets;
+    this.count = offsets.limit() - 1;
+  }
+
+  static TermDictionary of(String[] sortedTerms) {
+    int[] offsets = new int[sortedTerms.length + 1];
+    for (int i = 0; i < sortedTerms.length; i++) {
+      offsets[i + 1] = offsets[i] + sortedTerms[i].length();
+    }
+    byte[] bytes = new byte[offsets[sortedTerms.length]];
+    for (int i = 0; i < sortedTerms.length; i++) {
+      byte[] term = sortedTerms[i].getBytes(StandardCharsets.US_ASCII);
+      System.arraycopy(term, 0, bytes, offsets[i], term.length);
+    }
+    return new TermDictionary(ByteBuffer.wrap(bytes), IntBuffer.wrap(offsets));
+  }
+
+  int count() {
+    return count;
+  }
+
+  ByteBuffer bytes() {
+    return bytes;
+  }
+
+  IntBuffer offsets() {
+    return offsets;
+  }
+
+  String term(int id) {
+    int start = offsets.get(id);
+    byte[] term = new byte[offsets.get(id + 1) - start];
+    bytes.get(start, term);
+    return new String(term, StandardCharsets.US_ASCII);
+  }
+
+  /** Same contract as {@link java.util.Arrays#binarySearch(Object[], Object)}. */
+  int find(byte[] term) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(mid, term);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  boolean startsWith(int id, byte[] prefix) {
+    int start = offsets.get(id);
+    if (offsets.get(id + 1) - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes.get(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int compare(int id, byte[] term) {
+    int start = offsets.get(id);
+    int length = offsets.get(id + 1) - start;
+    int common = Math.min(length, term.length);
+    for (int i = 0; i < common; i++) {
+      int diff = bytes.get(start + i) - term[i];
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return length - term.length;
+  }
+}
@@ -0,0 +1,71 @@
+package com.kryo.agents.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into lowercase ASCII alphanumeric terms and strips the {@code -ing},
+ * {@code -s} and {@code -ed} suffixes, in one pass over the characters. Documents and
+ * queries go through the same analysis so their terms line up in the index.
+ */
+public final class TextAnalyzer {
+
+  /** Query terms shorter than this are too common to be worth looking up. */
+  public static final int MIN_QUERY_TERM_LENGTH = 3;
+
+  private TextAnalyzer() {
+  }
+
+  public static List<String> terms(String text) {
+    List<String> terms = new ArrayList<>();
+    analyze(text, terms::add);
+    return terms;
+  }
+
+  public static void analyze(String text, Consumer<String> sink) {
+    if (text == null) {
+      return;
+    }
+    StringBuilder word = new StringBuilder(16);
+    for (int i = 0; i < text.length(); i++) {
+      char c = Character.toLowerCase(text.charAt(i));
+      if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+        word.append(c);
+      } else if (!word.isEmpty()) {
+        emit(word, sink);
+      }
+    }
+    if (!word.isEmpty()) {
+      emit(word, sink);
+    }
+  }
+
+  private static void emit(StringBuilder word, Consumer<String> sink) {
+    int length = word.length();
+    if (endsWith(word, "ing")) {
+      length -= 3;
+    } else if (word.charAt(length - 1) == 's' && !endsWith(word, "ss")) {
+      length -= 1;
+    } else if (endsWith(word, "ed")) {
+      length -= 2;
+    }
+    if (length > 0) {
+      sink.accept(word.substring(0, length));
+    }
+    word.setLength(0);
+  }
+
+  private static boolean endsWith(StringBuilder word, String suffix) {
+    int offset = word.length() - suffix.length();
+    if (offset < 0) {
+      return false;
+    }
+    for (int i = 0; i < suffix.length(); i++) {
+      if (word.charAt(offset + i) != suffix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
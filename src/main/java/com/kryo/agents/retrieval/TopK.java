@@ -0,0 +1,98 @@
+package com.kryo.agents.retrieval;
+
+/**
+ * Bounded min-heap keeping the {@code k} best scored documents, so ranking a query costs
+ * O(n log k) and O(k) memory rather than sorting every match. Equal scores rank the lower
+ * document id first, which keeps results in load order like a stable sort would.
+ */
+final class TopK {
+
+  private final float[] scores;
+  private final int[] docs;
+  private int size;
+
+  TopK(int k) {
+    this.scores = new float[k];
+    this.docs = new int[k];
+  }
+
+  void offer(int doc, float score) {
+    if (scores.length == 0) {
+      return;
+    }
+    if (size < scores.length) {
+      scores[size] = score;
+      docs[size] = doc;
+      siftUp(size++);
+    } else if (worse(scores[0], docs[0], score, doc)) {
+      scores[0] = score;
+      docs[0] = doc;
+      siftDown(0);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Offers every document kept by {@code other}, merging the best of both. */
+  void offerAll(TopK other) {
+    for (int i = 0; i < other.size; i++) {
+      offer(other.docs[i], other.scores[i]);
+    }
+  }
+
+  /** Empties the heap into document ids ordered best first. */
+  int[] drain() {
+    int[] ranked = new int[size];
+    while (size > 0) {
+      ranked[size - 1] = docs[0];
+      size--;
+      scores[0] = scores[size];
+      docs[0] = docs[size];
+      siftDown(0);
+    }
+    return ranked;
+  }
+
+  private void siftUp(int index) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (!worse(scores[index], docs[index], scores[parent], docs[parent])) {
+        return;
+      }
+      swap(index, parent);
+      index = parent;
+    }
+  }
+
+  private void siftDown(int index) {
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        return;
+      }
+      if (child + 1 < size && worse(scores[child + 1], docs[child + 1], scores[child], docs[child])) {
+        child++;
+      }
+      if (!worse(scores[child], docs[child], scores[index], docs[index])) {
+        return;
+      }
+      swap(index, child);
+      index = child;
+    }
+  }
+
+  private void swap(int a, int b) {
+    float score = scores[a];
+    scores[a] = scores[b];
+    scores[b] = score;
+    int doc = docs[a];
+    docs[a] = docs[b];
+    docs[b] = doc;
+  }
+
+  private static boolean worse(float score, int doc, float otherScore, int otherDoc) {
+    return score < otherScore || (score == otherScore && doc > otherDoc);
+  }
+}
@@ -0,0 +1,146 @@
+package com.kryo.agents.retrieval;
+
+/**
+ * Unit-length vectors addressed by document id, compared by dot product (cosine similarity).
+ * Vectors are packed into one array, either as floats or quantized to one signed byte per
+ * dimension with a per-vector scale, which is a quarter of the memory at a small loss in
+ * precision. Queries stay in full precision either way.
+ */
+abstract sealed class VectorStore {
+
+  final int dimensions;
+
+  private VectorStore(int dimensions) {
+    this.dimensions = dimensions;
+  }
+
+  static VectorStore of(float[][] vectors, boolean quantize) {
+    int dimensions = vectors.length == 0 ? 0 : vectors[0].length;
+    return quantize ? new Int8(vectors, dimensions) : new Floats(vectors, dimensions);
+  }
+
+  abstract int size();
+
+  /** Similarity of a full-precision query to vector {@code doc}. */
+  abstract float similarity(float[] query, int doc);
+
+  /** Similarity of two stored vectors. */
+  abstract float similarity(int a, int b);
+
+  /** Scales {@code vector} to unit length in place, leaving a zero vector as it is. */
+  static void normalize(float[] vector) {
+    double norm = 0;
+    for (float value : vector) {
+      norm += value * value;
+    }
+    if (norm > 0) {
+      float scale = (float) (1 / Math.sqrt(norm));
+      for (int i = 0; i < vector.length; i++) {
+        vector[i] *= scale;
+      }
+    }
+  }
+
+  static final class Floats extends VectorStore {
+
+    private final float[] values;
+
+    Floats(float[][] vectors, int dimensions) {
+      super(dimensions);
+      this.values = new float[vectors.length * dimensions];
+      for (int doc = 0; doc < vectors.length; doc++) {
+        System.arraycopy(vectors[doc], 0, values, doc * dimensions, dimensions);
+      }
+    }
+
+    @Override
+    int size() {
+      return dimensions == 0 ? 0 : values.length / dimensions;
+    }
+
+    @Override
+    float similarity(float[] query, int doc) {
+      int offset = doc * dimensions;
+      float sum0 = 0;
+      float sum1 = 0;
+      float sum2 = 0;
+      float sum3 = 0;
+      int i = 0;
+      for (; i + 3 < dimensions; i += 4) {
+        sum0 += query[i] * values[offset + i];
+        sum1 += query[i + 1] * values[offset + i + 1];
+        sum2 += query[i + 2] * values[offset + i + 2];
+        sum3 += query[i + 3] * values[offset + i + 3];
+      }
+      for (; i < dimensions; i++) {
+        sum0 += query[i] * values[offset + i];
+      }
+      return sum0 + sum1 + sum2 + sum3;
+    }
+
+    @Override
+    float similarity(int a, int b) {
+      int offsetA = a * dimensions;
+      int offsetB = b * dimensions;
+      float sum = 0;
+      for (int i = 0; i < dimensions; i++) {
+        sum += values[offsetA + i] * values[offsetB + i];
+      }
+      return sum;
+    }
+  }
+
+  static final class Int8 extends VectorStore {
+
+    private final byte[] values;
+    private final float[] scales;
+
+    Int8(float[][] vectors, int dimensions) {
+      super(dimensions);
+      this.values = new byte[vectors.length * dimensions];
+      this.scales = new float[vectors.length];
+      for (int doc = 0; doc < vectors.length; doc++) {
+        float max = 0;
+        for (float value : vectors[doc]) {
+          max = Math.max(max, Math.abs(value));
+        }
+        scales[doc] = max / 127;
+        for (int i = 0; i < dimensions; i++) {
+          values[doc * dimensions + i] = (byte) (max == 0 ? 0 : Math.round(vectors[doc][i] / scales[doc]));
+        }
+      }
+    }
+
+    @Override
+    int size() {
+      return scales.length;
+    }
+
+    @Override
+    float similarity(float[] query, int doc) {
+      int offset = doc * dimensions;
+      float sum0 = 0;
+      float sum1 = 0;
+      int i = 0;
+      for (; i + 1 < dimensions; i += 2) {
+        sum0 += query[i] * values[offset + i];
+        sum1 += query[i + 1] * values[offset + i + 1];
+      }
+      for (; i < dimensions; i++) {
+        sum0 += query[i] * values[offset + i];
+      }
+      return (sum0 + sum1) * scales[doc];
+    }
+
+    @Override
+    float similarity(int a, int b) {
+      int offsetA = a * dimensions;
+      int offsetB = b * dimensions;
+      int sum = 0;
+      for (int i = 0; i < dimensions; i++) {
+        sum += values[offsetA + i] * values[offsetB + i];
+      }
+      return sum * scales[a] * scales[b];
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.resilience.Deadline;
+import com.kryo.agents.resilience.UsageTally;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Collects classification requests for up to {@code linger} or {@code max-size} items and
+ * hands them to one batch call. If the batch answer cannot be mapped back onto the items
+ * (the batch call returns {@code null} or the wrong number of labels), each item falls
+ * back to its own call.
+ * <p>
+ * Calls run on {@code llmCallExecutor}, so each request's {@link UsageTally} is carried
+ * along: a single call is charged to its own turn, and the tokens of a batch call are split
+ * evenly across the turns in the batch.
+ */
+@Component
+public class ClassificationBatcher {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClassificationBatcher.class);
+
+  private final boolean enabled;
+  private final int maxBatchSize;
+  private final long lingerNanos;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService scheduler;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private List<Pending> batch = new ArrayList<>();
+
+  private final DistributionSummary batchSize;
+  private final Timer queueWait;
+  private final Timer batchLatency;
+  private final Counter fallbacks;
+
+  public ClassificationBatcher(
+      @Value("${azure.openai.classification.batch.enabled:false}") boolean enabled,
+      @Value("${azure.openai.classification.batch.max-size:16}") int maxBatchSize,
+      @Value("${azure.openai.classification.batch.linger:5ms}") Duration linger,
+      @Qualifier("llmCallExecutor") ExecutorService executor,
+      MeterRegistry meterRegistry) {
+    this.enabled = enabled && maxBatchSize > 1;
+    this.maxBatchSize = maxBatchSize;
+    this.lingerNanos = linger.toNanos();
+    this.executor = executor;
+    this.scheduler = this.enabled
+        ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("classification-batcher").daemon().factory())
+        : null;
+
+    this.batchSize = DistributionSummary.builder("azure.openai.classification.batch.size")
+        .description("Classification requests sent per upstream call")
+        .register(meterRegistry);
+    this.queueWait = Timer.builder("azure.openai.classification.batch.wait")
+        .description("Time a classification request waited for its batch to be sent")
+        .register(meterRegistry);
+    this.batchLatency = Timer.builder("azure.openai.classification.batch.latency")
+        .description("Time from enqueue until the label was available")
+        .register(meterRegistry);
+    this.fallbacks = Counter.builder("azure.openai.classification.batch.fallbacks")
+        .description("Batches whose answer could not be parsed and were classified item by item")
+        .register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public CompletableFuture<String> submit(List<ChatMessage> history,
+      Function<List<List<ChatMessage>>, List<String>> batchCall,
+      Function<List<ChatMessage>, String> singleCall) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(singleCall.apply(history));
+    }
+    Pending pending = new Pending(history, System.nanoTime(), new CompletableFuture<>(),
+        Deadline.propagate(UsageTally.propagate(() -> singleCall.apply(history))), UsageTally.current());
+    List<Pending> full = null;
+    boolean first;
+
+    lock.lock();
+    try {
+      batch.add(pending);
+      first = batch.size() == 1;
+      if (batch.size() >= maxBatchSize) {
+        full = batch;
+        batch = new ArrayList<>();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (full != null) {
+      dispatch(full, batchCall);
+    } else if (first) {
+      scheduler.schedule(() -> flush(pending, batchCall), lingerNanos, TimeUnit.NANOSECONDS);
+    }
+    return pending.result();
+  }
+
+  private void flush(Pending opener, Function<List<List<ChatMessage>>, List<String>> batchCall) {
+    List<Pending> ready = null;
+    lock.lock();
+    try {
+      if (!batch.isEmpty() && batch.get(0) == opener) {
+        ready = batch;
+        batch = new ArrayList<>();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (ready != null) {
+      dispatch(ready, batchCall);
+    }
+  }
+
+  private void dispatch(List<Pending> ready, Function<List<List<ChatMessage>>, List<String>> batchCall) {
+    long now = System.nanoTime();
+    for (Pending pending : ready) {
+      queueWait.record(now - pending.enqueuedNanos(), TimeUnit.NANOSECONDS);
+    }
+    batchSize.record(ready.size());
+
+    executor.execute(() -> {
+      if (ready.size() == 1) {
+        complete(ready.get(0));
+        return;
+      }
+
+      List<String> labels;
+      try (UsageTally usage = UsageTally.open()) {
+        try {
+          labels = batchCall.apply(ready.stream().map(Pending::history).toList());
+        } finally {
+          charge(ready, usage.tokens());
+        }
+      } catch (RuntimeException e) {
+        ready.forEach(pending -> pending.result().completeExceptionally(e));
+        return;
+      }
+
+      if (labels == null || labels.size() != ready.size()) {
+        fallbacks.increment();
+        logger.warn("Batch classification answer unusable for {} items, classifying individually", ready.size());
+        for (Pending pending : ready) {
+          executor.execute(() -> complete(pending));
+        }
+        return;
+      }
+      for (int i = 0; i < ready.size(); i++) {
+        Pending pending = ready.get(i);
+        batchLatency.record(System.nanoTime() - pending.enqueuedNanos(), TimeUnit.NANOSECONDS);
+        pending.result().complete(labels.get(i));
+      }
+    });
+  }
+
+  private void complete(Pending pending) {
+    try {
+      String label = pending.single().get();
+      batchLatency.record(System.nanoTime() - pending.enqueuedNanos(), TimeUnit.NANOSECONDS);
+      pending.result().complete(label);
+    } catch (RuntimeException e) {
+      pending.result().completeExceptionally(e);
+    }
+  }
+
+  /** Splits the tokens of one batch call across its turns, the remainder going to the first. */
+  private static void charge(List<Pending> ready, long tokens) {
+    long share = tokens / ready.size();
+    long remainder = tokens % ready.size();
+    for (Pending pending : ready) {
+      if (pending.tally() != null) {
+        pending.tally().add(share + remainder);
+      }
+      remainder = 0;
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private record Pending(List<ChatMessage> history, long enqueuedNanos, CompletableFuture<String> result,
+      Supplier<String> single, UsageTally tally) {
+  }
+}
@@ -0,0 +1,159 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.openai.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills a per-call-type token budget: the fixed prefix (system prompt and retrieved
+ * context) first, then history newest-first until the budget runs out. The latest
+ * message is always kept, truncated if necessary, and whatever the prompt leaves of the
+ * budget sizes {@code max_tokens}.
+ */
+@Component
+public class ContextAssembler {
+
+  private static final String PREFIX = "azure.openai.context.";
+  private static final int MIN_LATEST_MESSAGE_TOKENS = 64;
+
+  private final TokenEstimator tokenEstimator;
+  private final Map<CallType, Budget> budgets = new EnumMap<>(CallType.class);
+  private final Map<CallType, DistributionSummary> untrimmedTokens = new EnumMap<>(CallType.class);
+  private final Map<CallType, DistributionSummary> trimmedTokens = new EnumMap<>(CallType.class);
+  private final Counter truncatedMessages;
+  private final Counter droppedMessages;
+
+  public ContextAssembler(Environment environment, TokenEstimator tokenEstimator, MeterRegistry meterRegistry) {
+    this.tokenEstimator = tokenEstimator;
+
+    budgets.put(CallType.CLASSIFICATION, loadBudget(environment, CallType.CLASSIFICATION, 1500, 10, 10, 300));
+    budgets.put(CallType.AGENT_ANSWER, loadBudget(environment, CallType.AGENT_ANSWER, 8000, 800, 256, 1500));
+    budgets.put(CallType.TOOL_STEP, loadBudget(environment, CallType.TOOL_STEP, 8000, 800, 256, 1500));
+
+    for (CallType callType : CallType.values()) {
+      untrimmedTokens.put(callType, promptTokens(meterRegistry, callType, "untrimmed"));
+      trimmedTokens.put(callType, promptTokens(meterRegistry, callType, "trimmed"));
+    }
+    this.truncatedMessages = Counter.builder("azure.openai.prompt.messages").tag("outcome", "truncated")
+        .register(meterRegistry);
+    this.droppedMessages = Counter.builder("azure.openai.prompt.messages").tag("outcome", "dropped")
+        .register(meterRegistry);
+  }
+
+  private static Budget loadBudget(Environment environment, CallType callType, int totalTokens,
+      int maxCompletionTokens, int minCompletionTokens, int maxMessageTokens) {
+    String prefix = PREFIX + callType.key() + ".";
+    return new Budget(
+        environment.getProperty(prefix + "total-tokens", Integer.class, totalTokens),
+        environment.getProperty(prefix + "max-completion-tokens", Integer.class, maxCompletionTokens),
+        environment.getProperty(prefix + "min-completion-tokens", Integer.class, minCompletionTokens),
+        environment.getProperty(prefix + "max-message-tokens", Integer.class, maxMessageTokens));
+  }
+
+  private static DistributionSummary promptTokens(MeterRegistry meterRegistry, CallType callType, String stage) {
+    return DistributionSummary.builder("azure.openai.prompt.tokens")
+        .baseUnit("tokens")
+        .tag("call_type", callType.key())
+        .tag("stage", stage)
+        .register(meterRegistry);
+  }
+
+  public Budget budget(CallType callType) {
+    return budgets.get(callType);
+  }
+
+  public List<Message> assemble(CallType callType, List<Message> prefix, List<ChatMessage> history) {
+    return assemble(callType, prefix, history, List.of());
+  }
+
+  /**
+   * Lays a prompt out for provider-side prefix caching: the static {@code prefix} comes
+   * first and must be byte-identical across calls, followed by the history, with the
+   * per-call {@code context} placed just before the latest message so it never shifts
+   * the shared part of the prompt.
+   */
+  public List<Message> assemble(CallType callType, List<Message> prefix, List<ChatMessage> history,
+      List<Message> context) {
+    Budget budget = budgets.get(callType);
+    int promptBudget = budget.promptTokens();
+    int used = tokenEstimator.count(prefix);
+    for (Message message : context) {
+      used += tokenEstimator.count(message);
+    }
+    int untrimmed = used;
+    boolean full = false;
+
+    List<Message> selected = new ArrayList<>();
+    for (int i = history.size() - 1; i >= 0; i--) {
+      ChatMessage chatMessage = history.get(i);
+      String role = chatMessage.role().name().toLowerCase();
+      String content = chatMessage.content();
+      int overhead = tokenEstimator.count(new Message(role, null));
+      int contentTokens = tokenEstimator.count(content);
+      untrimmed += overhead + contentTokens;
+      if (full) {
+        continue;
+      }
+
+      boolean latest = i == history.size() - 1;
+      int cap = latest
+          ? Math.min(budget.maxMessageTokens(), Math.max(promptBudget - used - overhead, MIN_LATEST_MESSAGE_TOKENS))
+          : budget.maxMessageTokens();
+      if (contentTokens > cap) {
+        content = tokenEstimator.truncate(content, cap);
+        contentTokens = tokenEstimator.count(content);
+        truncatedMessages.increment();
+      }
+
+      if (!latest && used + overhead + contentTokens > promptBudget) {
+        droppedMessages.increment(i + 1);
+        full = true;
+        continue;
+      }
+      selected.add(new Message(role, content));
+      used += overhead + contentTokens;
+    }
+    Collections.reverse(selected);
+
+    untrimmedTokens.get(callType).record(untrimmed);
+    trimmedTokens.get(callType).record(used);
+
+    List<Message> messages = new ArrayList<>(prefix.size() + context.size() + selected.size());
+    messages.addAll(prefix);
+    if (selected.isEmpty()) {
+      messages.addAll(context);
+    } else {
+      messages.addAll(selected.subList(0, selected.size() - 1));
+      messages.addAll(context);
+      messages.add(selected.get(selected.size() - 1));
+    }
+    return messages;
+  }
+
+  public int countTokens(List<Message> messages) {
+    return tokenEstimator.count(messages);
+  }
+
+  public int maxTokens(CallType callType, List<Message> prompt) {
+    Budget budget = budgets.get(callType);
+    int remaining = budget.totalTokens() - tokenEstimator.count(prompt);
+    return Math.max(budget.minCompletionTokens(), Math.min(budget.maxCompletionTokens(), remaining));
+  }
+
+  public record Budget(int totalTokens, int maxCompletionTokens, int minCompletionTokens, int maxMessageTokens) {
+    public int promptTokens() {
+      return totalTokens - minCompletionTokens;
+    }
+  }
+}
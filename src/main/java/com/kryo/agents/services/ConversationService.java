@@ -3,6 +3,7 @@ package com.kryo.agents.services;
 import com.kryo.agents.config.AppConstants;
 import com.kryo.agents.models.ChatMessage;
 import com.kryo.agents.models.ConversationSummary;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.format.DateTimeFormatter;
@@ -33,6 +34,15 @@ public class ConversationService {
   private final Map<String, String> titles = Collections.synchronizedMap(new LinkedHashMap<>());
   private final Map<String, String> conversationOwners = new java.util.concurrent.ConcurrentHashMap<>();
 
+  private final TokenEstimator tokenEstimator;
+  private final int historyTokens;
+
+  public ConversationService(TokenEstimator tokenEstimator,
+      @Value("${azure.openai.context.history-tokens:8000}") int historyTokens) {
+    this.tokenEstimator = tokenEstimator;
+    this.historyTokens = historyTokens;
+  }
+
   public List<ChatMessage> getHistory(String conversationId) {
     synchronized (conversations) {
       return conversations.computeIfAbsent(conversationId, id -> new CopyOnWriteArrayList<>());
@@ -61,13 +71,18 @@ public class ConversationService {
     }
   }
 
-  public List<ChatMessage> getRecentHistory(String conversationId, int maxMessages) {
-    List<ChatMessage> fullHistory = getHistory(conversationId);
-    int size = fullHistory.size();
-    if (size <= maxMessages) {
-      return List.copyOf(fullHistory);
+  public List<ChatMessage> getRecentHistory(String conversationId) {
+    List<ChatMessage> fullHistory = List.copyOf(getHistory(conversationId));
+    int start = fullHistory.size();
+    int tokens = 0;
+    while (start > 0) {
+      tokens += tokenEstimator.count(fullHistory.get(start - 1).content());
+      if (tokens > historyTokens && start < fullHistory.size()) {
+        break;
+      }
+      start--;
     }
-    return List.copyOf(fullHistory.subList(size - maxMessages, size));
+    return fullHistory.subList(start, fullHistory.size());
   }
 
   public List<ConversationSummary> getSummaries(String userId) {
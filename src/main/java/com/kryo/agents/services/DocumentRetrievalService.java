@@ -1,121 +1,396 @@
 package com.kryo.agents.services;
 
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.DeadlineExceededException;
 import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.retrieval.Bm25Index;
+import com.kryo.agents.retrieval.DenseIndexer;
+import com.kryo.agents.retrieval.Embedder;
+import com.kryo.agents.retrieval.EmbeddingCache;
+import com.kryo.agents.retrieval.IndexFile;
+import com.kryo.agents.retrieval.IndexSnapshot;
+import com.kryo.agents.retrieval.MarkdownChunker;
+import com.kryo.agents.retrieval.QueryResultCache;
+import com.kryo.agents.retrieval.ShardedSearch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class DocumentRetrievalService {
 
-  private final List<DocumentChunk> documentStore = new ArrayList<>();
+  private static final Logger logger = LoggerFactory.getLogger(DocumentRetrievalService.class);
+  private static final String DOCS_PATTERN = "classpath:technical-docs/*.md";
+  private static final int MAX_RESULTS = 5;
+
+  private volatile IndexSnapshot snapshot = IndexSnapshot.EMPTY;
+  private final Embedder embedder;
+  private final Timer searchTimer;
+  private final Counter denseFallbacks;
+  private final Timer reloadTimer;
+  private final MeterRegistry meterRegistry;
+
+  /** Size and modification time of each doc file in the current snapshot; guarded by {@code this}. */
+  private Map<String, FileStamp> stamps = Map.of();
+  private DenseIndexer dense;
+  private QueryResultCache resultCache;
+  private ShardedSearch sharded;
+  private WatchService watchService;
+  private Thread watcher;
+
+  @Value("${retrieval.index-file:}")
+  private String indexFile;
+
+  @Value("${retrieval.docs-dir:}")
+  private String docsDir;
+
+  @Value("${retrieval.reload-debounce:500ms}")
+  private Duration reloadDebounce = Duration.ofMillis(500);
+
+  /** Threads one keyword query may be ranked on; 0 means one per available processor. */
+  @Value("${retrieval.search.shards:0}")
+  private int shards;
+
+  @Value("${retrieval.search.min-postings-per-shard:20000}")
+  private long minPostingsPerShard = 20_000;
+
+  @Value("${retrieval.cache.max-entries:1000}")
+  private int cacheMaxEntries = 1000;
+
+  @Value("${retrieval.dense.enabled:false}")
+  private boolean denseEnabled;
+
+  @Value("${retrieval.dense.fusion:true}")
+  private boolean fusion = true;
+
+  @Value("${retrieval.dense.quantize:false}")
+  private boolean quantize;
+
+  @Value("${retrieval.dense.cache-dir:}")
+  private String embeddingCacheDir;
+
+  @Value("${retrieval.dense.ef-search:64}")
+  private int efSearch = 64;
+
+  @Value("${retrieval.dense.min-similarity:0.2}")
+  private float minSimilarity = 0.2f;
+
+  private record FileStamp(long size, long lastModified) {
+  }
+
+  public DocumentRetrievalService(MeterRegistry meterRegistry, Embedder embedder) {
+    this.meterRegistry = meterRegistry;
+    this.embedder = embedder;
+    this.searchTimer = Timer.builder("retrieval.search")
+        .description("Ranking the document index for one query")
+        .register(meterRegistry);
+    this.reloadTimer = Timer.builder("retrieval.index.reload")
+        .description("Re-indexing changed doc files and publishing a new index version")
+        .register(meterRegistry);
+    this.denseFallbacks = Counter.builder("retrieval.dense.fallback")
+        .description("Queries ranked by keywords only because the query could not be embedded")
+        .register(meterRegistry);
+    Gauge.builder("retrieval.index.version", this, service -> service.snapshot.version())
+        .description("Version of the published retrieval index, incremented by every reload")
+        .register(meterRegistry);
+    Gauge.builder("retrieval.index.chunks", this, service -> service.snapshot.size())
+        .description("Document chunks searchable in the published index version")
+        .register(meterRegistry);
+  }
 
   @PostConstruct
   public void init() {
+    resultCache = new QueryResultCache(cacheMaxEntries, meterRegistry);
+    int shardCount = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    if (shardCount > 1) {
+      sharded = new ShardedSearch(shardCount, minPostingsPerShard);
+    }
+    if (denseEnabled) {
+      dense = new DenseIndexer(embedder, openEmbeddingCache(), quantize);
+    }
     loadDocuments();
+    if (hasDocsDir()) {
+      startWatching(Path.of(docsDir));
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (sharded != null) {
+      sharded.close();
+    }
+    if (watcher != null) {
+      watcher.interrupt();
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        logger.debug("Closing the docs watcher failed: {}", e.getMessage());
+      }
+    }
   }
 
-  private void loadDocuments() {
-    PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+  /**
+   * Maps the persisted index when it was built from the current docs; otherwise parses the
+   * markdown, builds the index and, if an index file is configured, writes it for the next boot.
+   */
+  private synchronized void loadDocuments() {
+    long startNanos = System.nanoTime();
     try {
-      Resource[] resources = resolver.getResources("classpath:technical-docs/*.md");
+      Resource[] resources = docs();
+      Path path = indexFile == null || indexFile.isBlank() ? null : Path.of(indexFile);
+      long fingerprint = fingerprint(resources);
+      Map<String, FileStamp> loadedStamps = stamps(resources);
+
+      Optional<Bm25Index> mapped = path == null ? Optional.empty() : openIndex(path, fingerprint);
+      if (mapped.isPresent()) {
+        publish(IndexSnapshot.of(mapped.get(), dense), loadedStamps);
+        recordLoad("mapped", startNanos);
+        return;
+      }
+
+      List<DocumentChunk> chunks = new ArrayList<>();
       for (Resource resource : resources) {
-        parseAndStore(resource);
+        chunks.addAll(parse(resource));
       }
-      System.out.println("Loaded " + documentStore.size() + " document chunks.");
+      Bm25Index built = Bm25Index.build(chunks);
+      if (path != null) {
+        try {
+          IndexFile.write(built, fingerprint, path);
+        } catch (IOException e) {
+          logger.warn("Could not persist retrieval index to {}: {}", path, e.getMessage());
+        }
+      }
+      publish(IndexSnapshot.of(built, dense), loadedStamps);
+      recordLoad("parsed", startNanos);
     } catch (IOException e) {
-      System.err.println("Failed to load technical documents: " + e.getMessage());
+      logger.error("Failed to load technical documents", e);
     }
   }
 
-  private void parseAndStore(Resource resource) throws IOException {
-    String filename = resource.getFilename();
-    try (BufferedReader reader = new BufferedReader(
-        new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-      String line;
-      String currentHeader = "General";
-      StringBuilder currentContent = new StringBuilder();
-
-      while ((line = reader.readLine()) != null) {
-        if (line.startsWith("#")) {
-          if (!currentContent.isEmpty()) {
-            documentStore.add(new DocumentChunk(filename, currentHeader, currentContent.toString().trim()));
-            currentContent.setLength(0);
-          }
-          currentHeader = line.replaceAll("#+", "").trim();
-        } else {
-          currentContent.append(line).append("\n");
+  /**
+   * Re-parses only the doc files whose size or modification time changed since the current
+   * snapshot, indexes them and publishes the next version. Queries keep using the previous
+   * snapshot until then. The persisted index file is not rewritten; the changed fingerprint
+   * makes the next boot rebuild it.
+   */
+  public synchronized void reload() {
+    long startNanos = System.nanoTime();
+    try {
+      Resource[] resources = docs();
+      Map<String, FileStamp> current = stamps(resources);
+      Map<String, List<DocumentChunk>> changed = new LinkedHashMap<>();
+      for (Resource resource : resources) {
+        String name = resource.getFilename();
+        if (!current.get(name).equals(stamps.get(name))) {
+          changed.put(name, parse(resource));
         }
       }
-      if (!currentContent.isEmpty()) {
-        documentStore.add(new DocumentChunk(filename, currentHeader, currentContent.toString().trim()));
+      Set<String> removed = new HashSet<>(stamps.keySet());
+      removed.removeAll(current.keySet());
+      if (changed.isEmpty() && removed.isEmpty()) {
+        return;
       }
+
+      IndexSnapshot next = snapshot.update(changed, removed);
+      publish(next, current);
+      long elapsedNanos = System.nanoTime() - startNanos;
+      reloadTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+      logger.info("Published retrieval index version {} with {} document chunks from {} files"
+              + " ({} changed, {} removed) in {} ms", next.version(), next.size(), current.size(),
+          changed.size(), removed.size(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Reloading technical documents failed, keeping index version {}: {}", snapshot.version(),
+          e.getMessage());
     }
   }
 
-  public List<DocumentChunk> retrieveDocuments(String query) {
-    if (query == null || query.isBlank()) {
-      return List.of();
+  private EmbeddingCache openEmbeddingCache() {
+    if (embeddingCacheDir == null || embeddingCacheDir.isBlank()) {
+      return EmbeddingCache.inMemory();
     }
+    try {
+      return EmbeddingCache.open(Path.of(embeddingCacheDir), embedder.model());
+    } catch (IOException e) {
+      logger.warn("Cannot open the embedding cache in {}, embeddings are kept in memory only: {}",
+          embeddingCacheDir, e.getMessage());
+      return EmbeddingCache.inMemory();
+    }
+  }
 
-    String processedQuery = normalizeAndStem(query);
+  private void publish(IndexSnapshot next, Map<String, FileStamp> nextStamps) {
+    stamps = nextStamps;
+    snapshot = next;
+  }
 
-    return documentStore.stream()
-        .map(chunk -> new ScoredChunk(chunk, calculateScore(chunk, processedQuery)))
-        .filter(sc -> sc.score >= 2)
-        .sorted(Comparator.comparingInt(ScoredChunk::score).reversed())
-        .limit(5)
-        .map(ScoredChunk::chunk)
-        .collect(Collectors.toList());
+  private boolean hasDocsDir() {
+    return docsDir != null && !docsDir.isBlank();
   }
 
-  private int calculateScore(DocumentChunk chunk, String processedQuery) {
-    int score = 0;
-    String content = normalizeAndStem(chunk.header() + " " + chunk.content());
-    String[] queryTokens = processedQuery.split("\\s+");
+  private Resource[] docs() throws IOException {
+    if (!hasDocsDir()) {
+      return new PathMatchingResourcePatternResolver().getResources(DOCS_PATTERN);
+    }
+    String directory = Path.of(docsDir).toAbsolutePath().toUri().toString();
+    return new PathMatchingResourcePatternResolver().getResources(
+        (directory.endsWith("/") ? directory : directory + "/") + "*.md");
+  }
 
-    for (String token : queryTokens) {
-      if (token.length() < 3)
-        continue;
+  private static List<DocumentChunk> parse(Resource resource) throws IOException {
+    try (InputStream in = resource.getInputStream()) {
+      return MarkdownChunker.parse(resource.getFilename(), in);
+    }
+  }
+
+  private static Map<String, FileStamp> stamps(Resource[] resources) throws IOException {
+    Map<String, FileStamp> stamps = new HashMap<>();
+    for (Resource resource : resources) {
+      stamps.put(resource.getFilename(), new FileStamp(resource.contentLength(), resource.lastModified()));
+    }
+    return stamps;
+  }
+
+  /**
+   * Watches the docs directory on a daemon thread. Editors and deploys touch a file several
+   * times in a row, so a reload waits until no event has arrived for {@code reloadDebounce}.
+   */
+  private void startWatching(Path directory) {
+    try {
+      watchService = directory.getFileSystem().newWatchService();
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+          StandardWatchEventKinds.ENTRY_DELETE);
+    } catch (IOException e) {
+      logger.warn("Cannot watch {} for doc changes, hot reload is disabled: {}", directory, e.getMessage());
+      return;
+    }
+    watcher = Thread.ofPlatform().name("docs-watcher").daemon().start(() -> {
+      try {
+        while (true) {
+          WatchKey key = watchService.take();
+          do {
+            key.pollEvents();
+            if (!key.reset()) {
+              logger.warn("Docs directory {} is no longer accessible, hot reload stopped", directory);
+              return;
+            }
+          } while ((key = watchService.poll(reloadDebounce.toMillis(), TimeUnit.MILLISECONDS)) != null);
+          reload();
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        logger.debug("Docs watcher stopped");
+      }
+    });
+  }
 
-      if (content.contains(" " + token + " ")) {
-        score += 2;
-      } else if (content.contains(token)) {
-        score += 1;
+  private Optional<Bm25Index> openIndex(Path path, long fingerprint) {
+    try {
+      Optional<Bm25Index> mapped = IndexFile.open(path, fingerprint);
+      if (mapped.isEmpty()) {
+        logger.info("Retrieval index {} is missing or stale, rebuilding from source", path);
       }
+      return mapped;
+    } catch (IOException e) {
+      logger.warn("Ignoring unreadable retrieval index {}: {}", path, e.getMessage());
+      return Optional.empty();
     }
-    return score;
   }
 
-  private String normalizeAndStem(String text) {
-    if (text == null)
-      return "";
-    String normalized = text.toLowerCase().replaceAll("[^a-z0-9\\s]", " ");
+  private void recordLoad(String source, long startNanos) {
+    long elapsedNanos = System.nanoTime() - startNanos;
+    Timer.builder("retrieval.index.load")
+        .description("Loading the retrieval index at startup, from the mapped file or by parsing the docs")
+        .tag("source", source)
+        .register(meterRegistry)
+        .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    logger.info("Loaded {} document chunks ({}) in {} ms", snapshot.size(), source,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  /** Changes whenever a doc is added, removed, resized or touched. */
+  private static long fingerprint(Resource[] resources) throws IOException {
+    long hash = 1125899906842597L;
+    for (Resource resource : resources) {
+      hash = 31 * hash + String.valueOf(resource.getFilename()).hashCode();
+      hash = 31 * hash + resource.contentLength();
+      hash = 31 * hash + resource.lastModified();
+    }
+    return hash;
+  }
 
-    StringBuilder stemmed = new StringBuilder();
-    for (String word : normalized.split("\\s+")) {
-      if (word.endsWith("ing"))
-        word = word.substring(0, word.length() - 3);
-      else if (word.endsWith("s") && !word.endsWith("ss"))
-        word = word.substring(0, word.length() - 1);
-      else if (word.endsWith("ed"))
-        word = word.substring(0, word.length() - 2);
+  synchronized void addChunks(Collection<DocumentChunk> chunks) {
+    List<DocumentChunk> all = snapshot.chunks();
+    all.addAll(chunks);
+    snapshot = snapshot.replace(Bm25Index.build(all));
+  }
 
-      stemmed.append(" ").append(word).append(" ");
+  public List<DocumentChunk> retrieveDocuments(String query) {
+    if (query == null || query.isBlank()) {
+      return List.of();
     }
-    return stemmed.toString();
+
+    return searchTimer.record(() -> {
+      IndexSnapshot current = snapshot;
+      String key = resultCache == null ? null : QueryResultCache.key(query);
+      int[] ranked = key == null ? null : resultCache.get(current.version(), key);
+      if (ranked == null) {
+        float[] vector = current.hasVectors() ? embedQuery(current, query) : null;
+        if (vector == null) {
+          ranked = current.search(query, MAX_RESULTS, sharded);
+        } else if (fusion) {
+          ranked = current.searchHybrid(query, vector, MAX_RESULTS, efSearch, minSimilarity, sharded);
+        } else {
+          ranked = current.searchVectors(vector, MAX_RESULTS, efSearch, minSimilarity);
+        }
+        // keyword-only results after a failed embedding are not cached, so they are not served once it recovers
+        if (key != null && (vector != null || !current.hasVectors())) {
+          resultCache.put(current.version(), key, ranked);
+        }
+      }
+      List<DocumentChunk> results = new ArrayList<>(ranked.length);
+      for (int doc : ranked) {
+        results.add(current.chunk(doc));
+      }
+      return results;
+    });
   }
 
-  private record ScoredChunk(DocumentChunk chunk, int score) {
+  /** The query embedding, or null to rank by keywords alone when the embeddings call fails. */
+  private float[] embedQuery(IndexSnapshot current, String query) {
+    try {
+      return current.embedQuery(query);
+    } catch (DeadlineExceededException e) {
+      throw e;
+    } catch (AiCallException e) {
+      denseFallbacks.increment();
+      logger.debug("Query embedding failed, ranking by keywords only: {}", e.getMessage());
+      return null;
+    }
   }
 }
@@ -0,0 +1,257 @@
+package com.kryo.agents.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * In-process intent classifier that answers confidently-routable messages without an LLM
+ * round trip. Keyword rules handle the obvious cases; a multinomial naive Bayes model,
+ * trained on the labels the LLM returns, covers the rest once it has seen enough traffic.
+ */
+@Service
+public class LocalIntentClassifier {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalIntentClassifier.class);
+
+  static final List<String> LABELS = List.of("technical", "billing", "router");
+  private static final int MAX_VOCABULARY = 50_000;
+
+  private static final List<Rule> RULES = List.of(
+      new Rule(Pattern.compile("\\bcustomer-\\d+\\b"), "billing", 0.95),
+      new Rule(Pattern.compile(
+          "\\b(refunds?|invoices?|billing|billed|subscriptions?|plans?|charged?|payments?|upgrade|downgrade|pricing|price)\\b"),
+          "billing", 0.85),
+      // Any three-digit number starting with 4 or 5 (prices, order numbers) matches, so alone it
+      // is a hint for degraded routing, not enough to skip the LLM.
+      new Rule(Pattern.compile("\\b[45]\\d\\d\\b"), "technical", 0.6),
+      new Rule(Pattern.compile(
+          "\\b(api|endpoints?|errors?|bugs?|setup|install|configure|configuration|authenticat\\w*|timeouts?|sdk|docs|documentation)\\b"),
+          "technical", 0.85),
+      new Rule(Pattern.compile("\\bhow (do|to|can)\\b"), "technical", 0.8),
+      new Rule(Pattern.compile("^(hi|hello|hey|thanks|thank you|good (morning|afternoon|evening))[!. ]*$"),
+          "router", 0.9));
+
+  private final boolean enabled;
+  private final double confidenceThreshold;
+  private final double shadowRate;
+  private final int minTrainingExamples;
+
+  private final Map<String, AtomicLongArray> tokenCounts = new ConcurrentHashMap<>();
+  private final AtomicLongArray labelTokenTotals = new AtomicLongArray(LABELS.size());
+  private final AtomicLongArray labelDocCounts = new AtomicLongArray(LABELS.size());
+  private final AtomicLong trainingExamples = new AtomicLong();
+
+  private final AtomicLong shadowAgreements = new AtomicLong();
+  private final AtomicLong shadowComparisons = new AtomicLong();
+  private final AtomicLong llmLatencyEwmaMicros = new AtomicLong();
+
+  private final Counter localDecisions;
+  private final Counter llmDecisions;
+  private final Counter latencySavedMs;
+  private final Timer localLatency;
+
+  public LocalIntentClassifier(
+      @Value("${routing.local-classifier.enabled:true}") boolean enabled,
+      @Value("${routing.local-classifier.confidence-threshold:0.8}") double confidenceThreshold,
+      @Value("${routing.local-classifier.shadow-rate:0.05}") double shadowRate,
+      @Value("${routing.local-classifier.min-training-examples:50}") int minTrainingExamples,
+      MeterRegistry meterRegistry) {
+    this.enabled = enabled;
+    this.confidenceThreshold = confidenceThreshold;
+    this.shadowRate = shadowRate;
+    this.minTrainingExamples = minTrainingExamples;
+
+    this.localDecisions = Counter.builder("routing.classifier.decisions").tag("source", "local")
+        .register(meterRegistry);
+    this.llmDecisions = Counter.builder("routing.classifier.decisions").tag("source", "llm")
+        .register(meterRegistry);
+    this.latencySavedMs = Counter.builder("routing.classifier.latency.saved")
+        .baseUnit("milliseconds")
+        .description("Estimated LLM classification latency avoided by local decisions")
+        .register(meterRegistry);
+    this.localLatency = Timer.builder("routing.classifier.local.latency").register(meterRegistry);
+    Gauge.builder("routing.classifier.agreement", this, LocalIntentClassifier::agreementRate)
+        .description("Share of shadow-checked local decisions that matched the LLM label")
+        .register(meterRegistry);
+    Gauge.builder("routing.classifier.training.examples", trainingExamples, AtomicLong::get)
+        .register(meterRegistry);
+  }
+
+  public Classification classify(String message) {
+    if (!enabled || message == null || message.isBlank()) {
+      return Classification.UNKNOWN;
+    }
+    long start = System.nanoTime();
+    String normalized = normalize(message);
+
+    Classification result = classifyByRules(normalized);
+    if (result.confidence() < confidenceThreshold && trainingExamples.get() >= minTrainingExamples) {
+      Classification learned = classifyByModel(tokenize(normalized));
+      if (learned.confidence() > result.confidence()) {
+        result = learned;
+      }
+    }
+
+    localLatency.record(System.nanoTime() - start, java.util.concurrent.TimeUnit.NANOSECONDS);
+    return result;
+  }
+
+  public boolean isConfident(Classification classification) {
+    return classification.confidence() >= confidenceThreshold;
+  }
+
+  public boolean shouldShadowCheck() {
+    return shadowRate > 0 && ThreadLocalRandom.current().nextDouble() < shadowRate;
+  }
+
+  public void recordLocalDecision() {
+    localDecisions.increment();
+    long ewmaMicros = llmLatencyEwmaMicros.get();
+    if (ewmaMicros > 0) {
+      latencySavedMs.increment(ewmaMicros / 1000.0);
+    }
+  }
+
+  public void recordLlmDecision(String message, Classification local, String llmLabel, long llmLatencyNanos) {
+    llmDecisions.increment();
+    llmLatencyEwmaMicros.updateAndGet(previous -> {
+      long sample = llmLatencyNanos / 1000;
+      return previous == 0 ? sample : previous + (sample - previous) / 10;
+    });
+
+    if (isConfident(local)) {
+      shadowComparisons.incrementAndGet();
+      if (local.label().equals(llmLabel)) {
+        shadowAgreements.incrementAndGet();
+      } else {
+        logger.debug("Local classifier disagreed with LLM: local={} ({}), llm={}",
+            local.label(), local.confidence(), llmLabel);
+      }
+    }
+    learn(message, llmLabel);
+  }
+
+  public void learn(String message, String label) {
+    int labelIndex = LABELS.indexOf(label);
+    if (labelIndex < 0 || message == null || message.isBlank()) {
+      return;
+    }
+
+    for (String token : tokenize(normalize(message))) {
+      AtomicLongArray counts = tokenCounts.get(token);
+      if (counts == null) {
+        if (tokenCounts.size() >= MAX_VOCABULARY) {
+          continue;
+        }
+        counts = tokenCounts.computeIfAbsent(token, t -> new AtomicLongArray(LABELS.size()));
+      }
+      counts.incrementAndGet(labelIndex);
+      labelTokenTotals.incrementAndGet(labelIndex);
+    }
+    labelDocCounts.incrementAndGet(labelIndex);
+    trainingExamples.incrementAndGet();
+  }
+
+  public double agreementRate() {
+    long comparisons = shadowComparisons.get();
+    return comparisons == 0 ? Double.NaN : (double) shadowAgreements.get() / comparisons;
+  }
+
+  private Classification classifyByRules(String normalized) {
+    double[] best = new double[LABELS.size()];
+    for (Rule rule : RULES) {
+      if (rule.pattern().matcher(normalized).find()) {
+        int index = LABELS.indexOf(rule.label());
+        best[index] = Math.max(best[index], rule.confidence());
+      }
+    }
+
+    int top = argMax(best);
+    if (best[top] == 0) {
+      return Classification.UNKNOWN;
+    }
+    double runnerUp = 0;
+    for (int i = 0; i < best.length; i++) {
+      if (i != top) {
+        runnerUp = Math.max(runnerUp, best[i]);
+      }
+    }
+    double confidence = runnerUp > 0 ? best[top] * (1 - runnerUp / 2) : best[top];
+    return new Classification(LABELS.get(top), confidence);
+  }
+
+  private Classification classifyByModel(List<String> tokens) {
+    if (tokens.isEmpty()) {
+      return Classification.UNKNOWN;
+    }
+    long totalDocs = 0;
+    for (int i = 0; i < LABELS.size(); i++) {
+      totalDocs += labelDocCounts.get(i);
+    }
+    int vocabulary = Math.max(1, tokenCounts.size());
+
+    double[] logProbs = new double[LABELS.size()];
+    for (int i = 0; i < LABELS.size(); i++) {
+      logProbs[i] = Math.log((labelDocCounts.get(i) + 1.0) / (totalDocs + LABELS.size()));
+      double denominator = labelTokenTotals.get(i) + vocabulary;
+      for (String token : tokens) {
+        AtomicLongArray counts = tokenCounts.get(token);
+        long count = counts == null ? 0 : counts.get(i);
+        logProbs[i] += Math.log((count + 1.0) / denominator);
+      }
+    }
+
+    int top = argMax(logProbs);
+    double normalizer = 0;
+    for (double logProb : logProbs) {
+      normalizer += Math.exp(logProb - logProbs[top]);
+    }
+    return new Classification(LABELS.get(top), 1.0 / normalizer);
+  }
+
+  private static int argMax(double[] values) {
+    int top = 0;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] > values[top]) {
+        top = i;
+      }
+    }
+    return top;
+  }
+
+  private static String normalize(String message) {
+    return message.toLowerCase().replaceAll("[^a-z0-9\\s-]", " ").replaceAll("\\s+", " ").trim();
+  }
+
+  private static List<String> tokenize(String normalized) {
+    List<String> tokens = new ArrayList<>();
+    for (String token : normalized.split(" ")) {
+      if (token.length() >= 2) {
+        tokens.add(token.replaceAll("\\d+$", "#"));
+      }
+    }
+    return tokens;
+  }
+
+  public record Classification(String label, double confidence) {
+    public static final Classification UNKNOWN = new Classification("router", 0.0);
+  }
+
+  private record Rule(Pattern pattern, String label, double confidence) {
+  }
+}
@@ -0,0 +1,67 @@
+package com.kryo.agents.services;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.models.openai.ToolCall;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Counts prompt tokens locally with the deployed model's BPE encoding, including the
+ * per-message framing the chat completions API adds around each message.
+ */
+@Component
+public class TokenEstimator {
+
+  static final int TOKENS_PER_MESSAGE = 3;
+  static final int TOKENS_PER_REPLY = 3;
+  private static final String TRUNCATION_MARKER = " [...]";
+  private static final EncodingRegistry REGISTRY = Encodings.newLazyEncodingRegistry();
+
+  private final Encoding encoding;
+
+  public TokenEstimator(@Value("${azure.openai.tokenizer:o200k_base}") String encodingName) {
+    this.encoding = REGISTRY.getEncoding(encodingName)
+        .orElseThrow(() -> new IllegalArgumentException("Unknown tokenizer encoding: " + encodingName));
+  }
+
+  public int count(String text) {
+    return text == null || text.isEmpty() ? 0 : encoding.countTokensOrdinary(text);
+  }
+
+  public int count(Message message) {
+    int tokens = TOKENS_PER_MESSAGE + count(message.role()) + count(message.content());
+    if (message.tool_calls() != null) {
+      for (ToolCall toolCall : message.tool_calls()) {
+        if (toolCall.function() != null) {
+          tokens += count(toolCall.function().name()) + count(toolCall.function().arguments());
+        }
+      }
+    }
+    return tokens;
+  }
+
+  public int count(List<Message> messages) {
+    int tokens = TOKENS_PER_REPLY;
+    for (Message message : messages) {
+      tokens += count(message);
+    }
+    return tokens;
+  }
+
+  public String truncate(String text, int maxTokens) {
+    if (text == null) {
+      return null;
+    }
+    EncodingResult result = encoding.encodeOrdinary(text, Math.max(0, maxTokens));
+    if (!result.isTruncated()) {
+      return text;
+    }
+    return encoding.decode(result.getTokens()) + TRUNCATION_MARKER;
+  }
+}
@@ -7,6 +7,15 @@ document.addEventListener('DOMContentLoaded', () => {
   const conversationList = document.getElementById('conversation-list');
 
   let conversationId = null;
+  let inFlight = null;
+
+  // Dropping the connection lets the server cancel the turn instead of finishing it for nobody.
+  const abortInFlight = () => {
+    if (inFlight) {
+      inFlight.abort();
+      inFlight = null;
+    }
+  };
 
   const generateUUID = () => {
     if (typeof crypto !== 'undefined' && crypto.randomUUID) {
@@ -59,6 +68,7 @@ Type your request below to begin.</div>
   };
 
   const loadHistory = async (id) => {
+    abortInFlight();
     try {
       const response = await fetch(`/api/chat/conversations/${id}`, {
         headers: {
@@ -88,6 +98,7 @@ Type your request below to begin.</div>
   };
 
   const resetConversation = () => {
+    abortInFlight();
     conversationId = null;
     chatHistory.innerHTML = initialWelcomeMessage;
     typingIndicator.style.display = 'none';
@@ -130,6 +141,41 @@ Type your request below to begin.</div>
       top: chatHistory.scrollHeight,
       behavior: 'smooth'
     });
+
+    return { label, content };
+  };
+
+  const parseEvent = (rawEvent) => {
+    let name = 'message';
+    const dataLines = [];
+    rawEvent.split('\n').forEach(line => {
+      if (line.startsWith('event:')) {
+        name = line.slice(6).trim();
+      } else if (line.startsWith('data:')) {
+        dataLines.push(line.slice(5).replace(/^ /, ''));
+      }
+    });
+    if (dataLines.length === 0) return null;
+    return { name, data: JSON.parse(dataLines.join('\n')) };
+  };
+
+  const readEventStream = async (response, onEvent) => {
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+
+    while (true) {
+      const { value, done } = await reader.read();
+      if (done) break;
+      buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, '\n');
+
+      let boundary;
+      while ((boundary = buffer.indexOf('\n\n')) !== -1) {
+        const event = parseEvent(buffer.slice(0, boundary));
+        buffer = buffer.slice(boundary + 2);
+        if (event) onEvent(event);
+      }
+    }
   };
 
   const sendMessage = async () => {
@@ -140,47 +186,73 @@ Type your request below to begin.</div>
       conversationId = generateUUID();
     }
 
+    abortInFlight();
+    const controller = new AbortController();
+    inFlight = controller;
+
     appendMessage('user', message);
     messageInput.value = '';
     messageInput.style.height = 'auto';
-    messageInput.disabled = true;
-    sendBtn.disabled = true;
     typingIndicator.style.display = 'block';
     chatHistory.scrollTo({ top: chatHistory.scrollHeight, behavior: 'smooth' });
 
     try {
-      const response = await fetch('/api/chat', {
+      const response = await fetch('/api/chat/stream', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
+          'Accept': 'text/event-stream',
           'X-User-ID': getUserId()
         },
         body: JSON.stringify({
           message: message,
           conversationId: conversationId
         }),
+        signal: controller.signal,
       });
 
+      if (response.status === 429) {
+        const retryAfter = response.headers.get('Retry-After') || 'a few';
+        typingIndicator.style.display = 'none';
+        appendMessage('agent', `RATE LIMITED: Too many requests. Please wait ${retryAfter} seconds and try again.`, 'SYSTEM');
+        return;
+      }
       if (!response.ok) {
         throw new Error('Network response was not ok');
       }
 
-      const data = await response.json();
-      conversationId = data.conversationId;
+      let agentMessage = null;
+      let streamError = null;
 
-      typingIndicator.style.display = 'none';
-      appendMessage('agent', data.reply, data.agent);
+      await readEventStream(response, ({ name, data }) => {
+        if (name === 'agent') {
+          conversationId = data.conversationId;
+          typingIndicator.style.display = 'none';
+          agentMessage = appendMessage('agent', '', data.agent);
+        } else if (name === 'token' && agentMessage) {
+          agentMessage.content.textContent += data.content;
+          chatHistory.scrollTo({ top: chatHistory.scrollHeight });
+        } else if (name === 'error') {
+          streamError = data.error;
+        }
+      });
+
+      if (streamError || !agentMessage) {
+        throw new Error(streamError || 'Stream ended without a reply');
+      }
 
       loadConversations();
 
     } catch (error) {
+      if (error.name === 'AbortError') return;
       console.error('Error:', error);
       typingIndicator.style.display = 'none';
       appendMessage('agent', 'ERROR: Failed to connect to the agent gateway. Please try again.', 'SYSTEM');
     } finally {
-      messageInput.disabled = false;
-      sendBtn.disabled = false;
-      messageInput.focus();
+      if (inFlight === controller) {
+        inFlight = null;
+        messageInput.focus();
+      }
     }
   };
 
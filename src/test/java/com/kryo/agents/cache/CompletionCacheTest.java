@@ -0,0 +1,107 @@
+package com.kryo.agents.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kryo.agents.codec.OpenAICodec;
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.openai.Function;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.models.openai.OpenAIRequest;
+import com.kryo.agents.models.openai.Tool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompletionCacheTest {
+
+  private final RequestFingerprinter fingerprinter = new RequestFingerprinter(new OpenAICodec(new ObjectMapper()));
+
+  private SimpleMeterRegistry meterRegistry;
+  private CompletionCache cache;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    cache = new CompletionCache(2, Duration.ofMinutes(5),
+        List.of("classification", "agent-answer"), meterRegistry);
+  }
+
+  private Optional<Message> get(CompletionCache target, CallType callType, OpenAIRequest request) {
+    return target.get(callType, request, fingerprinter.fingerprint(request).orElseThrow());
+  }
+
+  private void put(CompletionCache target, CallType callType, OpenAIRequest request, Message message) {
+    target.put(callType, request, fingerprinter.fingerprint(request).orElseThrow(), message);
+  }
+
+  private static OpenAIRequest request(String userMessage) {
+    return new OpenAIRequest(List.of(Message.system("classify"), Message.user(userMessage)));
+  }
+
+  @Test
+  void get_afterPut_returnsCachedMessage() {
+    put(cache, CallType.CLASSIFICATION, request("hello"), Message.assistant("router"));
+
+    assertEquals("router", get(cache, CallType.CLASSIFICATION, request("hello")).orElseThrow().content());
+    assertTrue(get(cache, CallType.CLASSIFICATION, request("hi")).isEmpty());
+    assertEquals(1.0, meterRegistry.get("azure.openai.cache.requests").tag("result", "hit").counter().count());
+    assertEquals(1.0, meterRegistry.get("azure.openai.cache.requests").tag("result", "miss").counter().count());
+  }
+
+  @Test
+  void fingerprint_hashesTheEncodedRequestBody() {
+    assertEquals(fingerprinter.fingerprint(request("hello")), fingerprinter.fingerprint(request("hello")));
+    assertNotEquals(fingerprinter.fingerprint(request("hello")),
+        fingerprinter.fingerprint(request("hello").withMaxTokens(50)));
+    assertNotEquals(fingerprinter.fingerprint(request("hello")),
+        fingerprinter.fingerprint(request("hello").streaming()));
+  }
+
+  @Test
+  void put_toolCallingRequest_isNeverCached() {
+    Tool tool = new Tool(new Function("checkSubscription", "Check plan", Map.of("type", "object")));
+    OpenAIRequest toolRequest = new OpenAIRequest(List.of(Message.user("customer-001")), List.of(tool));
+
+    put(cache, CallType.AGENT_ANSWER, toolRequest, Message.assistant("Your plan is Pro"));
+    put(cache, CallType.TOOL_STEP, request("customer-001"), Message.assistant("Done"));
+
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void put_beyondMaxEntries_evictsLeastRecentlyUsed() {
+    put(cache, CallType.CLASSIFICATION, request("a"), Message.assistant("technical"));
+    put(cache, CallType.CLASSIFICATION, request("b"), Message.assistant("billing"));
+    get(cache, CallType.CLASSIFICATION, request("a"));
+    put(cache, CallType.CLASSIFICATION, request("c"), Message.assistant("router"));
+
+    assertTrue(get(cache, CallType.CLASSIFICATION, request("a")).isPresent());
+    assertTrue(get(cache, CallType.CLASSIFICATION, request("b")).isEmpty());
+    assertEquals(1.0, meterRegistry.get("azure.openai.cache.evictions").tag("cause", "size").counter().count());
+  }
+
+  @Test
+  void get_expiredEntry_isEvicted() {
+    CompletionCache shortLived = new CompletionCache(10, Duration.ZERO,
+        List.of("classification"), new SimpleMeterRegistry());
+    put(shortLived, CallType.CLASSIFICATION, request("hello"), Message.assistant("router"));
+
+    assertTrue(get(shortLived, CallType.CLASSIFICATION, request("hello")).isEmpty());
+    assertEquals(0, shortLived.size());
+  }
+
+  @Test
+  void get_callTypeNotOptedIn_bypassesCache() {
+    CompletionCache classificationOnly = new CompletionCache(10, Duration.ofMinutes(5),
+        List.of("classification"), new SimpleMeterRegistry());
+    put(classificationOnly, CallType.AGENT_ANSWER, request("hello"), Message.assistant("Hi!"));
+
+    assertEquals(0, classificationOnly.size());
+  }
+}
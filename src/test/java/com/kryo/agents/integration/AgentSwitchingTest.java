@@ -4,22 +4,45 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kryo.agents.agents.Agent;
 import com.kryo.agents.agents.AgentOrchestrator;
 import com.kryo.agents.agents.BillingAgent;
+import com.kryo.agents.agents.Dispatch;
 import com.kryo.agents.agents.RouterAgent;
 import com.kryo.agents.agents.TechnicalAgent;
+import com.kryo.agents.codec.OpenAICodec;
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.models.Role;
+import com.kryo.agents.models.openai.Message;
 import com.kryo.agents.services.AzureOpenAIService;
 import com.kryo.agents.services.BillingService;
+import com.kryo.agents.services.ContextAssembler;
 import com.kryo.agents.services.ConversationService;
 import com.kryo.agents.services.DocumentRetrievalService;
+import com.kryo.agents.services.LocalIntentClassifier;
+import com.kryo.agents.services.TokenEstimator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,19 +61,81 @@ class AgentSwitchingTest {
 
   private ConversationService conversationService;
 
+  private ContextAssembler contextAssembler;
+
+  private ExecutorService executor;
+
   @BeforeEach
   void setUp() {
+    executor = Executors.newVirtualThreadPerTaskExecutor();
     ObjectMapper objectMapper = new ObjectMapper();
-    conversationService = new ConversationService();
-
-    BillingAgent billingAgent = new BillingAgent(openAIService, billingService, objectMapper);
-    TechnicalAgent technicalAgent = new TechnicalAgent(openAIService, documentRetrievalService);
+    TokenEstimator tokenEstimator = new TokenEstimator("o200k_base");
+    conversationService = new ConversationService(tokenEstimator, 8000);
+    contextAssembler = new ContextAssembler(new MockEnvironment(), tokenEstimator, new SimpleMeterRegistry());
+
+    BillingAgent billingAgent = new BillingAgent(openAIService, billingService, objectMapper, contextAssembler,
+        new OpenAICodec(objectMapper));
+    TechnicalAgent technicalAgent = new TechnicalAgent(openAIService, documentRetrievalService, contextAssembler,
+        new OpenAICodec(objectMapper), new SimpleMeterRegistry());
     RouterAgent routerAgent = new RouterAgent();
 
     orchestrator = new AgentOrchestrator(
         List.of(billingAgent, technicalAgent, routerAgent),
         openAIService,
-        conversationService);
+        conversationService,
+        new LocalIntentClassifier(false, 0.8, 0.0, 50, new SimpleMeterRegistry()),
+        documentRetrievalService,
+        executor,
+        new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  @Test
+  void localClassifier_confidentMessage_skipsLlmClassification() {
+    AgentOrchestrator localOrchestrator = new AgentOrchestrator(
+        List.of(new BillingAgent(openAIService, billingService, new ObjectMapper(), contextAssembler,
+            new OpenAICodec(new ObjectMapper())),
+            new TechnicalAgent(openAIService, documentRetrievalService, contextAssembler,
+                new OpenAICodec(new ObjectMapper()), new SimpleMeterRegistry()),
+            new RouterAgent()),
+        openAIService,
+        conversationService,
+        new LocalIntentClassifier(true, 0.8, 0.0, 50, new SimpleMeterRegistry()),
+        documentRetrievalService,
+        executor,
+        new SimpleMeterRegistry());
+
+    Agent agent = localOrchestrator.route("test-local", "Refund for customer-001 please");
+
+    assertEquals("billing", agent.getName());
+    verify(openAIService, never()).classifyIntent(anyList());
+  }
+
+  @Test
+  void localClassifier_labelDisagreeingWithCurrentAgent_defersToLlm() {
+    AgentOrchestrator localOrchestrator = new AgentOrchestrator(
+        List.of(new BillingAgent(openAIService, billingService, new ObjectMapper(), contextAssembler,
+            new OpenAICodec(new ObjectMapper())),
+            new TechnicalAgent(openAIService, documentRetrievalService, contextAssembler,
+                new OpenAICodec(new ObjectMapper()), new SimpleMeterRegistry()),
+            new RouterAgent()),
+        openAIService,
+        conversationService,
+        new LocalIntentClassifier(true, 0.8, 0.0, 50, new SimpleMeterRegistry()),
+        documentRetrievalService,
+        executor,
+        new SimpleMeterRegistry());
+    when(openAIService.classifyIntent(anyList())).thenReturn("billing");
+
+    assertEquals("billing", localOrchestrator.route("test-local-sticky", "Refund for customer-001 please").getName());
+    Agent agent = localOrchestrator.route("test-local-sticky", "Which API endpoint do I call for that?");
+
+    assertEquals("billing", agent.getName());
+    verify(openAIService).classifyIntent(anyList());
   }
 
   @Test
@@ -206,4 +291,39 @@ class AgentSwitchingTest {
     Agent agent2b = orchestrator.route(conv2, "I want a refund");
     assertEquals("billing", agent2b.getName(), "Conversation 2 should still use billing agent");
   }
+
+  @Test
+  void dispatch_stickyAgentConfirmed_usesSpeculativeCompletion() {
+    String conversationId = "test-speculation-hit";
+    Message speculative = Message.assistant("Your plan is Pro.");
+    when(openAIService.classifyIntent(anyList())).thenReturn("billing");
+    when(openAIService.sendRequest(eq("billing"), eq(CallType.AGENT_ANSWER), anyList(), anyList()))
+        .thenReturn(speculative);
+
+    orchestrator.route(conversationId, "What is my plan?");
+    Dispatch dispatch = orchestrator.dispatch(conversationId, "And the price?",
+        List.of(new ChatMessage(Role.USER, "And the price?")));
+
+    assertEquals("billing", dispatch.agent().getName());
+    assertSame(speculative, dispatch.speculation().awaitFirstCompletion().orElseThrow());
+    assertNull(dispatch.speculation().documents(), "Prefetched documents are dropped for non-technical agents");
+  }
+
+  @Test
+  void dispatch_routedAwayFromStickyAgent_cancelsSpeculation() {
+    String conversationId = "test-speculation-miss";
+    List<DocumentChunk> docs = List.of(new DocumentChunk("faq.md", "Errors", "429 means rate limited"));
+    when(openAIService.classifyIntent(anyList())).thenReturn("billing", "technical");
+    when(documentRetrievalService.retrieveDocuments(anyString())).thenReturn(docs);
+    lenient().when(openAIService.sendRequest(eq("billing"), eq(CallType.AGENT_ANSWER), anyList(), anyList()))
+        .thenReturn(Message.assistant("speculative"));
+
+    orchestrator.route(conversationId, "What is my plan?");
+    Dispatch dispatch = orchestrator.dispatch(conversationId, "I'm getting a 429 error",
+        List.of(new ChatMessage(Role.USER, "I'm getting a 429 error")));
+
+    assertEquals("technical", dispatch.agent().getName());
+    assertTrue(dispatch.speculation().awaitFirstCompletion().isEmpty());
+    assertEquals(docs, dispatch.speculation().documentsOr(List::of));
+  }
 }
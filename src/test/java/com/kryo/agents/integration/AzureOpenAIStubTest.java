@@ -0,0 +1,270 @@
+package com.kryo.agents.integration;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.DeadlineExceededException;
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.openai.Function;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.models.openai.Tool;
+import com.kryo.agents.resilience.Deadline;
+import com.kryo.agents.services.AzureOpenAIService;
+import com.kryo.agents.support.AzureOpenAIStub;
+import com.kryo.agents.support.LatencyModel;
+import com.kryo.agents.support.StubReply;
+import com.kryo.agents.support.StubRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FastByteArrayOutputStream;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "azure.openai.key=stub-key",
+    "azure.openai.deployment-name=stub-deployment",
+    "azure.openai.api-version=2024-02-15-preview",
+    "azure.openai.http.prewarm-connections=0",
+    "azure.openai.cache.max-entries=0",
+    "azure.openai.retry.agent-answer.initial-backoff=10ms",
+    "azure.openai.retry.agent-answer.max-backoff=20ms"
+})
+class AzureOpenAIStubTest {
+
+  private static final AzureOpenAIStub stub = AzureOpenAIStub.start();
+
+  @DynamicPropertySource
+  static void stubEndpoint(DynamicPropertyRegistry registry) {
+    registry.add("azure.openai.endpoint", stub::baseUrl);
+  }
+
+  @Autowired
+  private AzureOpenAIService openAIService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private RestClient azureOpenAiClient;
+
+  @BeforeEach
+  void resetStub() {
+    stub.reset();
+  }
+
+  @AfterAll
+  static void stopStub() {
+    stub.close();
+  }
+
+  @Test
+  void answersOverTheCompletionsProtocol() {
+    stub.otherwise(StubReply.text("Hello from the stub"));
+
+    Message reply = openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Hi there"))));
+
+    assertEquals("Hello from the stub", reply.content());
+    StubRequest request = stub.lastRequest();
+    assertEquals("stub-deployment", request.deployment());
+    assertEquals("2024-02-15-preview", request.apiVersion());
+    assertEquals("stub-key", request.apiKey());
+    assertEquals("Hi there", request.lastUserMessage());
+    assertTrue(request.maxTokens() > 0);
+  }
+
+  @Test
+  void streamsRequestBodiesStraightToTheConnection() {
+    stub.otherwise(StubReply.text("streamed"));
+    List<Class<?>> bodyStreams = new ArrayList<>();
+
+    azureOpenAiClient.post()
+        .uri(stub.baseUrl() + "/openai/deployments/stub-deployment/chat/completions?api-version=v1")
+        .header("api-key", "stub-key")
+        .body(out -> {
+          bodyStreams.add(out.getClass());
+          out.write("{\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}".getBytes(StandardCharsets.UTF_8));
+        })
+        .exchange((req, resp) -> resp.getStatusCode());
+
+    assertEquals(1, bodyStreams.size());
+    assertFalse(FastByteArrayOutputStream.class.isAssignableFrom(bodyStreams.get(0)),
+        "An interceptor on the client would buffer the body before sending it");
+    assertFalse(ByteArrayOutputStream.class.isAssignableFrom(bodyStreams.get(0)));
+  }
+
+  @Test
+  void releasesInFlightSlotsOnceTheResponseIsRead() {
+    stub.otherwise(StubReply.text("done"));
+
+    openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Count me"))));
+
+    assertEquals(0.0, meterRegistry.get("azure.openai.http.requests.active").gauge().value());
+  }
+
+  @Test
+  void retriesAfterThrottleWithRetryAfter() {
+    stub.enqueue(StubReply.throttled(Duration.ofMillis(50)))
+        .otherwise(StubReply.text("recovered"));
+
+    Message reply = openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Retry me"))));
+
+    assertEquals("recovered", reply.content());
+    assertEquals(1, stub.responses(429));
+    assertEquals(2, stub.requestCount());
+  }
+
+  @Test
+  void injectedServerErrorsExhaustRetries() {
+    stub.failRandomly(1.0, 503);
+
+    AiCallException error = assertThrows(AiCallException.class,
+        () -> openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Always failing")))));
+
+    assertTrue(error.isServerError());
+    assertEquals(3, stub.responses(503));
+  }
+
+  @Test
+  void drivesToolCallLoop() {
+    Tool lookup = new Tool(new Function("lookupOrder", "Look up an order",
+        Map.of("type", "object", "properties", Map.of("orderId", Map.of("type", "string")))));
+    stub.when(request -> request.hasTools() && !request.hasToolResults(),
+            StubReply.toolCall("lookupOrder", "{\"orderId\":\"42\"}"))
+        .otherwise(StubReply.text("Order 42 has shipped"));
+    List<String> executed = new ArrayList<>();
+
+    Message reply = openAIService.executeToolCallLoop(
+        new ArrayList<>(List.of(Message.user("Where is order 42?"))), List.of(lookup),
+        (name, arguments) -> {
+          executed.add(name + " " + arguments);
+          return "shipped";
+        });
+
+    assertEquals("Order 42 has shipped", reply.content());
+    assertEquals(List.of("lookupOrder {\"orderId\":\"42\"}"), executed);
+    assertTrue(stub.lastRequest().hasToolResults());
+  }
+
+  @Test
+  void recordsPerAgentMetricsForToolLoop() {
+    Tool lookup = new Tool(new Function("lookupOrder", "Look up an order",
+        Map.of("type", "object", "properties", Map.of("orderId", Map.of("type", "string")))));
+    stub.when(request -> request.hasTools() && !request.hasToolResults(),
+            StubReply.toolCall("lookupOrder", "{\"orderId\":\"7\"}"))
+        .otherwise(StubReply.text("Order 7 has shipped"));
+
+    openAIService.executeToolCallLoop("orders", new ArrayList<>(List.of(Message.user("Where is order 7?"))),
+        List.of(lookup), (name, arguments) -> "shipped", null);
+
+    Timer answer = meterRegistry.get("azure.openai.call")
+        .tags("agent", "orders", "call_type", "agent-answer", "outcome", "success").timer();
+    assertEquals(1, answer.count());
+    assertEquals(3, answer.takeSnapshot().percentileValues().length, "percentiles come from application.yml");
+    assertEquals(1, meterRegistry.get("azure.openai.call")
+        .tags("agent", "orders", "call_type", "tool-step").timer().count());
+    assertEquals(1, meterRegistry.get("agent.tool.execution")
+        .tags("agent", "orders", "tool", "lookupOrder", "outcome", "success").timer().count());
+    assertEquals(1.0, meterRegistry.get("agent.tool.iterations").tag("agent", "orders").summary().totalAmount());
+    assertTrue(meterRegistry.get("azure.openai.tokens")
+        .tags("agent", "orders", "type", "prompt").counter().count() > 0);
+    assertTrue(meterRegistry.get("azure.openai.tokens")
+        .tags("agent", "orders", "type", "completion").counter().count() > 0);
+    assertTrue(meterRegistry.get("azure.openai.http.responses")
+        .tags("call_type", "tool-step", "status", "200").counter().count() >= 1);
+  }
+
+  @Test
+  void tagsToolCallsOutsideTheOfferedToolsAsUnknown() {
+    Tool lookup = new Tool(new Function("lookupOrder", "Look up an order",
+        Map.of("type", "object", "properties", Map.of("orderId", Map.of("type", "string")))));
+    stub.when(request -> request.hasTools() && !request.hasToolResults(),
+            StubReply.toolCall("dropTables", "{}"))
+        .otherwise(StubReply.text("Done"));
+
+    openAIService.executeToolCallLoop("ops", new ArrayList<>(List.of(Message.user("Drop it"))),
+        List.of(lookup), (name, arguments) -> {
+          throw new IllegalArgumentException("Unknown tool: " + name);
+        }, null);
+
+    assertEquals(1, meterRegistry.get("agent.tool.execution")
+        .tags("agent", "ops", "tool", "unknown", "outcome", "error").timer().count());
+    assertTrue(meterRegistry.find("agent.tool.execution").tag("tool", "dropTables").timers().isEmpty());
+  }
+
+  @Test
+  void recordsCachedPromptTokensPerAgent() {
+    stub.otherwise(StubReply.text("Sure"));
+    Message system = Message.system("You are a helpful assistant. ".repeat(40));
+
+    openAIService.sendRequest("cache-probe", CallType.AGENT_ANSWER, List.of(system, Message.user("First question")), null);
+    openAIService.sendRequest("cache-probe", CallType.AGENT_ANSWER, List.of(system, Message.user("Second question")), null);
+
+    double prompt = meterRegistry.get("azure.openai.tokens").tags("agent", "cache-probe", "type", "prompt").counter().count();
+    double cached = meterRegistry.get("azure.openai.tokens").tags("agent", "cache-probe", "type", "cached").counter().count();
+    assertTrue(cached > 0 && cached < prompt / 2 + 1, "cached " + cached + " of " + prompt);
+  }
+
+  @Test
+  void streamsChunkedReply() {
+    stub.tokenLatency(LatencyModel.fixed(Duration.ofMillis(1)))
+        .otherwise(StubReply.text("Streaming works fine"));
+    List<String> deltas = new ArrayList<>();
+
+    AzureOpenAIService.StreamResult result = openAIService.streamRequest(
+        List.of(Message.user("Stream please")), deltas::add);
+
+    assertEquals("Streaming works fine", result.content());
+    assertEquals(List.of("Streaming ", "works ", "fine"), deltas);
+    assertTrue(stub.lastRequest().isStreaming());
+  }
+
+  @Test
+  void abandonsSlowCallsWhenTheDeadlinePasses() {
+    stub.otherwise(StubReply.text("Too late").withLatency(Duration.ofSeconds(5)));
+    long start = System.nanoTime();
+
+    try (Deadline deadline = Deadline.after(Duration.ofMillis(200));
+        Deadline.Scope scope = deadline.enter()) {
+      assertThrows(AiCallException.class,
+          () -> openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Anyone there?")))));
+      assertThrows(DeadlineExceededException.class,
+          () -> openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Still there?")))));
+    }
+
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+    assertEquals(1, stub.requestCount(), "No upstream call is started once the deadline has passed");
+  }
+
+  @Test
+  void latencyModelsAreReproducibleForASeed() {
+    LatencyModel model = LatencyModel.logNormal(Duration.ofMillis(300), 0.5);
+
+    List<Duration> first = new ArrayList<>();
+    List<Duration> second = new ArrayList<>();
+    SplittableRandom a = new SplittableRandom(7);
+    SplittableRandom b = new SplittableRandom(7);
+    for (int i = 0; i < 5; i++) {
+      first.add(model.sample(a));
+      second.add(model.sample(b));
+    }
+
+    assertEquals(first, second);
+  }
+}
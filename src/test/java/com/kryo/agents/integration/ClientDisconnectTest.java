@@ -0,0 +1,66 @@
+package com.kryo.agents.integration;
+
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.resilience.CircuitBreaker;
+import com.kryo.agents.services.AzureOpenAIService;
+import com.kryo.agents.support.AzureOpenAIStub;
+import com.kryo.agents.support.StubReply;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+    "azure.openai.key=stub-key",
+    "azure.openai.deployment-name=stub-deployment",
+    "azure.openai.api-version=2024-02-15-preview",
+    "azure.openai.http.prewarm-connections=0",
+    "azure.openai.cache.max-entries=0",
+    "azure.openai.circuit-breaker.window-size=2",
+    "azure.openai.circuit-breaker.minimum-calls=2",
+    "azure.openai.circuit-breaker.open-duration=1h"
+})
+class ClientDisconnectTest {
+
+  private static final AzureOpenAIStub stub = AzureOpenAIStub.start();
+
+  @DynamicPropertySource
+  static void stubEndpoint(DynamicPropertyRegistry registry) {
+    registry.add("azure.openai.endpoint", stub::baseUrl);
+  }
+
+  @Autowired
+  private AzureOpenAIService openAIService;
+
+  @Autowired
+  private CircuitBreaker circuitBreaker;
+
+  @AfterAll
+  static void stopStub() {
+    stub.close();
+  }
+
+  @Test
+  void clientHangUpsDoNotCountAgainstTheBreaker() {
+    stub.otherwise(StubReply.text("A reply nobody reads"));
+
+    for (int i = 0; i < 3; i++) {
+      assertThrows(UncheckedIOException.class, () -> openAIService.streamRequest(List.of(Message.user("Hello?")),
+          delta -> {
+            throw new UncheckedIOException(new IOException("Broken pipe"));
+          }));
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertEquals(3, stub.requestCount(), "Every stream still reached Azure");
+  }
+}
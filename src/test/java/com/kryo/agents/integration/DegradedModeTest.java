@@ -0,0 +1,93 @@
+package com.kryo.agents.integration;
+
+import com.kryo.agents.agents.AgentOrchestrator;
+import com.kryo.agents.agents.TechnicalAgent;
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.Role;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.resilience.CircuitBreaker;
+import com.kryo.agents.services.AzureOpenAIService;
+import com.kryo.agents.support.AzureOpenAIStub;
+import com.kryo.agents.support.StubReply;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "azure.openai.key=stub-key",
+    "azure.openai.deployment-name=stub-deployment",
+    "azure.openai.api-version=2024-02-15-preview",
+    "azure.openai.http.prewarm-connections=0",
+    "azure.openai.cache.max-entries=0",
+    "azure.openai.retry.agent-answer.initial-backoff=10ms",
+    "azure.openai.retry.agent-answer.max-backoff=20ms",
+    "azure.openai.circuit-breaker.window-size=2",
+    "azure.openai.circuit-breaker.minimum-calls=2",
+    "azure.openai.circuit-breaker.open-duration=1h"
+})
+class DegradedModeTest {
+
+  private static final AzureOpenAIStub stub = AzureOpenAIStub.start();
+
+  @DynamicPropertySource
+  static void stubEndpoint(DynamicPropertyRegistry registry) {
+    registry.add("azure.openai.endpoint", stub::baseUrl);
+  }
+
+  @Autowired
+  private AzureOpenAIService openAIService;
+
+  @Autowired
+  private CircuitBreaker circuitBreaker;
+
+  @Autowired
+  private TechnicalAgent technicalAgent;
+
+  @Autowired
+  private AgentOrchestrator orchestrator;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @AfterAll
+  static void stopStub() {
+    stub.close();
+  }
+
+  @Test
+  void servesFallbacksWithoutCallingTheLlmOnceTheBreakerOpens() {
+    stub.otherwise(StubReply.error(503));
+
+    assertThrows(AiCallException.class,
+        () -> openAIService.sendRequest(new ArrayList<>(List.of(Message.user("Are you there?")))));
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertEquals(2, stub.requestCount(), "The third attempt fails fast instead of reaching Azure");
+
+    String reply = technicalAgent.respond("How do I fix a 503 error?",
+        List.of(new ChatMessage(Role.USER, "How do I fix a 503 error?")));
+    assertTrue(reply.startsWith("Our assistant is temporarily unavailable"), reply);
+    assertTrue(reply.contains("(Source: "), reply);
+
+    // Mixed billing and technical keywords leave the local classifier below its threshold.
+    assertEquals("technical", orchestrator.route("I was charged twice after the api upgrade").getName());
+
+    assertEquals(2, stub.requestCount());
+    assertEquals(1, meterRegistry.get("agent.fallback").tag("agent", "technical").counter().count());
+    assertEquals(1, meterRegistry.get("routing.classification").tag("source", "degraded").timer().count());
+    assertEquals(1, meterRegistry.get("azure.openai.circuit.transitions")
+        .tags("from", "closed", "to", "open").counter().count());
+    assertTrue(meterRegistry.get("azure.openai.circuit.degraded.time").functionCounter().count() > 0);
+  }
+}
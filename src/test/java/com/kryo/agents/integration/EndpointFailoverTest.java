@@ -0,0 +1,79 @@
+package com.kryo.agents.integration;
+
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.openai.Message;
+import com.kryo.agents.resilience.EndpointPool;
+import com.kryo.agents.services.AzureOpenAIService;
+import com.kryo.agents.support.AzureOpenAIStub;
+import com.kryo.agents.support.StubReply;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "azure.openai.endpoint=http://unused.invalid",
+    "azure.openai.key=stub-key",
+    "azure.openai.deployment-name=stub-deployment",
+    "azure.openai.api-version=2024-02-15-preview",
+    "azure.openai.http.prewarm-connections=0",
+    "azure.openai.cache.max-entries=0",
+    "azure.openai.endpoints[0].name=east",
+    "azure.openai.endpoints[1].name=west",
+    "azure.openai.balancer.health-check-interval=1h"
+})
+class EndpointFailoverTest {
+
+  private static final AzureOpenAIStub east = AzureOpenAIStub.start();
+  private static final AzureOpenAIStub west = AzureOpenAIStub.start();
+
+  @DynamicPropertySource
+  static void stubEndpoints(DynamicPropertyRegistry registry) {
+    registry.add("azure.openai.endpoints[0].url", east::baseUrl);
+    registry.add("azure.openai.endpoints[1].url", west::baseUrl);
+  }
+
+  @Autowired
+  private AzureOpenAIService openAIService;
+
+  @Autowired
+  private EndpointPool endpointPool;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @AfterAll
+  static void stopStubs() {
+    east.close();
+    west.close();
+  }
+
+  @Test
+  void failsOverToAnotherDeploymentWhenOneThrottles() {
+    east.otherwise(StubReply.throttled(Duration.ofMillis(20)));
+    west.otherwise(StubReply.text("technical"));
+
+    for (int i = 0; i < 5; i++) {
+      Message reply = openAIService.sendRequest(CallType.CLASSIFICATION, List.of(Message.user("Question " + i)), null);
+      assertEquals("technical", reply.content());
+    }
+
+    assertEquals(1, east.requestCount(), "The throttled endpoint is ejected after its first 429");
+    assertEquals(5, west.requestCount());
+    assertTrue(endpointPool.endpoints().get(0).isEjected());
+    assertEquals(1, meterRegistry.get("azure.openai.http.responses")
+        .tags("endpoint", "east", "status", "429").counter().count());
+    assertEquals(5, meterRegistry.get("azure.openai.http.responses")
+        .tags("endpoint", "west", "status", "200").counter().count());
+    assertEquals(5, meterRegistry.get("azure.openai.endpoint.latency").tag("endpoint", "west").timer().count());
+  }
+}
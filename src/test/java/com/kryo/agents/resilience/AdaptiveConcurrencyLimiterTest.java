@@ -0,0 +1,131 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.ConcurrencyLimitExceededException;
+import com.kryo.agents.models.CallType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private AdaptiveConcurrencyLimiter limiter;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    limiter = new AdaptiveConcurrencyLimiter(10, 1, 50, 0, Duration.ofMillis(50), 8000, meterRegistry);
+  }
+
+  @Test
+  void acquire_belowLimit_grantsPermit() {
+    AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(CallType.AGENT_ANSWER);
+
+    assertEquals(1, limiter.getInFlight());
+    permit.success();
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void dropped_halvesLimit() {
+    limiter.acquire(CallType.AGENT_ANSWER).dropped();
+
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  void release_isIdempotent() {
+    AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(CallType.AGENT_ANSWER);
+    permit.success();
+    permit.release();
+    permit.dropped();
+
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(10, limiter.getLimit());
+  }
+
+  @Test
+  void success_measuresLatencyUpToTheResponseHeaders() throws InterruptedException {
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire(CallType.AGENT_ANSWER).success();
+    }
+
+    for (int i = 0; i < 3; i++) {
+      AdaptiveConcurrencyLimiter.Permit stream = limiter.acquire(CallType.AGENT_ANSWER);
+      stream.responded();
+      Thread.sleep(20);
+      stream.success();
+    }
+
+    assertEquals(10, limiter.getLimit(), "Streaming the body is not congestion");
+  }
+
+  @Test
+  void success_keepsOneLatencyBaselinePerCallType() throws InterruptedException {
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire(CallType.CLASSIFICATION).success();
+    }
+
+    for (int i = 0; i < 3; i++) {
+      AdaptiveConcurrencyLimiter.Permit answer = limiter.acquire(CallType.TOOL_STEP);
+      Thread.sleep(20);
+      answer.success();
+    }
+
+    assertEquals(10, limiter.getLimit(), "Slower call types are not compared with fast classifications");
+  }
+
+  @Test
+  void rateLimitHeaders_lowRemainingRequests_capsLimit() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add("x-ratelimit-remaining-requests", "3");
+
+    limiter.onRateLimitHeaders(headers);
+
+    assertEquals(3, limiter.getLimit());
+  }
+
+  @Test
+  void rateLimitHeaders_lowRemainingTokens_backsOff() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add("x-ratelimit-remaining-tokens", "100");
+
+    limiter.onRateLimitHeaders(headers);
+
+    assertEquals(9, limiter.getLimit());
+  }
+
+  @Test
+  void acquire_atLimitWithFullQueue_rejects() {
+    for (int i = 0; i < 10; i++) {
+      limiter.acquire(CallType.AGENT_ANSWER);
+    }
+
+    AiCallException exception = assertThrows(ConcurrencyLimitExceededException.class,
+        () -> limiter.acquire(CallType.AGENT_ANSWER));
+
+    assertFalse(exception.isThrottled(), "A local rejection is not an upstream 429");
+    assertFalse(exception.isRetryable());
+    assertEquals(1.0, meterRegistry.get("azure.openai.limiter.rejections").tag("reason", "queue_full")
+        .counter().count());
+  }
+
+  @Test
+  void acquire_atLimit_waitsThenTimesOut() {
+    AdaptiveConcurrencyLimiter queueing = new AdaptiveConcurrencyLimiter(
+        1, 1, 1, 5, Duration.ofMillis(20), 8000, meterRegistry);
+    queueing.acquire(CallType.AGENT_ANSWER);
+
+    AiCallException exception = assertThrows(ConcurrencyLimitExceededException.class,
+        () -> queueing.acquire(CallType.AGENT_ANSWER));
+
+    assertFalse(exception.isRetryable());
+    assertEquals(0, queueing.getQueueDepth());
+  }
+}
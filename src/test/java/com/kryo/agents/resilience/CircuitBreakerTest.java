@@ -0,0 +1,111 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.CircuitOpenException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private CircuitBreaker breaker;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    breaker = new CircuitBreaker(true, 4, 4, 0.5, Duration.ofSeconds(10), Duration.ofMillis(50), 2,
+        meterRegistry);
+  }
+
+  @Test
+  void opensOnceHalfTheRecentCallsFail() {
+    breaker.acquire().success();
+    breaker.acquire().failure();
+    breaker.acquire().success();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "Below the minimum number of calls");
+
+    breaker.acquire().failure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.isCallPermitted());
+
+    CircuitOpenException rejected = assertThrows(CircuitOpenException.class, breaker::acquire);
+    assertFalse(rejected.isRetryable());
+    assertTrue(rejected.getRetryAfter().orElseThrow().toMillis() <= 50);
+    assertEquals(1, meterRegistry.get("azure.openai.circuit.rejections").counter().count());
+    assertEquals(1, meterRegistry.get("azure.openai.circuit.state").tag("state", "open").gauge().value());
+  }
+
+  @Test
+  void ignoredCallsDoNotCount() {
+    for (int i = 0; i < 10; i++) {
+      breaker.acquire().release();
+    }
+    breaker.acquire().failure();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void closesAfterTheTrialCallsSucceed() throws Exception {
+    open();
+    Thread.sleep(60);
+    assertTrue(breaker.isCallPermitted());
+
+    CircuitBreaker.Permit first = breaker.acquire();
+    CircuitBreaker.Permit second = breaker.acquire();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertThrows(CircuitOpenException.class, breaker::acquire, "Only two trial calls at a time");
+
+    first.success();
+    second.success();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(1, meterRegistry.get("azure.openai.circuit.transitions")
+        .tags("from", "half_open", "to", "closed").counter().count());
+    assertTrue(meterRegistry.get("azure.openai.circuit.degraded.time").functionCounter().count() >= 0.05);
+  }
+
+  @Test
+  void reopensWhenATrialCallFails() throws Exception {
+    open();
+    Thread.sleep(60);
+
+    breaker.acquire().failure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(2, meterRegistry.get("azure.openai.circuit.transitions")
+        .tags("from", "closed", "to", "open").counter().count()
+        + meterRegistry.get("azure.openai.circuit.transitions")
+        .tags("from", "half_open", "to", "open").counter().count());
+  }
+
+  @Test
+  void slowCallsCountAsFailures() {
+    CircuitBreaker slow = new CircuitBreaker(true, 2, 2, 0.5, Duration.ZERO, Duration.ofMinutes(1), 1,
+        meterRegistry);
+    slow.acquire().success();
+    slow.acquire().success();
+    assertEquals(CircuitBreaker.State.OPEN, slow.getState());
+  }
+
+  @Test
+  void timeBeforeTheRequestIsSentIsNotSlow() throws Exception {
+    CircuitBreaker slow = new CircuitBreaker(true, 2, 2, 0.5, Duration.ofMillis(100), Duration.ofMinutes(1), 1,
+        meterRegistry);
+    for (int i = 0; i < 2; i++) {
+      CircuitBreaker.Permit permit = slow.acquire();
+      Thread.sleep(150);
+      permit.sent();
+      permit.success();
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, slow.getState(), "Queueing for a limiter permit is local overload");
+  }
+
+  private void open() {
+    for (int i = 0; i < 4; i++) {
+      breaker.acquire().failure();
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+}
@@ -0,0 +1,78 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.DeadlineExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineTest {
+
+  @Test
+  void interruptsTheTurnWhenTheBudgetRunsOut() {
+    long start = System.nanoTime();
+    try (Deadline deadline = Deadline.after(Duration.ofMillis(100))) {
+      try (Deadline.Scope scope = deadline.enter()) {
+        assertThrows(InterruptedException.class, () -> Thread.sleep(10_000));
+        assertThrows(DeadlineExceededException.class, Deadline::check);
+        assertEquals(0, Deadline.remainingNanos(Long.MAX_VALUE));
+      }
+      assertEquals("deadline exceeded", deadline.reason());
+    }
+
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertFalse(Thread.currentThread().isInterrupted(), "Interrupt must not outlive the turn");
+    assertNull(Deadline.current());
+  }
+
+  @Test
+  void capsStageTimeoutsByTheRemainingBudget() {
+    long cap = TimeUnit.SECONDS.toNanos(5);
+    assertEquals(cap, Deadline.remainingNanos(cap), "No deadline leaves the stage timeout alone");
+
+    try (Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+        Deadline.Scope scope = deadline.enter()) {
+      long remaining = Deadline.remainingNanos(cap);
+      assertTrue(remaining > 0 && remaining <= TimeUnit.SECONDS.toNanos(1), "remaining " + remaining);
+      Deadline.check();
+    }
+  }
+
+  @Test
+  void cancellingStopsPropagatedWorkOnly() throws Exception {
+    try (ExecutorService executor = Executors.newSingleThreadExecutor();
+        Deadline deadline = Deadline.after(Duration.ofMinutes(1))) {
+      CountDownLatch started = new CountDownLatch(1);
+      Supplier<Boolean> work;
+      try (Deadline.Scope scope = deadline.enter()) {
+        work = Deadline.propagate(() -> {
+          started.countDown();
+          try {
+            Thread.sleep(10_000);
+            return false;
+          } catch (InterruptedException e) {
+            return true;
+          }
+        });
+      }
+      CompletableFuture<Boolean> interrupted = CompletableFuture.supplyAsync(work, executor);
+      started.await();
+
+      deadline.cancel("client disconnected");
+
+      assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+      assertFalse(Thread.currentThread().isInterrupted(), "The caller left the turn before it was cancelled");
+      executor.submit(() -> {
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertNull(Deadline.current());
+      }).get();
+    }
+  }
+}
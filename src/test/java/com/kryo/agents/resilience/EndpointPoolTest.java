@@ -0,0 +1,137 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.support.AzureOpenAIStub;
+import com.kryo.agents.support.StubReply;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndpointPoolTest {
+
+  private AzureOpenAIStub east;
+  private AzureOpenAIStub west;
+  private SimpleMeterRegistry meterRegistry;
+  private EndpointPool pool;
+
+  @BeforeEach
+  void setUp() {
+    east = AzureOpenAIStub.start();
+    west = AzureOpenAIStub.start();
+    meterRegistry = new SimpleMeterRegistry();
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("azure.openai.key", "stub-key")
+        .withProperty("azure.openai.deployment-name", "stub-deployment")
+        .withProperty("azure.openai.endpoints[0].name", "east")
+        .withProperty("azure.openai.endpoints[0].url", east.baseUrl())
+        .withProperty("azure.openai.endpoints[1].name", "west")
+        .withProperty("azure.openai.endpoints[1].url", west.baseUrl());
+    pool = new EndpointPool(environment, HttpClient.newHttpClient(), "2024-02-15-preview", true, 2,
+        Duration.ofMillis(50), Duration.ofSeconds(1), Duration.ofHours(1), 8000, 5000, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.shutdown();
+    east.close();
+    west.close();
+  }
+
+  @Test
+  void sendsNewCallsToTheLeastLoadedEndpoint() {
+    EndpointPool.Call first = pool.select(null).start();
+    EndpointPool.Call second = pool.select(null).start();
+
+    assertNotEquals(first.endpoint(), second.endpoint());
+    first.success();
+    second.success();
+  }
+
+  @Test
+  void prefersTheFasterEndpoint() {
+    EndpointPool.Endpoint fast = endpoint("east");
+    EndpointPool.Endpoint slow = endpoint("west");
+    respond(fast, TimeUnit.MILLISECONDS.toNanos(20));
+    respond(slow, TimeUnit.MILLISECONDS.toNanos(400));
+
+    EndpointPool.Call busy = fast.start();
+    assertEquals(fast, pool.select(null), "One call in flight on a 20x faster endpoint is still cheaper");
+    busy.success();
+  }
+
+  @Test
+  void keepsAPromptPrefixOnOneEndpointUntilItIsClearlyBusier() {
+    Set<EndpointPool.Endpoint> homes = new HashSet<>();
+    for (long key = 0; key < 32; key++) {
+      homes.add(pool.select(key));
+    }
+    assertEquals(2, homes.size(), "Different prefixes spread over the endpoints");
+
+    EndpointPool.Endpoint home = pool.select(7L);
+    assertEquals(home, pool.select(7L));
+
+    EndpointPool.Call first = home.start();
+    EndpointPool.Call second = home.start();
+    assertNotEquals(home, pool.select(7L), "Affinity yields once the home endpoint has more than twice the load");
+    first.success();
+    second.success();
+  }
+
+  @Test
+  void ejectsThrottledEndpointsAndRestoresThemAfterAHealthCheck() throws Exception {
+    EndpointPool.Endpoint eastEndpoint = endpoint("east");
+    eastEndpoint.start().failure(new AiCallException("throttled", 429, Duration.ofMillis(10)));
+
+    assertTrue(eastEndpoint.isEjected());
+    for (int i = 0; i < 10; i++) {
+      assertEquals("west", pool.select((long) i).name());
+    }
+
+    east.otherwise(StubReply.error(503));
+    Thread.sleep(60);
+    pool.checkEjected();
+    assertTrue(eastEndpoint.isEjected(), "A failing probe keeps the endpoint out");
+    assertEquals(1, east.requestCount());
+
+    east.otherwise(StubReply.text("pong"));
+    Thread.sleep(120);
+    pool.checkEjected();
+    assertFalse(eastEndpoint.isEjected());
+    assertEquals(1.0, meterRegistry.get("azure.openai.endpoint.in.rotation").tag("endpoint", "east").gauge().value());
+    assertEquals(2.0, meterRegistry.get("azure.openai.endpoint.ejections").tag("endpoint", "east").counters()
+        .stream().mapToDouble(c -> c.count()).sum());
+  }
+
+  @Test
+  void ejectsAfterConsecutiveServerErrorsOnly() {
+    EndpointPool.Endpoint westEndpoint = endpoint("west");
+    westEndpoint.start().failure(new AiCallException("bad request", 400));
+    westEndpoint.start().failure(new AiCallException("server error", 500));
+    assertFalse(westEndpoint.isEjected());
+
+    westEndpoint.start().failure(new AiCallException("server error", 503));
+    assertTrue(westEndpoint.isEjected());
+
+    endpoint("east").start().failure(new AiCallException("throttled", 429));
+    assertNotNull(pool.select(null), "With every endpoint ejected calls still go somewhere");
+  }
+
+  private EndpointPool.Endpoint endpoint(String name) {
+    return pool.endpoints().stream().filter(e -> e.name().equals(name)).findFirst().orElseThrow();
+  }
+
+  private static void respond(EndpointPool.Endpoint endpoint, long rttNanos) {
+    endpoint.recordResponse(rttNanos, new HttpHeaders());
+  }
+}
@@ -0,0 +1,105 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.models.CallType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryExecutorTest {
+
+  private ExecutorService executor;
+  private MockEnvironment environment;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    environment = new MockEnvironment()
+        .withProperty("azure.openai.retry.agent-answer.initial-backoff", "1ms")
+        .withProperty("azure.openai.retry.agent-answer.max-backoff", "5ms");
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  private RetryExecutor retryExecutor() {
+    return new RetryExecutor(environment, executor, new SimpleMeterRegistry());
+  }
+
+  @Test
+  void execute_transientFailure_retriesUntilSuccess() {
+    AtomicInteger calls = new AtomicInteger();
+
+    String result = retryExecutor().execute(CallType.AGENT_ANSWER, () -> {
+      if (calls.incrementAndGet() < 3) {
+        throw new AiCallException("throttled", 429);
+      }
+      return "ok";
+    });
+
+    assertEquals("ok", result);
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  void execute_nonRetryableFailure_failsImmediately() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThrows(AiCallException.class, () -> retryExecutor().execute(CallType.AGENT_ANSWER, () -> {
+      calls.incrementAndGet();
+      throw new AiCallException("bad request", 400);
+    }));
+
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  void execute_retryAfterBeyondLimit_doesNotRetry() {
+    environment.setProperty("azure.openai.retry.agent-answer.max-retry-after", "1s");
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThrows(AiCallException.class, () -> retryExecutor().execute(CallType.AGENT_ANSWER, () -> {
+      calls.incrementAndGet();
+      throw new AiCallException("throttled", 429, Duration.ofSeconds(30));
+    }));
+
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  void execute_budgetExhausted_stopsRetrying() {
+    environment.setProperty("azure.openai.retry.budget-max-tokens", "1");
+    environment.setProperty("azure.openai.retry.budget-ratio", "0");
+    environment.setProperty("azure.openai.retry.agent-answer.max-attempts", "5");
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThrows(AiCallException.class, () -> retryExecutor().execute(CallType.AGENT_ANSWER, () -> {
+      calls.incrementAndGet();
+      throw new AiCallException("unavailable", 503);
+    }));
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void delayBefore_honoursRetryAfter() {
+    RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(50),
+        Duration.ofSeconds(10), false);
+
+    Optional<Duration> delay = policy.delayBefore(2, Optional.of(Duration.ofSeconds(2)));
+
+    assertEquals(Optional.of(Duration.ofSeconds(2)), delay);
+  }
+}
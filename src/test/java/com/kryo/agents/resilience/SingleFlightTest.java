@@ -0,0 +1,191 @@
+package com.kryo.agents.resilience;
+
+import com.kryo.agents.exceptions.AiCallException;
+import com.kryo.agents.exceptions.DeadlineExceededException;
+import com.kryo.agents.models.CallType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+  private ExecutorService executor;
+  private SimpleMeterRegistry meterRegistry;
+  private SingleFlight singleFlight;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    meterRegistry = new SimpleMeterRegistry();
+    singleFlight = new SingleFlight(true, executor, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.close();
+  }
+
+  @Test
+  void execute_concurrentIdenticalKeys_shareOneCall() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+
+    List<Future<String>> callers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      callers.add(executor.submit(() -> singleFlight.execute("key", () -> {
+        calls.incrementAndGet();
+        await(release);
+        return "answer";
+      })));
+    }
+    waitForFollowers(4);
+    release.countDown();
+
+    for (Future<String> caller : callers) {
+      assertEquals("answer", caller.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, calls.get());
+    assertEquals(0, singleFlight.inFlight());
+  }
+
+  @Test
+  void execute_sharedCallFails_everyWaiterSeesFailure() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+
+    List<Future<String>> callers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      callers.add(executor.submit(() -> singleFlight.<String>execute("key", () -> {
+        await(release);
+        throw new AiCallException("unavailable", 503);
+      })));
+    }
+    waitForFollowers(2);
+    release.countDown();
+
+    for (Future<String> caller : callers) {
+      ExecutionException e = assertThrows(ExecutionException.class, () -> caller.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(AiCallException.class, e.getCause());
+      assertEquals(503, ((AiCallException) e.getCause()).getStatusCode());
+    }
+  }
+
+  @Test
+  void execute_oneWaiterCancelled_othersStillGetResult() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+
+    Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+      started.countDown();
+      await(release);
+      return "answer";
+    }));
+    started.await();
+    Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "unused"));
+    waitForFollowers(1);
+
+    leader.cancel(true);
+    release.countDown();
+
+    assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void execute_allWaitersCancelled_interruptsSharedCall() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    Future<String> caller = executor.submit(() -> singleFlight.execute("key", () -> {
+      started.countDown();
+      try {
+        Thread.sleep(10_000);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return "late";
+    }));
+    started.await();
+    caller.cancel(true);
+
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    assertEquals(0, singleFlight.inFlight());
+    assertEquals(1.0, meterRegistry.get("azure.openai.singleflight.abandoned").counter().count());
+  }
+
+  @Test
+  void execute_firstCallersDeadlineCancelled_followerStillGetsResult() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+    Deadline first = Deadline.after(Duration.ofMinutes(1));
+
+    Future<String> leader = executor.submit(() -> {
+      try (Deadline.Scope scope = first.enter()) {
+        return singleFlight.execute("key", () -> {
+          started.countDown();
+          await(release);
+          return "answer";
+        });
+      }
+    });
+    started.await();
+    Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "unused"));
+    waitForFollowers(1);
+
+    first.cancel("client disconnected");
+    ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(DeadlineExceededException.class, e.getCause());
+    release.countDown();
+
+    assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+    first.close();
+  }
+
+  @Test
+  void execute_lastWaitersDeadlinePasses_abandonsSharedCallBeforeItsRetry() throws Exception {
+    RetryExecutor retryExecutor = new RetryExecutor(new MockEnvironment(), executor, meterRegistry);
+    AtomicInteger calls = new AtomicInteger();
+
+    try (Deadline deadline = Deadline.after(Duration.ofMillis(100)); Deadline.Scope scope = deadline.enter()) {
+      assertThrows(DeadlineExceededException.class, () -> singleFlight.execute("key",
+          () -> retryExecutor.execute(CallType.AGENT_ANSWER, () -> {
+            calls.incrementAndGet();
+            throw new AiCallException("throttled", 429, Duration.ofMillis(300));
+          })));
+    }
+    Thread.sleep(500);
+
+    assertEquals(1, calls.get());
+    assertEquals(1.0, meterRegistry.get("azure.openai.singleflight.abandoned").counter().count());
+  }
+
+  private void waitForFollowers(int expected) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (meterRegistry.get("azure.openai.singleflight.calls").tag("role", "follower").counter().count() < expected
+        && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AiCallException("interrupted", e);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.kryo.agents.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long NOW = 1_000 * SECOND;
+
+  private UserRateLimiter limiter(double requestsPerSecond, int burst, long tokensPerMinute, int maxUsers) {
+    return new UserRateLimiter(true, requestsPerSecond, burst, tokensPerMinute, maxUsers, new SimpleMeterRegistry());
+  }
+
+  @Test
+  void allowsBurstThenRejectsWithRetryAfter() {
+    UserRateLimiter limiter = limiter(1, 3, 0, 100);
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(limiter.tryAcquire("alice", NOW).allowed());
+    }
+    UserRateLimiter.Decision rejected = limiter.tryAcquire("alice", NOW);
+
+    assertFalse(rejected.allowed());
+    assertEquals("requests", rejected.limit());
+    assertEquals(Duration.ofSeconds(1), rejected.retryAfter());
+    assertTrue(limiter.tryAcquire("bob", NOW).allowed(), "Limits are per user");
+    assertTrue(limiter.tryAcquire("alice", NOW + SECOND).allowed(), "One request refills per second");
+  }
+
+  @Test
+  void chargedTokensBlockUntilTheDebtDrains() {
+    UserRateLimiter limiter = limiter(0, 1, 600, 100);
+
+    limiter.charge("alice", 600, NOW);
+    assertTrue(limiter.tryAcquire("alice", NOW).allowed(), "A full minute of tokens may be spent at once");
+
+    limiter.charge("alice", 300, NOW);
+    UserRateLimiter.Decision rejected = limiter.tryAcquire("alice", NOW);
+    assertFalse(rejected.allowed());
+    assertEquals("tokens", rejected.limit());
+    assertEquals(Duration.ofSeconds(30), rejected.retryAfter());
+
+    assertTrue(limiter.tryAcquire("alice", NOW + 30 * SECOND).allowed());
+  }
+
+  @Test
+  void listsThrottledUsersLongestWaitFirst() {
+    UserRateLimiter limiter = limiter(1, 1, 60, 100);
+    limiter.tryAcquire("alice", NOW);
+    limiter.tryAcquire("alice", NOW);
+    limiter.charge("bob", 120, NOW);
+    limiter.tryAcquire("bob", NOW);
+    limiter.tryAcquire("carol", NOW);
+
+    List<UserRateLimiter.Throttled> throttled = limiter.throttledUsers(10, NOW);
+
+    assertEquals(List.of("bob", "alice"), throttled.stream().map(UserRateLimiter.Throttled::userId).toList());
+    assertEquals("tokens", throttled.get(0).limit());
+    assertTrue(limiter.throttledUsers(10, NOW + 61 * SECOND).isEmpty());
+  }
+
+  @Test
+  void staysBoundedWithManyDistinctUsers() {
+    UserRateLimiter limiter = limiter(1, 1, 0, 1_000);
+
+    for (int i = 0; i < 50_000; i++) {
+      limiter.tryAcquire("user-" + i, NOW);
+    }
+
+    assertTrue(limiter.trackedUsers() <= 1_000, "tracked " + limiter.trackedUsers());
+  }
+
+  @Test
+  void concurrentAcquiresNeverExceedTheBurst() throws Exception {
+    UserRateLimiter limiter = limiter(1, 50, 0, 100);
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      List<CompletableFuture<Integer>> workers = IntStream.range(0, 8)
+          .mapToObj(w -> CompletableFuture.supplyAsync(() -> {
+            int allowed = 0;
+            for (int i = 0; i < 100; i++) {
+              if (limiter.tryAcquire("alice", NOW).allowed()) {
+                allowed++;
+              }
+            }
+            return allowed;
+          }, executor))
+          .toList();
+
+      int total = 0;
+      for (CompletableFuture<Integer> worker : workers) {
+        total += worker.get();
+      }
+      assertEquals(50, total);
+    }
+  }
+
+  @Test
+  void usageTallyFollowsPropagatedWork() throws Exception {
+    try (ExecutorService executor = Executors.newSingleThreadExecutor();
+        UsageTally tally = UsageTally.open()) {
+      Supplier<Object> work = UsageTally.propagate(() -> {
+        UsageTally.current().add(42);
+        return null;
+      });
+      executor.submit(work::get).get();
+      executor.submit(() -> assertNull(UsageTally.current())).get();
+
+      assertEquals(42, tally.tokens());
+    }
+    assertNull(UsageTally.current());
+  }
+}
@@ -0,0 +1,64 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25IndexTest {
+
+  private static final List<DocumentChunk> CHUNKS = List.of(
+      new DocumentChunk("faq.md", "Billing", "Invoices are sent monthly."),
+      new DocumentChunk("troubleshooting.md", "Errors", "A 503 error means the service is overloaded. Retry the 503 later."),
+      new DocumentChunk("setup.md", "Configuration", "Set the API key in the configuration file."),
+      new DocumentChunk("setup.md", "Errors", "Every error is logged, including timeouts, network issues, disk failures,"
+          + " permission problems and any other error we could think of while writing this rather long section."));
+
+  private final Bm25Index index = Bm25Index.build(CHUNKS);
+
+  @Test
+  void analyzesLikeTheQueryNormalizer() {
+    assertEquals(List.of("retry", "request", "fail", "api", "key", "configur", "ss"),
+        TextAnalyzer.terms("Retrying requests FAILED: api-key configured?! ss"));
+  }
+
+  @Test
+  void ranksRareTermsAndShortChunksFirst() {
+    int[] ranked = index.search("503 error", 5);
+
+    assertEquals(2, ranked.length);
+    assertEquals("troubleshooting.md", index.chunk(ranked[0]).source(),
+        "Matching both terms beats repeating one of them in a long chunk");
+    assertEquals(3, ranked[1]);
+  }
+
+  @Test
+  void matchesPrefixesAtHalfWeight() {
+    assertArrayEquals(new int[] {2}, index.search("config file", 5), "'config' finds 'configuration'");
+    assertArrayEquals(new int[0], index.search("config", 5), "One prefix match alone is too weak");
+    assertArrayEquals(new int[] {0}, index.search("invo mont", 5));
+    assertArrayEquals(new int[0], index.search("potato salad recipe", 5));
+  }
+
+  @Test
+  void keepsOnlyTheTopKInLoadOrderOnTies() {
+    List<DocumentChunk> chunks = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      chunks.add(new DocumentChunk("doc-" + i + ".md", "Section", i % 10 == 0 ? "webhook retries" : "webhook events"));
+    }
+    Bm25Index large = Bm25Index.build(chunks);
+
+    assertArrayEquals(new int[] {0, 10, 20, 30, 40}, large.search("webhook retries", 5));
+    assertArrayEquals(new int[] {0, 1, 2}, large.search("webhook", 3));
+  }
+
+  @Test
+  void ignoresShortAndEmptyQueries() {
+    assertEquals(0, index.search("", 5).length);
+    assertEquals(0, index.search("is a to", 5).length);
+    assertEquals(0, Bm25Index.EMPTY.search("error", 5).length);
+  }
+}
@@ -0,0 +1,86 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCacheTest {
+
+  private static final List<DocumentChunk> CHUNKS = List.of(
+      new DocumentChunk("setup.md", "Configuration", "Set the API key in the configuration file."),
+      new DocumentChunk("errors.md", "Overload", "A 503 error means the service is overloaded."));
+
+  private final List<String> embedded = new ArrayList<>();
+  private final Embedder counting = new Embedder() {
+    private final HashingEmbedder delegate = new HashingEmbedder(64);
+
+    @Override
+    public String model() {
+      return delegate.model();
+    }
+
+    @Override
+    public float[][] embed(List<String> texts) {
+      embedded.addAll(texts);
+      return delegate.embed(texts);
+    }
+  };
+
+  @Test
+  void embedsEachTextOnceAcrossRestarts(@TempDir Path directory) throws IOException {
+    HnswIndex first = new DenseIndexer(counting, EmbeddingCache.open(directory, counting.model()), false)
+        .index(CHUNKS);
+    assertEquals(2, embedded.size());
+
+    List<DocumentChunk> changed = List.of(CHUNKS.get(0),
+        new DocumentChunk("errors.md", "Overload", "A 503 error means too many requests."));
+    EmbeddingCache reopened = EmbeddingCache.open(directory, counting.model());
+    HnswIndex second = new DenseIndexer(counting, reopened, false).index(changed);
+
+    assertEquals(3, embedded.size(), "Only the changed chunk is embedded again");
+    assertEquals(3, reopened.size());
+    float[] query = new DenseIndexer(counting, reopened, false).embedQuery("api key configuration");
+    assertEquals(first.search(query, 1, 10)[0], second.search(query, 1, 10)[0]);
+  }
+
+  @Test
+  void dropsARecordTornByACrash(@TempDir Path directory) throws IOException {
+    new DenseIndexer(counting, EmbeddingCache.open(directory, counting.model()), false).index(CHUNKS);
+    Path file = Files.list(directory).findFirst().orElseThrow();
+    long complete = Files.size(file);
+    byte[] torn = new byte[44];
+    torn[32] = 64;
+    Files.write(file, torn, StandardOpenOption.APPEND);
+
+    EmbeddingCache reopened = EmbeddingCache.open(directory, counting.model());
+
+    assertEquals(2, reopened.size());
+    assertEquals(complete, Files.size(file), "The torn tail is cut off so new records line up");
+  }
+
+  @Test
+  void keepsIndexingWhenTheEmbedderFails() {
+    Embedder failing = new Embedder() {
+      @Override
+      public String model() {
+        return "failing";
+      }
+
+      @Override
+      public float[][] embed(List<String> texts) {
+        throw new IllegalStateException("embeddings endpoint is down");
+      }
+    };
+
+    assertNull(new DenseIndexer(failing, EmbeddingCache.inMemory(), false).index(CHUNKS));
+  }
+}
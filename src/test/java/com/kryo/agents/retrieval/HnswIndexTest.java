@@ -0,0 +1,110 @@
+package com.kryo.agents.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+  private static final int DIMENSIONS = 32;
+  private static final float[][] VECTORS = randomVectors(3000, 1);
+  private static final float[][] QUERIES = randomVectors(100, 2);
+
+  @Test
+  void findsNearlyAllExactNeighbours() {
+    for (boolean quantize : new boolean[] {false, true}) {
+      HnswIndex index = HnswIndex.build(VectorStore.of(VECTORS, quantize), 16, 100, 42);
+
+      double recall = recallAt10(index, 64);
+
+      assertTrue(recall >= 0.9, (quantize ? "int8" : "float") + " recall@10 was " + recall);
+      assertTrue(recall > recallAt10(index, 10) - 1e-9, "A wider search is at least as accurate");
+    }
+  }
+
+  @Test
+  void neverReturnsDeletedOrDissimilarNodes() {
+    HnswIndex index = HnswIndex.build(VectorStore.of(VECTORS, false), 16, 100, 42);
+    int[] nearest = index.exactSearch(QUERIES[0], 10);
+    BitSet deleted = new BitSet();
+    for (int i = 0; i < 5; i++) {
+      deleted.set(nearest[i]);
+    }
+
+    TopK top = new TopK(10);
+    index.search(QUERIES[0], 10, 64, -1, deleted, 1000, top);
+    int[] found = top.drain();
+
+    assertEquals(10, found.length, "Deleted nodes do not use up result slots");
+    for (int doc : found) {
+      assertTrue(doc >= 1000 && !deleted.get(doc - 1000));
+    }
+    TopK similar = new TopK(10);
+    index.search(QUERIES[0], 10, 64, 2, null, 0, similar);
+    assertEquals(0, similar.size(), "No unit vectors are more similar than 1");
+  }
+
+  @Test
+  void servesConcurrentSearchesWithoutLocking() throws Exception {
+    HnswIndex index = HnswIndex.build(VectorStore.of(VECTORS, true), 16, 100, 42);
+    int[][] expected = new int[QUERIES.length][];
+    for (int q = 0; q < QUERIES.length; q++) {
+      expected[q] = index.search(QUERIES[q], 10, 64);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        results.add(pool.submit(() -> {
+          for (int q = 0; q < QUERIES.length; q++) {
+            if (!Arrays.equals(expected[q], index.search(QUERIES[q], 10, 64))) {
+              return false;
+            }
+          }
+          return true;
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static double recallAt10(HnswIndex index, int ef) {
+    int found = 0;
+    for (float[] query : QUERIES) {
+      int[] exact = index.exactSearch(query, 10);
+      int[] approximate = index.search(query, 10, ef);
+      for (int doc : approximate) {
+        if (Arrays.stream(exact).anyMatch(e -> e == doc)) {
+          found++;
+        }
+      }
+    }
+    return found / (10.0 * QUERIES.length);
+  }
+
+  private static float[][] randomVectors(int count, long seed) {
+    Random random = new Random(seed);
+    float[][] vectors = new float[count][DIMENSIONS];
+    for (float[] vector : vectors) {
+      for (int i = 0; i < DIMENSIONS; i++) {
+        vector[i] = (float) random.nextGaussian();
+      }
+      VectorStore.normalize(vector);
+    }
+    return vectors;
+  }
+}
@@ -0,0 +1,66 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexFileTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void mappedIndexAnswersLikeTheOneItWasWrittenFrom() throws IOException {
+    List<DocumentChunk> chunks = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      chunks.add(new DocumentChunk("guide-" + (i / 20) + ".md", "Section " + i,
+          (i % 7 == 0 ? "Webhook retries back off — see “Retry-After”. " : "Configure the endpoint. ") + "Token " + i));
+    }
+    Bm25Index built = Bm25Index.build(chunks);
+    Path path = directory.resolve("retrieval.idx");
+
+    IndexFile.write(built, 42L, path);
+    Bm25Index mapped = IndexFile.open(path, 42L).orElseThrow();
+
+    assertEquals(built.size(), mapped.size());
+    assertEquals(built.termCount(), mapped.termCount());
+    for (String query : List.of("webhook retries", "configure endpoint", "token 133", "config", "nothing here")) {
+      assertArrayEquals(built.search(query, 5), mapped.search(query, 5), query);
+    }
+    assertEquals(chunks.get(14), mapped.chunk(14), "Chunk text survives the round trip, non-ASCII included");
+    assertEquals(chunks, mapped.chunks());
+  }
+
+  @Test
+  void ignoresIndexesBuiltFromOtherSources() throws IOException {
+    Path path = directory.resolve("retrieval.idx");
+    IndexFile.write(Bm25Index.build(List.of(new DocumentChunk("a.md", "A", "alpha"))), 1L, path);
+
+    assertEquals(Optional.empty(), IndexFile.open(path, 2L));
+    assertEquals(Optional.empty(), IndexFile.open(directory.resolve("missing.idx"), 1L));
+  }
+
+  @Test
+  void rejectsTruncatedSections() throws IOException {
+    Path path = directory.resolve("retrieval.idx");
+    IndexFile.write(Bm25Index.build(List.of(new DocumentChunk("a.md", "A", "alpha beta gamma"))), 1L, path);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      // Grow the first section's length past the end of the file.
+      channel.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, 1L << 20), 24 + 8);
+    }
+
+    assertThrows(IOException.class, () -> IndexFile.open(path, 1L));
+  }
+}
@@ -0,0 +1,119 @@
+package com.kryo.agents.retrieval;
+
+import com.kryo.agents.models.DocumentChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSnapshotTest {
+
+  private static final List<DocumentChunk> FAQ = List.of(
+      new DocumentChunk("faq.md", "Billing", "Invoices are sent monthly by email."),
+      new DocumentChunk("faq.md", "Refunds", "Refunds take five business days."));
+  private static final List<DocumentChunk> SETUP = List.of(
+      new DocumentChunk("setup.md", "Configuration", "Set the API key in the configuration file."),
+      new DocumentChunk("setup.md", "Webhooks", "Webhook deliveries are retried for a day."));
+  private static final List<DocumentChunk> ERRORS = List.of(
+      new DocumentChunk("errors.md", "Timeouts", "A 504 error means the upstream timed out. Retry the request."),
+      new DocumentChunk("errors.md", "Overload", "A 503 error means the service is overloaded."));
+
+  private static final List<String> QUERIES = List.of("503 error", "api key configuration", "refunds invoices",
+      "webhook retries", "error timeout request", "config file");
+
+  @Test
+  void updatesMatchAFullRebuildOfTheSameDocs() {
+    IndexSnapshot snapshot = IndexSnapshot.of(Bm25Index.build(concat(FAQ, SETUP, ERRORS)));
+
+    List<DocumentChunk> newSetup = List.of(
+        new DocumentChunk("setup.md", "Configuration", "Keys now live in the vault, not a configuration file."));
+    List<DocumentChunk> newErrors = List.of(
+        new DocumentChunk("errors.md", "Overload", "A 503 error means too many requests. Retry with backoff."));
+    IndexSnapshot updated = snapshot.update(Map.of("setup.md", newSetup), Set.of("faq.md"))
+        .update(Map.of("errors.md", newErrors), Set.of());
+
+    assertEquals(3, updated.version());
+    assertEquals(2, updated.size());
+    assertEquals(2, updated.segmentCount(), "The base keeps no live chunks and is dropped");
+    assertSameResults(IndexSnapshot.of(Bm25Index.build(concat(newSetup, newErrors))), updated);
+    assertEquals(1, snapshot.version(), "Earlier snapshots are left as they were");
+    assertEquals(6, snapshot.size());
+  }
+
+  @Test
+  void scoresDeletedBaseChunksAsIfTheyWereGone() {
+    IndexSnapshot snapshot = IndexSnapshot.of(Bm25Index.build(concat(FAQ, SETUP, ERRORS)));
+    List<DocumentChunk> newFaq = List.of(new DocumentChunk("faq.md", "Errors", "Every error is logged."));
+
+    IndexSnapshot updated = snapshot.update(Map.of("faq.md", newFaq), Set.of());
+
+    assertEquals(2, updated.segmentCount());
+    assertEquals(5, updated.size());
+    assertSameResults(IndexSnapshot.of(Bm25Index.build(concat(SETUP, ERRORS, newFaq))), updated);
+  }
+
+  @Test
+  void mergesSegmentsOnceThereAreTooMany() {
+    IndexSnapshot snapshot = IndexSnapshot.of(Bm25Index.build(concat(FAQ, SETUP, ERRORS)));
+    List<DocumentChunk> all = new ArrayList<>(concat(FAQ, SETUP, ERRORS));
+    for (int i = 0; i < IndexSnapshot.MAX_SEGMENTS; i++) {
+      List<DocumentChunk> file = List.of(new DocumentChunk("doc-" + i + ".md", "Section", "webhook event " + i));
+      all.addAll(file);
+      snapshot = snapshot.update(Map.of("doc-" + i + ".md", file), Set.of());
+    }
+
+    assertEquals(1, snapshot.segmentCount());
+    assertEquals(IndexSnapshot.MAX_SEGMENTS + 1, snapshot.version());
+    assertEquals(new HashSet<>(all), new HashSet<>(snapshot.chunks()));
+    assertSameResults(IndexSnapshot.of(Bm25Index.build(all)), snapshot);
+  }
+
+  @Test
+  void shardedSearchMatchesSequentialRanking() {
+    List<DocumentChunk> base = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      List<DocumentChunk> file = i % 3 == 0 ? ERRORS : i % 3 == 1 ? SETUP : FAQ;
+      DocumentChunk chunk = file.get(i % 2);
+      base.add(new DocumentChunk("doc-" + i % 7 + ".md", chunk.header(), chunk.content() + " request " + i));
+    }
+    IndexSnapshot snapshot = IndexSnapshot.of(Bm25Index.build(base))
+        .update(Map.of("doc-3.md", SETUP, "errors.md", ERRORS), Set.of("doc-5.md"));
+
+    try (ShardedSearch sharded = new ShardedSearch(4, 1); ShardedSearch adaptive = new ShardedSearch(4, 1000)) {
+      assertEquals(4, sharded.shardsFor(1000));
+      assertEquals(1, adaptive.shardsFor(999), "Too little work to split");
+      assertEquals(2, adaptive.shardsFor(2500));
+      for (String query : QUERIES) {
+        assertArrayEquals(snapshot.search(query, 10), snapshot.search(query, 10, sharded), query);
+      }
+    }
+  }
+
+  private static void assertSameResults(IndexSnapshot expected, IndexSnapshot actual) {
+    for (String query : QUERIES) {
+      assertEquals(chunks(expected, expected.search(query, 5)), chunks(actual, actual.search(query, 5)), query);
+    }
+  }
+
+  private static List<DocumentChunk> chunks(IndexSnapshot snapshot, int[] ids) {
+    List<DocumentChunk> chunks = new ArrayList<>();
+    for (int id : ids) {
+      chunks.add(snapshot.chunk(id));
+    }
+    return chunks;
+  }
+
+  @SafeVarargs
+  private static List<DocumentChunk> concat(List<DocumentChunk>... files) {
+    List<DocumentChunk> chunks = new ArrayList<>();
+    for (List<DocumentChunk> file : files) {
+      chunks.addAll(file);
+    }
+    return chunks;
+  }
+}
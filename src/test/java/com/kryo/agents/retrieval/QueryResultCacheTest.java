@@ -0,0 +1,59 @@
+package com.kryo.agents.retrieval;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResultCacheTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private QueryResultCache cache;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    cache = new QueryResultCache(2, meterRegistry);
+  }
+
+  @Test
+  void keysQueriesByTheirAnalyzedTerms() {
+    assertEquals(QueryResultCache.key("api key not working"), QueryResultCache.key("API key not working?"));
+    assertNotEquals(QueryResultCache.key("api key not working"), QueryResultCache.key("api key working"));
+    assertNull(QueryResultCache.key("?!"));
+    assertNull(QueryResultCache.key("error ".repeat(QueryResultCache.MAX_KEY_LENGTH)));
+  }
+
+  @Test
+  void evictsTheLeastFrequentlyUsedEntry() {
+    cache.put(1, "a", new int[] {1});
+    cache.put(1, "b", new int[] {2});
+    cache.get(1, "a");
+    cache.get(1, "a");
+    cache.get(1, "b");
+    cache.put(1, "c", new int[] {3});
+
+    assertArrayEquals(new int[] {1}, cache.get(1, "a"));
+    assertNull(cache.get(1, "b"));
+    assertArrayEquals(new int[] {3}, cache.get(1, "c"));
+    assertEquals(1.0, meterRegistry.get("retrieval.cache.evictions").tag("cause", "size").counter().count());
+    assertEquals(5.0 / 6, meterRegistry.get("retrieval.cache.hit.ratio").gauge().value(), 1e-9);
+  }
+
+  @Test
+  void dropsEveryEntryOnceTheIndexVersionChanges() {
+    cache.put(1, "a", new int[] {1});
+    cache.put(1, "b", new int[] {2});
+
+    assertNull(cache.get(2, "a"));
+    assertEquals(0, cache.size());
+    assertEquals(2.0, meterRegistry.get("retrieval.cache.evictions").tag("cause", "invalidated").counter().count());
+
+    cache.put(1, "a", new int[] {1});
+    assertEquals(0, cache.size(), "Results ranked on a replaced version are not cached");
+    cache.put(2, "a", new int[] {5});
+    assertNull(cache.get(1, "a"), "Queries on a replaced version do not read newer results");
+    assertArrayEquals(new int[] {5}, cache.get(2, "a"));
+  }
+}
@@ -0,0 +1,144 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.Role;
+import com.kryo.agents.resilience.UsageTally;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassificationBatcherTest {
+
+  private ExecutorService executor;
+  private SimpleMeterRegistry meterRegistry;
+  private ClassificationBatcher batcher;
+
+  private final AtomicInteger batchCalls = new AtomicInteger();
+  private final AtomicInteger singleCalls = new AtomicInteger();
+  private final Function<List<ChatMessage>, String> singleCall = history -> {
+    singleCalls.incrementAndGet();
+    return "single:" + history.get(0).content();
+  };
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    meterRegistry = new SimpleMeterRegistry();
+    batcher = new ClassificationBatcher(true, 3, Duration.ofMillis(20), executor, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    batcher.shutdown();
+    executor.close();
+  }
+
+  @Test
+  void submit_fullBatch_sendsOneCallAndCompletesEachItemInOrder() throws Exception {
+    Function<List<List<ChatMessage>>, List<String>> batchCall = histories -> {
+      batchCalls.incrementAndGet();
+      return histories.stream().map(history -> "batch:" + history.get(0).content()).toList();
+    };
+
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      results.add(batcher.submit(history("m" + i), batchCall, singleCall));
+    }
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("batch:m" + i, results.get(i).get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, batchCalls.get());
+    assertEquals(0, singleCalls.get());
+    assertEquals(3.0, meterRegistry.get("azure.openai.classification.batch.size").summary().max());
+  }
+
+  @Test
+  void submit_lingerExpires_sendsPartialBatch() throws Exception {
+    CompletableFuture<String> result = batcher.submit(history("alone"), histories -> {
+      batchCalls.incrementAndGet();
+      return List.of();
+    }, singleCall);
+
+    assertEquals("single:alone", result.get(5, TimeUnit.SECONDS));
+    assertEquals(0, batchCalls.get());
+  }
+
+  @Test
+  void submit_unparseableBatchAnswer_fallsBackPerItem() throws Exception {
+    Function<List<List<ChatMessage>>, List<String>> batchCall = histories -> {
+      batchCalls.incrementAndGet();
+      return null;
+    };
+
+    CompletableFuture<String> first = batcher.submit(history("a"), batchCall, singleCall);
+    CompletableFuture<String> second = batcher.submit(history("b"), batchCall, singleCall);
+
+    assertEquals("single:a", first.get(5, TimeUnit.SECONDS));
+    assertEquals("single:b", second.get(5, TimeUnit.SECONDS));
+    assertEquals(1, batchCalls.get());
+    assertEquals(2, singleCalls.get());
+    assertEquals(1.0, meterRegistry.get("azure.openai.classification.batch.fallbacks").counter().count());
+  }
+
+  @Test
+  void submit_batchCallFails_failsEveryItem() {
+    Function<List<List<ChatMessage>>, List<String>> batchCall = histories -> {
+      throw new IllegalStateException("upstream down");
+    };
+
+    CompletableFuture<String> first = batcher.submit(history("a"), batchCall, singleCall);
+    CompletableFuture<String> second = batcher.submit(history("b"), batchCall, singleCall);
+
+    assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+    assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+    assertEquals(0, singleCalls.get());
+  }
+
+  @Test
+  void submit_chargesTokensToTheSubmittingTurns() throws Exception {
+    Function<List<List<ChatMessage>>, List<String>> batchCall = histories -> {
+      UsageTally.current().add(7);
+      return histories.stream().map(history -> "batch").toList();
+    };
+
+    List<UsageTally> tallies = new ArrayList<>();
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      try (UsageTally tally = UsageTally.open()) {
+        tallies.add(tally);
+        results.add(batcher.submit(history("m" + i), batchCall, singleCall));
+      }
+    }
+    for (CompletableFuture<String> result : results) {
+      result.get(5, TimeUnit.SECONDS);
+    }
+    assertEquals(7, tallies.stream().mapToLong(UsageTally::tokens).sum());
+    assertEquals(3, tallies.get(0).tokens());
+
+    try (UsageTally alone = UsageTally.open()) {
+      batcher.submit(history("alone"), batchCall, history -> {
+        UsageTally.current().add(5);
+        return "single";
+      }).get(5, TimeUnit.SECONDS);
+      assertEquals(5, alone.tokens());
+    }
+  }
+
+  private static List<ChatMessage> history(String message) {
+    return List.of(new ChatMessage(Role.USER, message));
+  }
+}
@@ -0,0 +1,99 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.models.CallType;
+import com.kryo.agents.models.ChatMessage;
+import com.kryo.agents.models.Role;
+import com.kryo.agents.models.openai.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextAssemblerTest {
+
+  private static final TokenEstimator TOKEN_ESTIMATOR = new TokenEstimator("o200k_base");
+
+  private SimpleMeterRegistry meterRegistry;
+  private ContextAssembler assembler;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("azure.openai.context.agent-answer.total-tokens", "400")
+        .withProperty("azure.openai.context.agent-answer.min-completion-tokens", "100")
+        .withProperty("azure.openai.context.agent-answer.max-completion-tokens", "200")
+        .withProperty("azure.openai.context.agent-answer.max-message-tokens", "120");
+    assembler = new ContextAssembler(environment, TOKEN_ESTIMATOR, meterRegistry);
+  }
+
+  @Test
+  void assemble_historyWithinBudget_keepsEverything() {
+    List<ChatMessage> history = List.of(
+        new ChatMessage(Role.USER, "hi"),
+        new ChatMessage(Role.ASSISTANT, "Hello! How can I help?"),
+        new ChatMessage(Role.USER, "What does a 429 error mean?"));
+
+    List<Message> messages = assembler.assemble(CallType.AGENT_ANSWER, List.of(Message.system("system")), history);
+
+    assertEquals(4, messages.size());
+    assertEquals("system", messages.get(0).content());
+    assertEquals("What does a 429 error mean?", messages.get(3).content());
+  }
+
+  @Test
+  void assemble_withContext_keepsStaticPrefixFirstAndContextBeforeLatestMessage() {
+    List<ChatMessage> history = List.of(
+        new ChatMessage(Role.USER, "hi"),
+        new ChatMessage(Role.ASSISTANT, "Hello! How can I help?"),
+        new ChatMessage(Role.USER, "What does a 429 error mean?"));
+
+    List<Message> messages = assembler.assemble(CallType.AGENT_ANSWER, List.of(Message.system("system")), history,
+        List.of(Message.system("Context: rate limits")));
+
+    assertEquals(List.of("system", "hi", "Hello! How can I help?", "Context: rate limits", "What does a 429 error mean?"),
+        messages.stream().map(Message::content).toList());
+  }
+
+  @Test
+  void assemble_longHistory_dropsOldestFirstAndStaysInBudget() {
+    List<ChatMessage> history = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      history.add(new ChatMessage(i % 2 == 0 ? Role.USER : Role.ASSISTANT, "message number " + i + " about billing"));
+    }
+
+    List<Message> messages = assembler.assemble(CallType.AGENT_ANSWER, List.of(Message.system("system")), history);
+
+    assertTrue(messages.size() < 41);
+    assertEquals("message number 39 about billing", messages.get(messages.size() - 1).content());
+    assertTrue(TOKEN_ESTIMATOR.count(messages) <= assembler.budget(CallType.AGENT_ANSWER).promptTokens());
+    assertTrue(meterRegistry.get("azure.openai.prompt.messages").tag("outcome", "dropped").counter().count() > 0);
+  }
+
+  @Test
+  void assemble_oversizedLatestMessage_isTruncatedNotDropped() {
+    List<ChatMessage> history = List.of(new ChatMessage(Role.USER, "word ".repeat(2000)));
+
+    List<Message> messages = assembler.assemble(CallType.AGENT_ANSWER, List.of(Message.system("system")), history);
+
+    assertEquals(2, messages.size());
+    assertTrue(TOKEN_ESTIMATOR.count(messages.get(1).content()) <= 130);
+    assertTrue(meterRegistry.get("azure.openai.prompt.tokens").tag("stage", "untrimmed").summary().max()
+        > meterRegistry.get("azure.openai.prompt.tokens").tag("stage", "trimmed").summary().max());
+  }
+
+  @Test
+  void maxTokens_sizedFromRemainingBudget() {
+    List<Message> small = List.of(Message.user("hi"));
+    List<Message> large = List.of(Message.user("word ".repeat(250)));
+
+    assertEquals(200, assembler.maxTokens(CallType.AGENT_ANSWER, small));
+    int remaining = assembler.maxTokens(CallType.AGENT_ANSWER, large);
+    assertTrue(remaining >= 100 && remaining < 200);
+  }
+}
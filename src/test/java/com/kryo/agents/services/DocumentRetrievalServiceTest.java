@@ -1,14 +1,22 @@
 package com.kryo.agents.services;
 
 import com.kryo.agents.models.DocumentChunk;
+import com.kryo.agents.retrieval.HashingEmbedder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,7 +26,7 @@ class DocumentRetrievalServiceTest {
 
   @BeforeEach
   void setUp() {
-    retrievalService = new DocumentRetrievalService();
+    retrievalService = new DocumentRetrievalService(new SimpleMeterRegistry(), new HashingEmbedder(256));
     retrievalService.init();
   }
 
@@ -60,4 +68,96 @@ class DocumentRetrievalServiceTest {
     List<DocumentChunk> results = retrievalService.retrieveDocuments("");
     assertTrue(results.isEmpty());
   }
+
+  @Test
+  void persistsTheIndexOnFirstBootAndMapsItAfterwards(@TempDir Path directory) throws IOException {
+    Path indexFile = directory.resolve("retrieval.idx");
+    DocumentRetrievalService firstBoot =
+        new DocumentRetrievalService(new SimpleMeterRegistry(), new HashingEmbedder(256));
+    ReflectionTestUtils.setField(firstBoot, "indexFile", indexFile.toString());
+    firstBoot.init();
+    assertTrue(Files.size(indexFile) > 0);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    DocumentRetrievalService secondBoot = new DocumentRetrievalService(meterRegistry, new HashingEmbedder(256));
+    ReflectionTestUtils.setField(secondBoot, "indexFile", indexFile.toString());
+    secondBoot.init();
+
+    assertEquals(1, meterRegistry.get("retrieval.index.load").tag("source", "mapped").timer().count());
+    for (String query : List.of("503 error", "api key configuration", "potato salad recipe")) {
+      assertEquals(retrievalService.retrieveDocuments(query), secondBoot.retrieveDocuments(query), query);
+    }
+  }
+
+  @Test
+  void denseRetrievalFindsMisspelledQueriesThatKeywordsMiss() {
+    String query = "enviroment variabels";
+    assertTrue(retrievalService.retrieveDocuments(query).isEmpty());
+
+    DocumentRetrievalService dense =
+        new DocumentRetrievalService(new SimpleMeterRegistry(), new HashingEmbedder(256));
+    ReflectionTestUtils.setField(dense, "denseEnabled", true);
+    dense.init();
+
+    List<DocumentChunk> results = dense.retrieveDocuments(query);
+    assertFalse(results.isEmpty());
+    assertTrue(results.get(0).header().contains("environment variables"), results.get(0).toString());
+    assertEquals(retrievalService.retrieveDocuments("503 error").get(0), dense.retrieveDocuments("503 error").get(0),
+        "Fused with keyword ranking, exact matches stay on top");
+    assertTrue(dense.retrieveDocuments("potato salad recipe").size() <= 1);
+  }
+
+  @Test
+  void servesRepeatedQueriesFromTheCacheUntilTheIndexChanges() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    DocumentRetrievalService cached = new DocumentRetrievalService(meterRegistry, new HashingEmbedder(256));
+    cached.init();
+
+    List<DocumentChunk> first = cached.retrieveDocuments("api key not working");
+    assertEquals(first, cached.retrieveDocuments("API key not working?"));
+    assertEquals(1.0, meterRegistry.get("retrieval.cache.requests").tag("result", "hit").counter().count());
+
+    DocumentChunk added = new DocumentChunk("keys.md", "API key not working", "Rotate the API key in the portal.");
+    cached.addChunks(List.of(added));
+    assertEquals(added, cached.retrieveDocuments("api key not working").get(0));
+    assertEquals(1.0, meterRegistry.get("retrieval.cache.requests").tag("result", "hit").counter().count());
+  }
+
+  @Test
+  void reindexesChangedDocsWhileServingThePreviousVersion(@TempDir Path directory) throws Exception {
+    Files.writeString(directory.resolve("faq.md"), "# Billing\nInvoices are sent monthly.\n");
+    Files.writeString(directory.resolve("setup.md"), "# Webhooks\nWebhook deliveries are retried for a day.\n");
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    DocumentRetrievalService hotReloading = new DocumentRetrievalService(meterRegistry, new HashingEmbedder(256));
+    ReflectionTestUtils.setField(hotReloading, "docsDir", directory.toString());
+    ReflectionTestUtils.setField(hotReloading, "reloadDebounce", Duration.ofMillis(50));
+    hotReloading.init();
+    try {
+      assertEquals(1, meterRegistry.get("retrieval.index.version").gauge().value());
+      assertEquals("setup.md", hotReloading.retrieveDocuments("webhook retries").get(0).source());
+
+      Files.writeString(directory.resolve("setup.md"), "# Webhooks\nWebhooks are not retried anymore, poll instead.\n");
+      Files.writeString(directory.resolve("errors.md"), "# Overload\nA 503 error means the service is overloaded.\n");
+      Files.delete(directory.resolve("faq.md"));
+      awaitReload(meterRegistry, () -> hotReloading.retrieveDocuments("invoices monthly").isEmpty()
+          && !hotReloading.retrieveDocuments("503 error").isEmpty()
+          && hotReloading.retrieveDocuments("webhook retries").get(0).content().contains("poll instead"));
+
+      assertEquals(2, meterRegistry.get("retrieval.index.chunks").gauge().value());
+      assertTrue(meterRegistry.get("retrieval.index.reload").timer().count() >= 1);
+    } finally {
+      hotReloading.shutdown();
+    }
+  }
+
+  private static void awaitReload(SimpleMeterRegistry meterRegistry, BooleanSupplier reloaded)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (!reloaded.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        fail("Docs were not reloaded, index version is " + meterRegistry.get("retrieval.index.version").gauge().value());
+      }
+      Thread.sleep(20);
+    }
+  }
 }
@@ -0,0 +1,78 @@
+package com.kryo.agents.services;
+
+import com.kryo.agents.services.LocalIntentClassifier.Classification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalIntentClassifierTest {
+
+  private LocalIntentClassifier classifier;
+
+  @BeforeEach
+  void setUp() {
+    classifier = new LocalIntentClassifier(true, 0.8, 0.0, 3, new SimpleMeterRegistry());
+  }
+
+  @Test
+  void classify_customerId_isConfidentBilling() {
+    Classification result = classifier.classify("customer-001 refund");
+
+    assertEquals("billing", result.label());
+    assertTrue(classifier.isConfident(result));
+  }
+
+  @Test
+  void classify_errorCode_isConfidentTechnical() {
+    Classification result = classifier.classify("429 error");
+
+    assertEquals("technical", result.label());
+    assertTrue(classifier.isConfident(result));
+  }
+
+  @Test
+  void classify_bareNumber_isNotConfident() {
+    Classification result = classifier.classify("my order 450 has not arrived yet");
+
+    assertEquals("technical", result.label());
+    assertFalse(classifier.isConfident(result));
+  }
+
+  @Test
+  void classify_conflictingSignals_isNotConfident() {
+    Classification result = classifier.classify("I get an API error when I try to pay my invoice");
+
+    assertFalse(classifier.isConfident(result));
+  }
+
+  @Test
+  void classify_unmatchedMessage_learnsFromLlmLabels() {
+    assertFalse(classifier.isConfident(classifier.classify("my webhook stopped firing")));
+
+    for (int i = 0; i < 5; i++) {
+      classifier.recordLlmDecision("webhook stopped firing", Classification.UNKNOWN, "technical", 1_000_000);
+      classifier.recordLlmDecision("what is the weather", Classification.UNKNOWN, "router", 1_000_000);
+    }
+
+    Classification result = classifier.classify("my webhook stopped firing");
+    assertEquals("technical", result.label());
+    assertTrue(classifier.isConfident(result));
+  }
+
+  @Test
+  void recordLlmDecision_confidentLocal_tracksAgreement() {
+    classifier.recordLlmDecision("429 error", new Classification("technical", 0.9), "technical", 1_000_000);
+    classifier.recordLlmDecision("plan question", new Classification("billing", 0.9), "router", 1_000_000);
+
+    assertEquals(0.5, classifier.agreementRate());
+  }
+
+  @Test
+  void classify_disabled_returnsUnknown() {
+    LocalIntentClassifier disabled = new LocalIntentClassifier(false, 0.8, 0.0, 3, new SimpleMeterRegistry());
+
+    assertFalse(disabled.isConfident(disabled.classify("customer-001 refund")));
+  }
+}
@@ -0,0 +1,633 @@
+package com.kryo.agents.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embeddable stand-in for the Azure OpenAI chat completions endpoint. Point
+ * {@code azure.openai.endpoint} at {@link #baseUrl()} and every call the app makes is
+ * answered locally, in this order: scripted replies ({@link #enqueue}), the request quota,
+ * random throttling and error injection, rules ({@link #when}, {@link #respond}), and
+ * finally the default reply. Streaming requests get SSE chunks of the same reply.
+ *
+ * <p>All randomness comes from one seeded generator, so a run is reproducible for a fixed
+ * seed and request order. Run {@link #main} to serve the demo rules on a fixed port.
+ */
+public final class AzureOpenAIStub implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(AzureOpenAIStub.class);
+
+  private static final Pattern COMPLETIONS_PATH =
+      Pattern.compile("^/openai/deployments/([^/]+)/chat/completions/?$");
+  private static final Pattern WORD_CHUNKS = Pattern.compile("\\S+\\s*|\\s+");
+  private static final int RECORDED_REQUESTS = 1000;
+  private static final int CACHED_PREFIXES = 100_000;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final Queue<StubReply> script = new ConcurrentLinkedQueue<>();
+  private final List<Function<StubRequest, StubReply>> rules = new CopyOnWriteArrayList<>();
+  private volatile StubReply defaultReply = StubReply.text("OK");
+
+  private volatile LatencyModel latency = LatencyModel.none();
+  private volatile LatencyModel tokenLatency = LatencyModel.none();
+  private volatile double errorRate;
+  private volatile int errorStatus = 503;
+  private volatile double throttleRate;
+  private volatile Duration throttleRetryAfter = Duration.ofSeconds(1);
+  private volatile Quota quota;
+  private SplittableRandom random = new SplittableRandom(42);
+
+  private final ConcurrentLinkedDeque<StubRequest> recorded = new ConcurrentLinkedDeque<>();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+  private final AtomicLong ids = new AtomicLong();
+  private final Set<Long> cachedPrefixes = ConcurrentHashMap.newKeySet();
+
+  private AzureOpenAIStub(HttpServer server) {
+    this.server = server;
+    // Platform threads, so the stub does not compete with the app's virtual-thread scheduler
+    // when both run in one JVM (and cannot starve it on a single-CPU runner).
+    this.executor = Executors.newCachedThreadPool(Thread.ofPlatform().name("openai-stub-", 0).daemon().factory());
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  public static AzureOpenAIStub start() {
+    return start(0);
+  }
+
+  public static AzureOpenAIStub start(int port) {
+    try {
+      HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      AzureOpenAIStub stub = new AzureOpenAIStub(server);
+      server.start();
+      return stub;
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not start Azure OpenAI stub on port " + port, e);
+    }
+  }
+
+  public String baseUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+  }
+
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  /** Replies served once each, in order, before any other decision is made. */
+  public AzureOpenAIStub enqueue(StubReply... replies) {
+    script.addAll(List.of(replies));
+    return this;
+  }
+
+  public AzureOpenAIStub when(Predicate<StubRequest> matcher, StubReply reply) {
+    return respond(request -> matcher.test(request) ? reply : null);
+  }
+
+  /** Adds a rule; returning {@code null} passes the request on to the next rule. */
+  public AzureOpenAIStub respond(Function<StubRequest, StubReply> rule) {
+    rules.add(rule);
+    return this;
+  }
+
+  public AzureOpenAIStub otherwise(StubReply reply) {
+    this.defaultReply = reply;
+    return this;
+  }
+
+  /** Delay before the response headers are sent. */
+  public AzureOpenAIStub latency(LatencyModel latency) {
+    this.latency = latency;
+    return this;
+  }
+
+  /** Delay between streamed chunks. */
+  public AzureOpenAIStub tokenLatency(LatencyModel tokenLatency) {
+    this.tokenLatency = tokenLatency;
+    return this;
+  }
+
+  public AzureOpenAIStub failRandomly(double rate, int status) {
+    this.errorRate = rate;
+    this.errorStatus = status;
+    return this;
+  }
+
+  public AzureOpenAIStub throttleRandomly(double rate, Duration retryAfter) {
+    this.throttleRate = rate;
+    this.throttleRetryAfter = retryAfter;
+    return this;
+  }
+
+  /**
+   * Admits at most {@code requests} calls per fixed {@code window}; the rest get a 429 whose
+   * Retry-After points at the next window. Successful replies carry
+   * {@code x-ratelimit-remaining-requests}.
+   */
+  public AzureOpenAIStub quota(int requests, Duration window) {
+    this.quota = new Quota(requests, window.toNanos());
+    return this;
+  }
+
+  public AzureOpenAIStub seed(long seed) {
+    synchronized (this) {
+      this.random = new SplittableRandom(seed);
+    }
+    return this;
+  }
+
+  /** Clears scripts, rules, faults and recorded traffic; keeps the server running. */
+  public AzureOpenAIStub reset() {
+    script.clear();
+    rules.clear();
+    defaultReply = StubReply.text("OK");
+    latency = LatencyModel.none();
+    tokenLatency = LatencyModel.none();
+    errorRate = 0;
+    throttleRate = 0;
+    quota = null;
+    recorded.clear();
+    requestCount.set(0);
+    statusCounts.clear();
+    cachedPrefixes.clear();
+    return seed(42);
+  }
+
+  public long requestCount() {
+    return requestCount.get();
+  }
+
+  public long responses(int status) {
+    LongAdder count = statusCounts.get(status);
+    return count == null ? 0 : count.sum();
+  }
+
+  /** The most recent requests, oldest first (the last {@value #RECORDED_REQUESTS} are kept). */
+  public List<StubRequest> requests() {
+    return new ArrayList<>(recorded);
+  }
+
+  public StubRequest lastRequest() {
+    return recorded.peekLast();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.close();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String method = exchange.getRequestMethod();
+      Matcher matcher = COMPLETIONS_PATH.matcher(exchange.getRequestURI().getPath());
+      if (!matcher.matches()) {
+        sendEmpty(exchange, "HEAD".equals(method) || "/".equals(exchange.getRequestURI().getPath()) ? 200 : 404);
+        return;
+      }
+      if (!"POST".equals(method)) {
+        sendEmpty(exchange, 405);
+        return;
+      }
+
+      JsonNode body;
+      try (InputStream in = exchange.getRequestBody()) {
+        body = objectMapper.readTree(in);
+      } catch (IOException e) {
+        sendError(exchange, 400, "invalid_request_error", "Request body is not valid JSON", null);
+        return;
+      }
+      String apiVersion = queryParameter(exchange.getRequestURI(), "api-version");
+      if (apiVersion == null) {
+        sendError(exchange, 404, "404", "Resource not found", null);
+        return;
+      }
+
+      StubRequest request = new StubRequest(matcher.group(1), apiVersion,
+          exchange.getRequestHeaders().getFirst("api-key"), body);
+      record(request);
+
+      Decision decision = decide(request);
+      sleep(decision.reply().latency() != null ? decision.reply().latency() : latency);
+
+      StubReply reply = decision.reply();
+      if (reply.isError()) {
+        sendError(exchange, reply.status(), reply.status() == 429 ? "429" : "server_error",
+            reply.status() == 429 ? "Requests to the ChatCompletions_Create Operation have exceeded call rate limit."
+                : "The server had an error while processing your request.",
+            reply.retryAfter());
+      } else if (request.isStreaming()) {
+        sendStream(exchange, request, reply, decision.remainingRequests());
+      } else {
+        sendCompletion(exchange, request, reply, decision.remainingRequests());
+      }
+    } catch (IOException e) {
+      logger.debug("Stub client went away: {}", e.getMessage());
+    }
+  }
+
+  private void record(StubRequest request) {
+    requestCount.incrementAndGet();
+    recorded.addLast(request);
+    while (recorded.size() > RECORDED_REQUESTS) {
+      recorded.pollFirst();
+    }
+  }
+
+  private Decision decide(StubRequest request) {
+    StubReply scripted = script.poll();
+    if (scripted != null) {
+      return new Decision(scripted, -1);
+    }
+
+    long remaining = -1;
+    Quota current = quota;
+    if (current != null) {
+      remaining = current.tryAcquire();
+      if (remaining < 0) {
+        return new Decision(StubReply.throttled(Duration.ofNanos(current.nanosUntilReset())), -1);
+      }
+    }
+
+    double roll;
+    synchronized (this) {
+      roll = random.nextDouble();
+    }
+    if (roll < throttleRate) {
+      return new Decision(StubReply.throttled(throttleRetryAfter), remaining);
+    }
+    if (roll < throttleRate + errorRate) {
+      return new Decision(StubReply.error(errorStatus), remaining);
+    }
+
+    for (Function<StubRequest, StubReply> rule : rules) {
+      StubReply reply = rule.apply(request);
+      if (reply != null) {
+        return new Decision(reply, remaining);
+      }
+    }
+    return new Decision(defaultReply, remaining);
+  }
+
+  private void sendCompletion(HttpExchange exchange, StubRequest request, StubReply reply, long remaining)
+      throws IOException {
+    ObjectNode message = objectMapper.createObjectNode().put("role", "assistant");
+    message.put("content", reply.content());
+    if (!reply.toolCalls().isEmpty()) {
+      message.set("tool_calls", toolCalls(reply, false));
+    }
+
+    ObjectNode root = envelope(request, "chat.completion", nextId());
+    ObjectNode choice = root.putArray("choices").addObject().put("index", 0);
+    choice.set("message", message);
+    choice.put("finish_reason", reply.toolCalls().isEmpty() ? "stop" : "tool_calls");
+
+    int promptTokens = request.estimatedPromptTokens();
+    int completionTokens = completionTokens(reply);
+    ObjectNode usage = root.putObject("usage")
+        .put("prompt_tokens", promptTokens)
+        .put("completion_tokens", completionTokens)
+        .put("total_tokens", promptTokens + completionTokens);
+    usage.putObject("prompt_tokens_details").put("cached_tokens", cachedPromptTokens(request));
+
+    byte[] bytes = objectMapper.writeValueAsBytes(root);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    rateLimitHeaders(exchange, remaining);
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+    count(200);
+  }
+
+  private void sendStream(HttpExchange exchange, StubRequest request, StubReply reply, long remaining)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    rateLimitHeaders(exchange, remaining);
+    exchange.sendResponseHeaders(200, 0);
+    count(200);
+
+    String id = nextId();
+    try (OutputStream out = exchange.getResponseBody()) {
+      ObjectNode opening = objectMapper.createObjectNode().put("role", "assistant").put("content", "");
+      writeChunk(out, id, request, opening, null);
+
+      if (!reply.toolCalls().isEmpty()) {
+        ObjectNode delta = objectMapper.createObjectNode();
+        delta.set("tool_calls", toolCalls(reply, true));
+        writeChunk(out, id, request, delta, null);
+      } else if (reply.content() != null) {
+        Matcher chunks = WORD_CHUNKS.matcher(reply.content());
+        while (chunks.find()) {
+          sleep(tokenLatency);
+          writeChunk(out, id, request, objectMapper.createObjectNode().put("content", chunks.group()), null);
+        }
+      }
+
+      writeChunk(out, id, request, objectMapper.createObjectNode(),
+          reply.toolCalls().isEmpty() ? "stop" : "tool_calls");
+      out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+  }
+
+  private void writeChunk(OutputStream out, String id, StubRequest request, ObjectNode delta,
+      String finishReason) throws IOException {
+    ObjectNode root = envelope(request, "chat.completion.chunk", id);
+    ObjectNode choice = root.putArray("choices").addObject().put("index", 0);
+    choice.set("delta", delta);
+    choice.put("finish_reason", finishReason);
+    out.write(("data: " + objectMapper.writeValueAsString(root) + "\n\n").getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  /**
+   * Mimics provider prompt caching: the tools plus the longest run of leading messages an
+   * earlier request already sent count as cached, estimated like {@code prompt_tokens}.
+   */
+  private int cachedPromptTokens(StubRequest request) {
+    if (cachedPrefixes.size() > CACHED_PREFIXES) {
+      cachedPrefixes.clear();
+    }
+    long prefix = request.body().path("tools").toString().hashCode();
+    int chars = 0;
+    int cachedChars = 0;
+    boolean hit = true;
+    for (JsonNode message : request.body().path("messages")) {
+      prefix = prefix * 1_000_003 + message.toString().hashCode();
+      chars += message.path("content").asText("").length();
+      if (!cachedPrefixes.add(prefix) && hit) {
+        cachedChars = chars;
+      } else {
+        hit = false;
+      }
+    }
+    return cachedChars / 4;
+  }
+
+  private String nextId() {
+    return "chatcmpl-stub-" + ids.incrementAndGet();
+  }
+
+  private ObjectNode envelope(StubRequest request, String object, String id) {
+    return objectMapper.createObjectNode()
+        .put("id", id)
+        .put("object", object)
+        .put("created", System.currentTimeMillis() / 1000)
+        .put("model", request.deployment());
+  }
+
+  private ArrayNode toolCalls(StubReply reply, boolean indexed) {
+    ArrayNode calls = objectMapper.createArrayNode();
+    for (int i = 0; i < reply.toolCalls().size(); i++) {
+      StubReply.ToolCall call = reply.toolCalls().get(i);
+      ObjectNode node = calls.addObject();
+      if (indexed) {
+        node.put("index", i);
+      }
+      node.put("id", "call_stub_" + ids.incrementAndGet()).put("type", "function");
+      node.putObject("function").put("name", call.name()).put("arguments", call.argumentsJson());
+    }
+    return calls;
+  }
+
+  private static int completionTokens(StubReply reply) {
+    int chars = reply.content() == null ? 0 : reply.content().length();
+    for (StubReply.ToolCall call : reply.toolCalls()) {
+      chars += call.name().length() + call.argumentsJson().length();
+    }
+    return Math.max(1, chars / 4);
+  }
+
+  private void sendError(HttpExchange exchange, int status, String code, String message, Duration retryAfter)
+      throws IOException {
+    ObjectNode root = objectMapper.createObjectNode();
+    root.putObject("error").put("code", code).put("message", message);
+    byte[] bytes = objectMapper.writeValueAsBytes(root);
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    if (retryAfter != null) {
+      long millis = retryAfter.toMillis();
+      exchange.getResponseHeaders().set("Retry-After", String.valueOf((millis + 999) / 1000));
+      exchange.getResponseHeaders().set("retry-after-ms", String.valueOf(millis));
+    }
+    if (status == 429) {
+      exchange.getResponseHeaders().set("x-ratelimit-remaining-requests", "0");
+    }
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+    count(status);
+  }
+
+  private void sendEmpty(HttpExchange exchange, int status) throws IOException {
+    exchange.sendResponseHeaders(status, -1);
+  }
+
+  private static void rateLimitHeaders(HttpExchange exchange, long remaining) {
+    if (remaining >= 0) {
+      exchange.getResponseHeaders().set("x-ratelimit-remaining-requests", String.valueOf(remaining));
+    }
+  }
+
+  private void count(int status) {
+    statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+  }
+
+  private void sleep(LatencyModel model) {
+    Duration delay;
+    synchronized (this) {
+      delay = model.sample(random);
+    }
+    if (delay.isZero() || delay.isNegative()) {
+      return;
+    }
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String queryParameter(URI uri, String name) {
+    String query = uri.getRawQuery();
+    if (query == null) {
+      return null;
+    }
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0 && pair.substring(0, eq).equals(name)) {
+        return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  private record Decision(StubReply reply, long remainingRequests) {
+  }
+
+  private static final class Quota {
+    private final int limit;
+    private final long windowNanos;
+    private long windowStart = System.nanoTime();
+    private int used;
+
+    Quota(int limit, long windowNanos) {
+      this.limit = limit;
+      this.windowNanos = windowNanos;
+    }
+
+    /** Remaining requests after this one, or -1 if the window is exhausted. */
+    synchronized long tryAcquire() {
+      roll();
+      if (used >= limit) {
+        return -1;
+      }
+      used++;
+      return limit - used;
+    }
+
+    synchronized long nanosUntilReset() {
+      roll();
+      return Math.max(0, windowStart + windowNanos - System.nanoTime());
+    }
+
+    private void roll() {
+      long now = System.nanoTime();
+      if (now - windowStart >= windowNanos) {
+        windowStart = now;
+        used = 0;
+      }
+    }
+  }
+
+  /**
+   * Rules that imitate the deployment closely enough to drive the whole app: keyword-based
+   * intent labels (single and batched), a {@code checkSubscription} tool call when the
+   * billing agent sees a customer id, and a canned answer otherwise.
+   */
+  public AzureOpenAIStub withDemoRules() {
+    Pattern customerId = Pattern.compile("customer-\\d+");
+    respond(request -> {
+      String system = request.systemPrompt();
+      if (system.contains("JSON array of conversation transcripts")) {
+        List<String> labels = new ArrayList<>();
+        for (JsonNode transcript : readTree(request.lastUserMessage())) {
+          labels.add("\"" + demoIntent(transcript.asText()) + "\"");
+        }
+        return StubReply.text("[" + String.join(", ", labels) + "]");
+      }
+      if (system.contains("Classify the conversation intent")) {
+        return StubReply.text(demoIntent(request.lastUserMessage()));
+      }
+      return null;
+    });
+    respond(request -> {
+      Matcher matcher = customerId.matcher(request.lastUserMessage());
+      if (request.hasTools() && !request.hasToolResults() && matcher.find()) {
+        return StubReply.toolCall("checkSubscription", "{\"customerId\":\"" + matcher.group() + "\"}");
+      }
+      return null;
+    });
+    return otherwise(StubReply.text(
+        "Thanks for the details. Based on the information available, here is what I found: "
+            + "your request has been reviewed and no further action is needed right now."));
+  }
+
+  private JsonNode readTree(String json) {
+    try {
+      return objectMapper.readTree(json);
+    } catch (IOException e) {
+      return objectMapper.createArrayNode();
+    }
+  }
+
+  private static String demoIntent(String text) {
+    String lower = text.toLowerCase(Locale.ROOT);
+    if (lower.matches("(?s).*\\b(customer-\\d+|refund|invoice|billing|subscription|plan|charged?)\\b.*")) {
+      return "billing";
+    }
+    if (lower.matches("(?s).*\\b(error|api|429|install|setup|run|bug|docs|integration)\\b.*")) {
+      return "technical";
+    }
+    return "router";
+  }
+
+  /**
+   * Serves the demo rules until killed. Options: {@code --port=8089},
+   * {@code --latency=lognormal:300ms:0.5}, {@code --token-latency=fixed:15ms},
+   * {@code --error-rate=0.01}, {@code --error-status=503}, {@code --throttle-rate=0.02},
+   * {@code --retry-after=1s}, {@code --quota=600/60s}, {@code --seed=42}. Latency models are
+   * {@code none}, {@code fixed:D}, {@code uniform:MIN:MAX} and {@code lognormal:MEDIAN[:SIGMA]}.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    Map<String, String> options = new ConcurrentHashMap<>();
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.contains("=")) {
+        options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      } else if (!arg.isBlank()) {
+        throw new IllegalArgumentException("Unrecognised argument: " + arg);
+      }
+    }
+
+    AzureOpenAIStub stub = start(Integer.parseInt(options.getOrDefault("port", "8089")))
+        .seed(Long.parseLong(options.getOrDefault("seed", "42")))
+        .withDemoRules()
+        .latency(LatencyModel.parse(options.getOrDefault("latency", "lognormal:300ms:0.5")))
+        .tokenLatency(LatencyModel.parse(options.getOrDefault("token-latency", "fixed:15ms")))
+        .failRandomly(Double.parseDouble(options.getOrDefault("error-rate", "0")),
+            Integer.parseInt(options.getOrDefault("error-status", "503")))
+        .throttleRandomly(Double.parseDouble(options.getOrDefault("throttle-rate", "0")),
+            DurationStyle.detectAndParse(options.getOrDefault("retry-after", "1s")));
+    if (options.containsKey("quota")) {
+      String[] quota = options.get("quota").split("/");
+      stub.quota(Integer.parseInt(quota[0]), DurationStyle.detectAndParse(quota[1]));
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+    logger.info("Azure OpenAI stub listening on {} (set azure.openai.endpoint to this URL)", stub.baseUrl());
+    Thread.currentThread().join();
+  }
+}
@@ -0,0 +1,55 @@
+package com.kryo.agents.support;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * Delay the stub applies before answering. Samples come from the stub's seeded generator,
+ * so a run with the same seed and request order sees the same delays.
+ */
+@FunctionalInterface
+public interface LatencyModel {
+
+  Duration sample(RandomGenerator random);
+
+  static LatencyModel none() {
+    return random -> Duration.ZERO;
+  }
+
+  static LatencyModel fixed(Duration delay) {
+    return random -> delay;
+  }
+
+  static LatencyModel uniform(Duration min, Duration max) {
+    long minNanos = min.toNanos();
+    long maxNanos = max.toNanos();
+    if (maxNanos < minNanos) {
+      throw new IllegalArgumentException("max must not be lower than min");
+    }
+    return random -> Duration.ofNanos(minNanos == maxNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1));
+  }
+
+  /**
+   * Long-tailed delays shaped like real completion latencies: half of the samples fall below
+   * {@code median}, and {@code sigma} (the standard deviation of the underlying normal)
+   * controls the tail. {@code sigma = 0.5} puts p99 at roughly 3.2x the median.
+   */
+  static LatencyModel logNormal(Duration median, double sigma) {
+    double mu = Math.log(median.toNanos());
+    return random -> Duration.ofNanos((long) Math.exp(mu + sigma * random.nextGaussian()));
+  }
+
+  static LatencyModel parse(String spec) {
+    String[] parts = spec.trim().split(":");
+    return switch (parts[0].toLowerCase()) {
+      case "none" -> none();
+      case "fixed" -> fixed(DurationStyle.detectAndParse(parts[1]));
+      case "uniform" -> uniform(DurationStyle.detectAndParse(parts[1]), DurationStyle.detectAndParse(parts[2]));
+      case "lognormal" -> logNormal(DurationStyle.detectAndParse(parts[1]),
+          parts.length > 2 ? Double.parseDouble(parts[2]) : 0.5);
+      default -> throw new IllegalArgumentException("Unknown latency model: " + spec);
+    };
+  }
+}
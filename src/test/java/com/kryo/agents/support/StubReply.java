@@ -0,0 +1,49 @@
+package com.kryo.agents.support;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * What {@link AzureOpenAIStub} sends back for one call: assistant content, tool calls, or
+ * an error status. {@code latency}, when set, replaces the stub-wide latency model for
+ * this reply.
+ */
+public record StubReply(int status, String content, List<ToolCall> toolCalls, Duration retryAfter,
+    LatencyModel latency) {
+
+  public static StubReply text(String content) {
+    return new StubReply(200, content, List.of(), null, null);
+  }
+
+  public static StubReply toolCall(String name, String argumentsJson) {
+    return toolCalls(new ToolCall(name, argumentsJson));
+  }
+
+  public static StubReply toolCalls(ToolCall... calls) {
+    return new StubReply(200, null, List.of(calls), null, null);
+  }
+
+  /** A 429 carrying both {@code Retry-After} (whole seconds) and {@code retry-after-ms}. */
+  public static StubReply throttled(Duration retryAfter) {
+    return new StubReply(429, null, List.of(), retryAfter, null);
+  }
+
+  public static StubReply error(int status) {
+    return new StubReply(status, null, List.of(), null, null);
+  }
+
+  public StubReply withLatency(LatencyModel latency) {
+    return new StubReply(status, content, toolCalls, retryAfter, latency);
+  }
+
+  public StubReply withLatency(Duration delay) {
+    return withLatency(LatencyModel.fixed(delay));
+  }
+
+  public boolean isError() {
+    return status >= 400;
+  }
+
+  public record ToolCall(String name, String argumentsJson) {
+  }
+}
@@ -0,0 +1,55 @@
+package com.kryo.agents.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A chat completions call as received by {@link AzureOpenAIStub}, with helpers for the
+ * parts rules usually match on.
+ */
+public record StubRequest(String deployment, String apiVersion, String apiKey, JsonNode body) {
+
+  public boolean isStreaming() {
+    return body.path("stream").asBoolean(false);
+  }
+
+  public boolean hasTools() {
+    return body.path("tools").size() > 0;
+  }
+
+  public boolean hasToolResults() {
+    for (JsonNode message : body.path("messages")) {
+      if ("tool".equals(message.path("role").asText())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public String systemPrompt() {
+    JsonNode first = body.path("messages").path(0);
+    return "system".equals(first.path("role").asText()) ? first.path("content").asText("") : "";
+  }
+
+  public String lastUserMessage() {
+    JsonNode messages = body.path("messages");
+    for (int i = messages.size() - 1; i >= 0; i--) {
+      if ("user".equals(messages.get(i).path("role").asText())) {
+        return messages.get(i).path("content").asText("");
+      }
+    }
+    return "";
+  }
+
+  public int maxTokens() {
+    return body.path("max_tokens").asInt(-1);
+  }
+
+  /** Rough prompt size (4 characters per token) used for the stub's usage block. */
+  int estimatedPromptTokens() {
+    int chars = 0;
+    for (JsonNode message : body.path("messages")) {
+      chars += message.path("content").asText("").length();
+    }
+    return Math.max(1, chars / 4);
+  }
+}